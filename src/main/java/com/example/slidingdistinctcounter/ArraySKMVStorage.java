@@ -0,0 +1,67 @@
+package com.example.slidingdistinctcounter;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage backend for the Sliding KMV sketch
+ *
+ * All hashes live in one long[m*k], all AT values in a parallel long[m*k],
+ * and the lock/lock_time/lock_maxV/head fields in their own arrays of length m.
+ * A bucket's entries are therefore contiguous, which keeps the per-bucket scans cache-friendly.
+ *
+ * @author Research Implementation
+ */
+public class ArraySKMVStorage implements SKMVStorage {
+
+    private final int m;              // Number of buckets
+    private final int k;              // Entries per bucket
+
+    private final long[] hashes;      // Hash value per slot (m * k)
+    private final long[] ats;         // Raw AT value per slot (m * k)
+    private final byte[] locks;       // Lock bit per bucket
+    private final long[] lockTimes;   // Raw AT value of the lock time per bucket
+    private final long[] lockMaxVs;   // P2C upper-bound hash value per bucket
+    private final int[] heads;        // Head index per bucket
+
+    /**
+     * Constructor for the array storage, initialized to empty buckets
+     *
+     * @param m Number of buckets
+     * @param k Entries per bucket
+     * @param N Window length (time units), used for the unset AT value 2*N
+     * @param maxHashValue Hash value that marks an empty entry (2^delta1 - 1)
+     */
+    public ArraySKMVStorage(int m, int k, long N, long maxHashValue) {
+        this.m = m;
+        this.k = k;
+        int slots = Math.multiplyExact(m, k);  // Overflow must not allocate a short array
+        this.hashes = new long[slots];
+        this.ats = new long[slots];
+        this.locks = new byte[m];
+        this.lockTimes = new long[m];
+        this.lockMaxVs = new long[m];
+        this.heads = new int[m];
+
+        Arrays.fill(hashes, maxHashValue);
+        Arrays.fill(ats, 2 * N);
+        Arrays.fill(lockTimes, 2 * N);
+        Arrays.fill(lockMaxVs, maxHashValue);
+    }
+
+    @Override public int getM() { return m; }
+    @Override public int getK() { return k; }
+
+    @Override public long getHash(int slot) { return hashes[slot]; }
+    @Override public void setHash(int slot, long h) { hashes[slot] = h; }
+    @Override public long getAT(int slot) { return ats[slot]; }
+    @Override public void setAT(int slot, long vAT) { ats[slot] = vAT; }
+
+    @Override public int getLock(int bucketIndex) { return locks[bucketIndex]; }
+    @Override public void setLock(int bucketIndex, int lock) { locks[bucketIndex] = (byte) lock; }
+    @Override public long getLockTime(int bucketIndex) { return lockTimes[bucketIndex]; }
+    @Override public void setLockTime(int bucketIndex, long vAT) { lockTimes[bucketIndex] = vAT; }
+    @Override public long getLockMaxV(int bucketIndex) { return lockMaxVs[bucketIndex]; }
+    @Override public void setLockMaxV(int bucketIndex, long lockMaxV) { lockMaxVs[bucketIndex] = lockMaxV; }
+    @Override public int getHead(int bucketIndex) { return heads[bucketIndex]; }
+    @Override public void setHead(int bucketIndex, int head) { heads[bucketIndex] = head; }
+}
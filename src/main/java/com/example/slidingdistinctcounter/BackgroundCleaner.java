@@ -0,0 +1,227 @@
+package com.example.slidingdistinctcounter;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background cleaning service for a {@link PackedSKMV} sketch
+ *
+ * A scheduled thread runs the periodicClean pass whenever the stream time has advanced by the cleaning
+ * interval (N/2 or N/4 per AT_PERIODIC_CLEANING.md), so the ingest thread never cleans. Buckets are
+ * guarded by striped locks: the ingest thread holds one stripe per recordItem, the cleaner holds one
+ * stripe per bucket it cleans, and queries hold all stripes.
+ *
+ * Items must be recorded through this class by a single ingest thread, which must not call
+ * periodicClean itself. The cleaner cleans each bucket at the latest stream time, read under the
+ * bucket's lock, so it never sees entries newer than its own clock.
+ *
+ * @author Research Implementation
+ */
+public class BackgroundCleaner implements AutoCloseable {
+
+    private final PackedSKMV sketch;          // Sketch fed by the ingest thread
+    private final PackedSKMV view;            // Cleaner's view of the same state, with its own clock
+    private final long cleanInterval;         // Stream time units between cleaning passes
+    private final long pollMillis;            // Wall-clock period of the cleaner's check
+    private final ReentrantLock[] stripes;    // Bucket b is guarded by stripes[b % stripes.length]
+
+    private volatile long latestTime;         // Time of the latest item handed to recordItem
+    private final Object passLock = new Object(); // Serializes cleaning passes
+    private long lastCleanTime;               // Stream time of the last pass (guarded by passLock)
+    private ScheduledExecutorService executor;
+
+    // Cleaning statistics, written by the cleaning thread
+    private volatile long passes;
+    private volatile long bucketsCleaned;
+    private volatile long cleaningNanos;
+    private volatile long lastPassNanos;
+    private volatile long maxPassNanos;
+
+    /**
+     * Constructor for a cleaner running every N/2 time units with 64 stripes, checking every millisecond
+     *
+     * @param sketch Sketch to clean; lazy expiry and the incremental sweep must be disabled
+     */
+    public BackgroundCleaner(PackedSKMV sketch) {
+        this(sketch, Math.max(1, sketch.getWindowSize() / 2), 64, 1);
+    }
+
+    /**
+     * Constructor for the background cleaner
+     *
+     * @param sketch Sketch to clean; lazy expiry and the incremental sweep must be disabled, and other
+     *               accelerators enabled beforehand, as the sketch's configuration is frozen from here on
+     * @param cleanInterval Stream time units between cleaning passes (1 to N)
+     * @param stripes Number of bucket locks
+     * @param pollMillis Wall-clock milliseconds between checks for a due pass
+     */
+    public BackgroundCleaner(PackedSKMV sketch, long cleanInterval, int stripes, long pollMillis) {
+        if (cleanInterval < 1 || cleanInterval > sketch.getWindowSize()) {
+            throw new IllegalArgumentException(
+                String.format("Cleaning interval must be in [1, N=%d], got %d", sketch.getWindowSize(), cleanInterval));
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripes);
+        }
+        if (pollMillis < 1) {
+            throw new IllegalArgumentException("Poll period must be positive: " + pollMillis);
+        }
+        this.sketch = sketch;
+        this.view = sketch.cleaningView();
+        this.cleanInterval = cleanInterval;
+        this.pollMillis = pollMillis;
+        this.stripes = new ReentrantLock[Math.min(stripes, sketch.getM())];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.latestTime = sketch.getCurrentTime();
+        this.lastCleanTime = latestTime;
+    }
+
+    /**
+     * Start the cleaning thread (no effect if already running)
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "skmv-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::cleanIfDue, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the cleaning thread, waiting for a running pass to finish
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Record an item (single ingest thread only)
+     *
+     * @param flowLabel The flow identifier
+     * @param elementID The element identifier to process
+     * @param timestamp The timestamp of the arriving item
+     */
+    public void recordItem(long flowLabel, long elementID, long timestamp) {
+        boolean backwards = timestamp < latestTime;
+        latestTime = timestamp;  // Published before the bucket is written, see cleanBucket
+        if (backwards) {
+            // Moving time back resets state shared by all buckets
+            lockAll();
+            try {
+                sketch.recordItem(flowLabel, elementID, timestamp);
+            } finally {
+                unlockAll();
+            }
+            return;
+        }
+        ReentrantLock lock = stripes[sketch.bucketOf(flowLabel) % stripes.length];
+        lock.lock();
+        try {
+            sketch.recordItem(flowLabel, elementID, timestamp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Query the sketch while holding all bucket locks (callable from any thread)
+     *
+     * @return Estimated cardinality of distinct elements in sliding window
+     */
+    public double estimateCardinality() {
+        lockAll();
+        try {
+            return sketch.estimateCardinality();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Run a cleaning pass now, on the calling thread, at the latest stream time
+     */
+    public void cleanNow() {
+        synchronized (passLock) {
+            cleanPass(latestTime);
+        }
+    }
+
+    private void cleanIfDue() {
+        synchronized (passLock) {
+            long now = latestTime;
+            if (now - lastCleanTime >= cleanInterval || now < lastCleanTime) {
+                cleanPass(now);
+            }
+        }
+    }
+
+    private void cleanPass(long passTime) {
+        long start = System.nanoTime();
+        for (int b = 0; b < sketch.getM(); b++) {
+            cleanBucket(b);
+        }
+        long elapsed = System.nanoTime() - start;
+        lastCleanTime = passTime;
+        passes++;
+        bucketsCleaned += sketch.getM();
+        cleaningNanos += elapsed;
+        lastPassNanos = elapsed;
+        maxPassNanos = Math.max(maxPassNanos, elapsed);
+    }
+
+    private void cleanBucket(int b) {
+        ReentrantLock lock = stripes[b % stripes.length];
+        lock.lock();
+        try {
+            // Read under the lock: every item already in the bucket was published at or before this time
+            view.periodicCleanBucket(latestTime, b);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    // Getter methods for configuration and cleaning statistics
+    public PackedSKMV getSketch() { return sketch; }
+    public long getCleanInterval() { return cleanInterval; }
+    public int getStripes() { return stripes.length; }
+    public synchronized boolean isRunning() { return executor != null; }
+    public long getPasses() { return passes; }
+    public long getBucketsCleaned() { return bucketsCleaned; }
+    public long getCleaningNanos() { return cleaningNanos; }
+    public long getLastPassNanos() { return lastPassNanos; }
+    public long getMaxPassNanos() { return maxPassNanos; }
+}
@@ -0,0 +1,147 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Bit-packed storage backend for the Sliding KMV sketch
+ *
+ * Every bucket is a contiguous run of bits in a long[] word array, laid out as
+ * [lock (1) | lock_time (delta2) | lock_maxV (delta1) | head (log2(k+1)) | k x (hash (delta1) | AT (delta2))].
+ * This is exactly the per-bucket cost assumed by Main.SKMVConfig.calculateM, so a sketch sized
+ * from a memory budget really occupies that budget (rounded up to the next 64-bit word).
+ * Fields may straddle word boundaries; readBits/writeBits handle the two-word case.
+ *
+ * @author Research Implementation
+ */
+public class BitPackedSKMVStorage implements SKMVStorage {
+
+    private final int m;              // Number of buckets
+    private final int k;              // Entries per bucket
+
+    // Field widths in bits
+    private final int hashBits;       // delta1
+    private final int atBits;         // delta2
+    private final int headBits;       // ceil(log2(k+1))
+
+    // Field offsets in bits, relative to the start of a bucket
+    private final int lockTimeOffset;
+    private final int lockMaxVOffset;
+    private final int headOffset;
+    private final int entriesOffset;
+    private final int bitsPerEntry;
+    private final long bitsPerBucket;
+
+    private final long[] words;       // Packed bucket state
+
+    /**
+     * Constructor for the bit-packed storage, initialized to empty buckets
+     *
+     * @param m Number of buckets
+     * @param k Entries per bucket
+     * @param N Window length (time units), used for the unset AT value 2*N
+     * @param delta1 Bit-width for hash values
+     * @param delta2 Bit-width for timestamps
+     */
+    public BitPackedSKMVStorage(int m, int k, long N, int delta1, int delta2) {
+        if (delta1 < 1 || delta1 > 63 || delta2 < 1 || delta2 > 63) {
+            throw new IllegalArgumentException(
+                String.format("Bit-widths must be in [1, 63]: delta1=%d, delta2=%d", delta1, delta2));
+        }
+        if (2 * N > (1L << delta2) - 1) {
+            throw new IllegalArgumentException(
+                String.format("Unset AT value 2N=%d does not fit in delta2=%d bits", 2 * N, delta2));
+        }
+
+        this.m = m;
+        this.k = k;
+        this.hashBits = delta1;
+        this.atBits = delta2;
+        this.headBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(k));
+
+        this.lockTimeOffset = 1;
+        this.lockMaxVOffset = lockTimeOffset + atBits;
+        this.headOffset = lockMaxVOffset + hashBits;
+        this.entriesOffset = headOffset + headBits;
+        this.bitsPerEntry = hashBits + atBits;
+        this.bitsPerBucket = entriesOffset + (long) k * bitsPerEntry;
+
+        long totalWords = (bitsPerBucket * m + 63) >>> 6;
+        if (totalWords > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Sketch too large for a single word array: " + totalWords + " words");
+        }
+        this.words = new long[(int) totalWords];
+
+        // Empty bucket: lock=0, head=0, lock_time=2N, lock_maxV=max hash, entries=(max hash, 2N)
+        long maxHashValue = (1L << delta1) - 1;
+        for (int b = 0; b < m; b++) {
+            setLockTime(b, 2 * N);
+            setLockMaxV(b, maxHashValue);
+        }
+        for (int slot = 0; slot < m * k; slot++) {
+            setHash(slot, maxHashValue);
+            setAT(slot, 2 * N);
+        }
+    }
+
+    /**
+     * Extract a field of up to 64 bits starting at an absolute bit position
+     */
+    private long readBits(long bitPos, int width) {
+        int word = (int) (bitPos >>> 6);
+        int offset = (int) (bitPos & 63);
+        long value = words[word] >>> offset;
+        if (offset + width > 64) {
+            value |= words[word + 1] << (64 - offset);
+        }
+        return width == 64 ? value : value & ((1L << width) - 1);
+    }
+
+    /**
+     * Insert a field of up to 64 bits starting at an absolute bit position
+     */
+    private void writeBits(long bitPos, int width, long value) {
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        value &= mask;
+        int word = (int) (bitPos >>> 6);
+        int offset = (int) (bitPos & 63);
+        words[word] = (words[word] & ~(mask << offset)) | (value << offset);
+        if (offset + width > 64) {
+            int spill = 64 - offset;
+            words[word + 1] = (words[word + 1] & ~(mask >>> spill)) | (value >>> spill);
+        }
+    }
+
+    private long bucketBit(int bucketIndex) {
+        return bucketIndex * bitsPerBucket;
+    }
+
+    private long slotBit(int slot) {
+        int bucketIndex = slot / k;
+        return bucketBit(bucketIndex) + entriesOffset + (long) (slot - bucketIndex * k) * bitsPerEntry;
+    }
+
+    @Override public int getM() { return m; }
+    @Override public int getK() { return k; }
+
+    @Override public long getHash(int slot) { return readBits(slotBit(slot), hashBits); }
+    @Override public void setHash(int slot, long h) { writeBits(slotBit(slot), hashBits, h); }
+    @Override public long getAT(int slot) { return readBits(slotBit(slot) + hashBits, atBits); }
+    @Override public void setAT(int slot, long vAT) { writeBits(slotBit(slot) + hashBits, atBits, vAT); }
+
+    @Override public int getLock(int bucketIndex) { return (int) readBits(bucketBit(bucketIndex), 1); }
+    @Override public void setLock(int bucketIndex, int lock) { writeBits(bucketBit(bucketIndex), 1, lock); }
+    @Override public long getLockTime(int bucketIndex) { return readBits(bucketBit(bucketIndex) + lockTimeOffset, atBits); }
+    @Override public void setLockTime(int bucketIndex, long vAT) { writeBits(bucketBit(bucketIndex) + lockTimeOffset, atBits, vAT); }
+    @Override public long getLockMaxV(int bucketIndex) { return readBits(bucketBit(bucketIndex) + lockMaxVOffset, hashBits); }
+    @Override public void setLockMaxV(int bucketIndex, long lockMaxV) { writeBits(bucketBit(bucketIndex) + lockMaxVOffset, hashBits, lockMaxV); }
+    @Override public int getHead(int bucketIndex) { return (int) readBits(bucketBit(bucketIndex) + headOffset, headBits); }
+    @Override public void setHead(int bucketIndex, int head) { writeBits(bucketBit(bucketIndex) + headOffset, headBits, head); }
+
+    /**
+     * @return Bits occupied by one bucket (same formula as Main.SKMVConfig.calculateM)
+     */
+    public long getBitsPerBucket() { return bitsPerBucket; }
+
+    /**
+     * @return Size of the packed word array in bytes
+     */
+    public long getSizeInBytes() { return (long) words.length * Long.BYTES; }
+}
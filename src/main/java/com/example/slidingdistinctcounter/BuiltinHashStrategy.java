@@ -0,0 +1,138 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Built-in hash strategies (see the constants of {@link HashStrategy})
+ *
+ * The word-at-a-time mixers follow the structure of wyhash and XXH3 for a single 8-byte input but are
+ * not bit-compatible with the reference implementations: they take the seed as given and the wyhash
+ * fold uses the signed high product, which Java computes in one instruction.
+ *
+ * @author Research Implementation
+ */
+abstract class BuiltinHashStrategy implements HashStrategy {
+
+    // wyhash default secret
+    private static final long WY_P0 = 0xa0761d6478bd642fL;
+    private static final long WY_P1 = 0xe7037ed1a0b428dbL;
+
+    // XXH3 rrmxmx multiplier and the secret words it keys 8-byte inputs with
+    private static final long XXH_PRIME_MX2 = 0x9FB21C651E98DF25L;
+    private static final long XXH_SECRET_BITFLIP = 0x1cad21f72c81017cL ^ 0xdb979083e96dd4deL;
+
+    // 2^64 / golden ratio, the Fibonacci hashing multiplier
+    private static final long GOLDEN_RATIO_64 = 0x9E3779B97F4A7C15L;
+
+    private final int id;
+
+    BuiltinHashStrategy(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Bucket of a flow hash by fastrange: the high 32 bits of the hash scaled to [0, m) with one
+     * multiply and shift instead of a division
+     */
+    static int fastrange(long flowHash, int m) {
+        return (int) (((flowHash >>> 32) * m) >>> 32);
+    }
+
+    /**
+     * wyhash-style hash of one 64-bit word: two multiply-folds of the 128-bit product
+     */
+    static long wyhash64(long key, long seed) {
+        long a = Long.rotateLeft(key, 32) ^ WY_P1;
+        long b = key ^ seed ^ WY_P0;
+        return wymix(a * b ^ WY_P0 ^ 8, Math.multiplyHigh(a, b) ^ WY_P1);
+    }
+
+    private static long wymix(long a, long b) {
+        return a * b ^ Math.multiplyHigh(a, b);
+    }
+
+    /**
+     * XXH3-style hash of one 64-bit word: keyed input through the rrmxmx finalizer
+     */
+    static long xxh3_64(long key, long seed) {
+        long h = key ^ (XXH_SECRET_BITFLIP - seed);
+        h ^= Long.rotateLeft(h, 49) ^ Long.rotateLeft(h, 24);
+        h *= XXH_PRIME_MX2;
+        h ^= (h >>> 35) + 8;
+        h *= XXH_PRIME_MX2;
+        return h ^ (h >>> 28);
+    }
+
+    static final class FnvMurmur extends BuiltinHashStrategy {
+        private final boolean fastrange;
+
+        FnvMurmur(int id, boolean fastrange) {
+            super(id);
+            this.fastrange = fastrange;
+        }
+
+        @Override
+        public long flowHash(long flowLabel, long seed) {
+            return SKMV.fnv1aHash64(flowLabel, seed);
+        }
+
+        @Override
+        public long elementHash(long elementID, int seed) {
+            return SKMV.murmurHash3_64(elementID, seed);
+        }
+
+        /**
+         * FNV-1a's last bytes reach only a few of its high bits, which fastrange reads, so the hash
+         * is first multiplied by the 64-bit golden ratio to carry its well-mixed low bits up
+         */
+        @Override
+        public int bucketIndex(long flowHash, int m) {
+            return fastrange ? fastrange(flowHash * GOLDEN_RATIO_64, m) : (int) ((flowHash & Long.MAX_VALUE) % m);
+        }
+    }
+
+    static final class WyHash extends BuiltinHashStrategy {
+        WyHash(int id) {
+            super(id);
+        }
+
+        @Override
+        public long flowHash(long flowLabel, long seed) {
+            return wyhash64(flowLabel, seed);
+        }
+
+        @Override
+        public long elementHash(long elementID, int seed) {
+            return wyhash64(elementID, seed);
+        }
+
+        @Override
+        public int bucketIndex(long flowHash, int m) {
+            return fastrange(flowHash, m);
+        }
+    }
+
+    static final class Xxh3 extends BuiltinHashStrategy {
+        Xxh3(int id) {
+            super(id);
+        }
+
+        @Override
+        public long flowHash(long flowLabel, long seed) {
+            return xxh3_64(flowLabel, seed);
+        }
+
+        @Override
+        public long elementHash(long elementID, int seed) {
+            return xxh3_64(elementID, seed);
+        }
+
+        @Override
+        public int bucketIndex(long flowHash, int m) {
+            return fastrange(flowHash, m);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.slidingdistinctcounter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe Sliding KMV sketch with striped bucket locks
+ *
+ * Runs the {@link SKMV} algorithm on buckets guarded by a configurable number of lock stripes
+ * (bucket b by stripe b % stripes), so writers on different stripes proceed in parallel.
+ * The global time is an atomic clock holding the largest timestamp seen so far; it only moves
+ * forward and is the time at which recording, queries and cleaning evaluate buckets. As in
+ * {@link LockFreeSKMV}, an item is stored with its own timestamp, so a lagging thread's items land
+ * where they belong in the window, but every window check it triggers (lock timeout, head outdate,
+ * free slot search) runs at the clock, so a late item cannot revive entries or locks that have
+ * already expired; a duplicate never moves a newer timestamp back. Items already N or more time units
+ * behind the clock are outside the window and are dropped, which also keeps every stored timestamp
+ * within the AT range of the clock.
+ *
+ * estimateCardinality and periodicClean run concurrently with writers, holding one stripe at a
+ * time; each bucket is evaluated at the clock value read under its stripe, so an estimate combines
+ * per-bucket states that are each consistent but taken at slightly different times.
+ *
+ * @author Research Implementation
+ */
+public class ConcurrentSKMV {
+
+    private final SKMV sketch;               // Bucket state, accessed only through its per-bucket operations
+    private final ReentrantLock[] stripes;   // Bucket b is guarded by stripes[b % stripes.length]
+    private final AtomicLong clock;          // Largest timestamp seen (the global time T)
+
+    /**
+     * Constructor for the concurrent sketch with 64 lock stripes
+     *
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+     */
+    public ConcurrentSKMV(long N, int k, int m, int delta1, int delta2) {
+        this(N, k, m, delta1, delta2, 64);
+    }
+
+    /**
+     * Constructor for the concurrent sketch
+     *
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+     * @param stripes Number of bucket locks (capped at m)
+     */
+    public ConcurrentSKMV(long N, int k, int m, int delta1, int delta2, int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripes);
+        }
+        this.sketch = new SKMV(N, k, m, delta1, delta2);
+        this.stripes = new ReentrantLock[Math.min(stripes, m)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.clock = new AtomicLong(0);
+    }
+
+    /**
+     * Online Item Recording, callable from any number of threads
+     *
+     * @param flowLabel The flow identifier
+     * @param elementID The element identifier to process
+     * @param timestamp The timestamp of the arriving item (advances the clock if newer)
+     * @return false if the item was dropped for being outside the window
+     */
+    public boolean recordItem(long flowLabel, long elementID, long timestamp) {
+        // Hashing needs no lock
+        int b = sketch.bucketOf(flowLabel);
+        long h_y = sketch.elementHash(elementID);
+
+        ReentrantLock lock = stripes[b % stripes.length];
+        lock.lock();
+        try {
+            // Read under the stripe so a bucket never holds a timestamp beyond what a query or clean reads
+            long now = advanceClock(timestamp);
+            if (now - timestamp >= sketch.getWindowSize()) {
+                return false;
+            }
+            sketch.recordInBucket(b, h_y, timestamp, now);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Periodic cleaning, callable concurrently with writers
+     *
+     * @param currentTime Current global time for cleaning (advances the clock if newer)
+     */
+    public void periodicClean(long currentTime) {
+        advanceClock(currentTime);
+        for (int s = 0; s < stripes.length; s++) {
+            stripes[s].lock();
+            try {
+                long now = clock.get();
+                for (int b = s; b < sketch.getM(); b += stripes.length) {
+                    sketch.cleanBucketAt(b, now);
+                }
+            } finally {
+                stripes[s].unlock();
+            }
+        }
+    }
+
+    /**
+     * Query method for cardinality estimation, callable concurrently with writers
+     *
+     * @return Estimated cardinality of distinct elements in sliding window
+     */
+    public double estimateCardinality() {
+        double harmonicSum = 0.0;
+        int effectiveM = sketch.getM();
+        for (int s = 0; s < stripes.length; s++) {
+            stripes[s].lock();
+            try {
+                long now = clock.get();
+                for (int b = s; b < sketch.getM(); b += stripes.length) {
+                    double n_i = sketch.bucketEstimateAt(b, now);
+                    if (Double.isNaN(n_i)) {
+                        effectiveM--;  // Skip empty buckets
+                    } else if (n_i > 0) {
+                        harmonicSum += 1.0 / n_i;
+                    }
+                }
+            } finally {
+                stripes[s].unlock();
+            }
+        }
+
+        if (harmonicSum > 0 && effectiveM > 0) {
+            return effectiveM / harmonicSum;
+        } else {
+            return 0.0;
+        }
+    }
+
+    /**
+     * Query method for the cardinality of a single flow, callable concurrently with writers
+     *
+     * @param flowLabel The flow identifier
+     * @return Estimated number of distinct elements of the flow in sliding window (0 if none)
+     */
+    public double estimateFlowCardinality(long flowLabel) {
+        int b = sketch.bucketOf(flowLabel);
+        ReentrantLock lock = stripes[b % stripes.length];
+        lock.lock();
+        try {
+            double n_i = sketch.bucketEstimateAt(b, clock.get());
+            return Double.isNaN(n_i) ? 0.0 : Math.max(0.0, n_i);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move the clock forward to the timestamp unless it is already past it
+     *
+     * @return Clock value after the update
+     */
+    private long advanceClock(long timestamp) {
+        long now = clock.get();
+        while (timestamp > now) {
+            if (clock.compareAndSet(now, timestamp)) {
+                return timestamp;
+            }
+            now = clock.get();
+        }
+        return now;
+    }
+
+    // Getter methods for configuration and state
+    public long getCurrentTime() { return clock.get(); }
+    public long getWindowSize() { return sketch.getWindowSize(); }
+    public int getK() { return sketch.getK(); }
+    public int getM() { return sketch.getM(); }
+    public int getDelta1() { return sketch.getDelta1(); }
+    public int getDelta2() { return sketch.getDelta2(); }
+    public int getStripes() { return stripes.length; }
+}
@@ -0,0 +1,169 @@
+package com.example.slidingdistinctcounter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Off-heap storage backend for the Sliding KMV sketch
+ *
+ * All bucket state lives in a single direct ByteBuffer, so the heap cost of a sketch is O(1)
+ * regardless of m and k and the GC never traces its contents. The buffer is split into
+ * struct-of-arrays regions: hashes and AT values (m*k longs each), then lock_time and lock_maxV
+ * (m longs each), head (m ints) and lock (m bytes).
+ *
+ * The memory is released deterministically by {@link #close()}; any access afterwards fails
+ * with an IndexOutOfBoundsException instead of touching freed memory.
+ *
+ * @author Research Implementation
+ */
+public class DirectSKMVStorage implements SKMVStorage {
+
+    private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+
+    private final int m;              // Number of buckets
+    private final int k;              // Entries per bucket
+
+    // Region offsets in bytes
+    private final int atOffset;
+    private final int lockTimeOffset;
+    private final int lockMaxVOffset;
+    private final int headOffset;
+    private final int lockOffset;
+
+    private ByteBuffer buffer;        // Direct buffer holding all regions (CLOSED after close())
+
+    /**
+     * Constructor for the off-heap storage, initialized to empty buckets
+     *
+     * @param m Number of buckets
+     * @param k Entries per bucket
+     * @param N Window length (time units), used for the unset AT value 2*N
+     * @param maxHashValue Hash value that marks an empty entry (2^delta1 - 1)
+     */
+    public DirectSKMVStorage(int m, int k, long N, long maxHashValue) {
+        this(ByteBuffer.allocateDirect(checkedSize(m, k)).order(ByteOrder.nativeOrder()), m, k, N, maxHashValue, true);
+    }
+
+    /**
+     * Constructor over an existing direct buffer of at least {@link #sizeInBytes(int, int)} bytes
+     * Used by backends that obtain their memory elsewhere (e.g. a file mapping)
+     *
+     * @param buffer Buffer holding the regions, starting at index 0, in its final byte order
+     * @param m Number of buckets
+     * @param k Entries per bucket
+     * @param N Window length (time units), used for the unset AT value 2*N
+     * @param maxHashValue Hash value that marks an empty entry (2^delta1 - 1)
+     * @param initialize true to reset the buffer to empty buckets, false to keep its contents
+     */
+    protected DirectSKMVStorage(ByteBuffer buffer, int m, int k, long N, long maxHashValue, boolean initialize) {
+        int size = checkedSize(m, k);
+        if (buffer.capacity() < size) {
+            throw new IllegalArgumentException(
+                String.format("Buffer of %d bytes is too small for %d bytes of bucket state", buffer.capacity(), size));
+        }
+
+        long slots = (long) m * k;
+        this.m = m;
+        this.k = k;
+        this.atOffset = (int) (slots * Long.BYTES);
+        this.lockTimeOffset = (int) (slots * 2 * Long.BYTES);
+        this.lockMaxVOffset = lockTimeOffset + m * Long.BYTES;
+        this.headOffset = lockMaxVOffset + m * Long.BYTES;
+        this.lockOffset = headOffset + m * Integer.BYTES;
+        this.buffer = buffer;
+
+        if (initialize) {
+            for (int slot = 0; slot < slots; slot++) {
+                setHash(slot, maxHashValue);
+                setAT(slot, 2 * N);
+            }
+            for (int b = 0; b < m; b++) {
+                setLock(b, 0);
+                setLockTime(b, 2 * N);
+                setLockMaxV(b, maxHashValue);
+                setHead(b, 0);
+            }
+        }
+    }
+
+    /**
+     * Bytes of bucket state needed for m buckets of k entries
+     *
+     * @param m Number of buckets
+     * @param k Entries per bucket
+     * @return Size of all regions in bytes
+     */
+    public static long sizeInBytes(int m, int k) {
+        return (long) m * k * 2 * Long.BYTES + (long) m * (2 * Long.BYTES + Integer.BYTES + 1);
+    }
+
+    private static int checkedSize(int m, int k) {
+        long size = sizeInBytes(m, k);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Sketch too large for a single direct buffer: " + size + " bytes");
+        }
+        return (int) size;
+    }
+
+    @Override public int getM() { return m; }
+    @Override public int getK() { return k; }
+
+    @Override public long getHash(int slot) { return buffer.getLong(slot << 3); }
+    @Override public void setHash(int slot, long h) { buffer.putLong(slot << 3, h); }
+    @Override public long getAT(int slot) { return buffer.getLong(atOffset + (slot << 3)); }
+    @Override public void setAT(int slot, long vAT) { buffer.putLong(atOffset + (slot << 3), vAT); }
+
+    @Override public int getLock(int bucketIndex) { return buffer.get(lockOffset + bucketIndex); }
+    @Override public void setLock(int bucketIndex, int lock) { buffer.put(lockOffset + bucketIndex, (byte) lock); }
+    @Override public long getLockTime(int bucketIndex) { return buffer.getLong(lockTimeOffset + (bucketIndex << 3)); }
+    @Override public void setLockTime(int bucketIndex, long vAT) { buffer.putLong(lockTimeOffset + (bucketIndex << 3), vAT); }
+    @Override public long getLockMaxV(int bucketIndex) { return buffer.getLong(lockMaxVOffset + (bucketIndex << 3)); }
+    @Override public void setLockMaxV(int bucketIndex, long lockMaxV) { buffer.putLong(lockMaxVOffset + (bucketIndex << 3), lockMaxV); }
+    @Override public int getHead(int bucketIndex) { return buffer.getInt(headOffset + (bucketIndex << 2)); }
+    @Override public void setHead(int bucketIndex, int head) { buffer.putInt(headOffset + (bucketIndex << 2), head); }
+
+    /**
+     * @return Size of the direct buffer in bytes (0 once closed)
+     */
+    public long getSizeInBytes() { return buffer.capacity(); }
+
+    /**
+     * Release the direct memory immediately instead of waiting for the buffer to be collected
+     * Safe to call more than once
+     */
+    @Override
+    public void close() {
+        ByteBuffer released = buffer;
+        if (released == CLOSED) {
+            return;
+        }
+        buffer = CLOSED;
+        freeDirect(released);
+    }
+
+    /**
+     * @return true once {@link #close()} has been called
+     */
+    protected boolean isClosed() {
+        return buffer == CLOSED;
+    }
+
+    /**
+     * Free a direct buffer (or unmap a mapped one) through sun.misc.Unsafe.invokeCleaner (JDK 9+)
+     * Falls back to leaving the buffer to the GC when the method is not accessible
+     * or the buffer is a slice that does not own its memory
+     */
+    static void freeDirect(ByteBuffer direct) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), direct);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not available on this JVM; the memory is reclaimed when the buffer is collected
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.example.slidingdistinctcounter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Crash-consistent {@link SKMV} backed by binary checkpoints and a write-ahead log
+ *
+ * The directory holds one checkpoint (an 8-byte log generation followed by the {@link SKMVCodec}
+ * encoding of the sketch) and the write-ahead log of that generation, "wal-<generation>", with every
+ * item and cleaning pass applied since the checkpoint. Operations are applied to the sketch at once
+ * and appended to an in-memory group; {@link #commit()} writes the group and forces it to disk with a
+ * single fsync, and happens automatically once groupCommitItems items are pending. Only committed
+ * operations survive a crash.
+ *
+ * A checkpoint starts a new log generation, writes the sketch to a temporary file, forces it, renames
+ * it over the previous checkpoint and only then deletes the old log, so a crash at any point leaves a
+ * checkpoint together with the complete log of its generation. Checkpoints are taken every
+ * checkpointInterval time units of stream time, so recovery loads one checkpoint and replays at most
+ * that much of the stream, however long the window is.
+ *
+ * Log record layout (little-endian), each followed by a CRC32C of the record:
+ * items: type 1, count (int), count * (flowLabel, elementID, timestamp) (longs)
+ * clean: type 2, currentTime (long)
+ * estimate: type 3
+ * flow estimate: type 4, flowLabel (long)
+ * Queries are logged because they change the sketch: a query-time P2C status update sets lock_time
+ * to the query time and resets lock_maxV, which later items see. Replaying a query at the same point
+ * of the stream repeats exactly those transitions. Recovery stops at the first incomplete or corrupt
+ * record and truncates the log there, and reproduces the sketch exactly as of the last committed
+ * operation.
+ *
+ * @author Research Implementation
+ */
+public class DurableSKMV implements AutoCloseable {
+
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String CHECKPOINT_TMP = "checkpoint.tmp";
+    private static final String LOG_PREFIX = "wal-";
+
+    private static final byte RECORD_ITEMS = 1;
+    private static final byte RECORD_CLEAN = 2;
+    private static final byte RECORD_ESTIMATE = 3;
+    private static final byte RECORD_FLOW_ESTIMATE = 4;
+    private static final int ITEM_BYTES = 24;
+    private static final int RECORD_SLACK = 64;     // Room for closing a record and one clean record
+
+    private final Path directory;
+    private final SKMV sketch;
+    private final long checkpointInterval;          // Stream time units between checkpoints (0 = manual only)
+    private final int groupCommitItems;             // Pending items that trigger a commit
+    private final ByteBuffer pending;               // Operations not committed yet
+    private final CRC32C crc = new CRC32C();
+    private int openRecord = -1;                    // Position of the open items record, -1 if none
+    private int openCount;                          // Items in the open record
+    private int pendingItems;                       // Items in the pending group
+
+    private long generation;                        // Log generation of the current checkpoint
+    private FileChannel log;                        // Log of the current generation
+    private long lastCheckpointTime;                // Sketch time at the latest checkpoint
+
+    // Statistics
+    private long commits;
+    private long checkpoints;
+    private final long recoveredOperations;
+    private final long recoveryNanos;
+
+    private DurableSKMV(Path directory, SKMV sketch, long generation, FileChannel log, long checkpointInterval,
+                        int groupCommitItems, long recoveredOperations, long recoveryNanos) {
+        this.directory = directory;
+        this.sketch = sketch;
+        this.generation = generation;
+        this.log = log;
+        this.checkpointInterval = checkpointInterval;
+        this.groupCommitItems = groupCommitItems;
+        this.pending = ByteBuffer.allocateDirect(groupCommitItems * ITEM_BYTES + 2 * RECORD_SLACK)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        this.recoveredOperations = recoveredOperations;
+        this.recoveryNanos = recoveryNanos;
+        this.lastCheckpointTime = sketch.getCurrentTime();
+    }
+
+    /**
+     * Open a durable sketch in a directory, recovering its state if the directory holds one
+     * An existing state must have been created with the same parameters
+     *
+     * @param directory Directory for the checkpoint and log (created if missing)
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values
+     * @param delta2 Bit-width for timestamps
+     * @param groupCommitItems Pending items that trigger a commit (1 = fsync every item)
+     * @param checkpointInterval Stream time units between automatic checkpoints (0 = only on request)
+     * @return Sketch with the last committed state
+     * @throws IOException If the directory cannot be read or written, or a checkpoint is corrupt
+     */
+    public static DurableSKMV open(Path directory, long N, int k, int m, int delta1, int delta2,
+                                   int groupCommitItems, long checkpointInterval) throws IOException {
+        if (groupCommitItems < 1) {
+            throw new IllegalArgumentException("Group commit size must be positive: " + groupCommitItems);
+        }
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative: " + checkpointInterval);
+        }
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(CHECKPOINT_TMP));
+
+        SKMV sketch;
+        long generation = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint)).order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                generation = buffer.getLong();
+                sketch = SKMVCodec.read(buffer);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt SKMV checkpoint " + checkpoint, e);
+            }
+            if (sketch.getWindowSize() != N || sketch.getK() != k || sketch.getM() != m
+                    || sketch.getDelta1() != delta1 || sketch.getDelta2() != delta2) {
+                throw new IllegalArgumentException(String.format(
+                    "Checkpoint %s was created with N=%d, k=%d, m=%d, delta1=%d, delta2=%d, not N=%d, k=%d, m=%d, "
+                    + "delta1=%d, delta2=%d", checkpoint, sketch.getWindowSize(), sketch.getK(), sketch.getM(),
+                    sketch.getDelta1(), sketch.getDelta2(), N, k, m, delta1, delta2));
+            }
+        } else {
+            sketch = new SKMV(N, k, m, delta1, delta2);
+        }
+
+        // Logs of other generations are leftovers of an interrupted checkpoint
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(directory, LOG_PREFIX + "*")) {
+            for (Path file : logs) {
+                if (!file.equals(logFile(directory, generation))) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        FileChannel log = FileChannel.open(logFile(directory, generation),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long replayed = replay(sketch, log);
+        return new DurableSKMV(directory, sketch, generation, log, checkpointInterval, groupCommitItems,
+            replayed, System.nanoTime() - start);
+    }
+
+    /**
+     * Online Item Recording, durable after the next commit
+     *
+     * @param flowLabel The flow identifier
+     * @param elementID The element identifier to process
+     * @param timestamp The timestamp of the arriving item
+     * @throws IOException If a triggered commit or checkpoint fails
+     */
+    public void recordItem(long flowLabel, long elementID, long timestamp) throws IOException {
+        sketch.recordItem(flowLabel, elementID, timestamp);
+        appendItem(flowLabel, elementID, timestamp);
+        afterOperation();
+    }
+
+    /**
+     * Batched Item Recording (see SKMV.recordBatch), durable after the next commit
+     *
+     * @throws IOException If a triggered commit or checkpoint fails
+     */
+    public void recordBatch(long[] flowLabels, long[] elementIDs, long[] timestamps, int offset, int length)
+            throws IOException {
+        sketch.recordBatch(flowLabels, elementIDs, timestamps, offset, length);
+        for (int i = offset; i < offset + length; i++) {
+            appendItem(flowLabels[i], elementIDs[i], timestamps[i]);
+        }
+        afterOperation();
+    }
+
+    /**
+     * Periodic cleaning, durable after the next commit
+     *
+     * @param currentTime Current global time for cleaning
+     * @throws IOException If a triggered commit or checkpoint fails
+     */
+    public void periodicClean(long currentTime) throws IOException {
+        sketch.periodicClean(currentTime);
+        closeRecord();
+        pending.put(RECORD_CLEAN).putLong(currentTime);
+        putChecksum(pending.position() - 9);
+        afterOperation();
+    }
+
+    /**
+     * Write the pending operations to the log and force them to disk with one fsync
+     *
+     * @throws IOException If writing or forcing the log fails
+     */
+    public void commit() throws IOException {
+        closeRecord();
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        while (pending.hasRemaining()) {
+            log.write(pending);
+        }
+        log.force(false);
+        pending.clear();
+        pendingItems = 0;
+        commits++;
+    }
+
+    /**
+     * Commit, then replace the checkpoint with the current sketch and start an empty log
+     *
+     * @throws IOException If the checkpoint or the new log cannot be written
+     */
+    public void checkpoint() throws IOException {
+        commit();
+        long next = generation + 1;
+        FileChannel nextLog = FileChannel.open(logFile(directory, next), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(8 + SKMVCodec.encodedSize(sketch)))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(next);
+        SKMVCodec.write(sketch, buffer);
+        buffer.flip();
+        Path tmp = directory.resolve(CHECKPOINT_TMP);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+
+        // The new checkpoint covers the old log from here on
+        log.close();
+        Files.delete(logFile(directory, generation));
+        log = nextLog;
+        generation = next;
+        lastCheckpointTime = sketch.getCurrentTime();
+        checkpoints++;
+    }
+
+    /**
+     * Query method for cardinality estimation, logged like an item since it can change P2C status
+     *
+     * @return Estimated cardinality of distinct elements in sliding window
+     * @throws IOException If a triggered commit or checkpoint fails
+     */
+    public double estimateCardinality() throws IOException {
+        double estimate = sketch.estimateCardinality();
+        closeRecord();
+        pending.put(RECORD_ESTIMATE);
+        putChecksum(pending.position() - 1);
+        afterOperation();
+        return estimate;
+    }
+
+    /**
+     * Query method for the cardinality of a single flow, logged like an item since it can change P2C status
+     *
+     * @param flowLabel The flow identifier
+     * @return Estimated number of distinct elements of the flow in sliding window (0 if none)
+     * @throws IOException If a triggered commit or checkpoint fails
+     */
+    public double estimateFlowCardinality(long flowLabel) throws IOException {
+        double estimate = sketch.estimateFlowCardinality(flowLabel);
+        closeRecord();
+        pending.put(RECORD_FLOW_ESTIMATE).putLong(flowLabel);
+        putChecksum(pending.position() - 9);
+        afterOperation();
+        return estimate;
+    }
+
+    /**
+     * Commit the pending operations and close the log; the next open replays it onto the checkpoint
+     */
+    @Override
+    public void close() throws IOException {
+        if (!log.isOpen()) {
+            return;
+        }
+        try {
+            commit();
+        } finally {
+            log.close();
+        }
+    }
+
+    private void appendItem(long flowLabel, long elementID, long timestamp) throws IOException {
+        if (pending.remaining() < ITEM_BYTES + RECORD_SLACK) {
+            commit();  // A batch larger than the group
+        }
+        if (openRecord < 0) {
+            openRecord = pending.position();
+            pending.put(RECORD_ITEMS).putInt(0);
+            openCount = 0;
+        }
+        pending.putLong(flowLabel).putLong(elementID).putLong(timestamp);
+        openCount++;
+        pendingItems++;
+    }
+
+    private void closeRecord() {
+        if (openRecord < 0) {
+            return;
+        }
+        pending.putInt(openRecord + 1, openCount);
+        putChecksum(openRecord);
+        openRecord = -1;
+    }
+
+    /**
+     * Append the CRC32C of the pending bytes from the record start to the current position
+     */
+    private void putChecksum(int recordStart) {
+        ByteBuffer record = pending.duplicate();
+        record.position(recordStart).limit(pending.position());
+        crc.reset();
+        crc.update(record);
+        pending.putInt((int) crc.getValue());
+    }
+
+    private void afterOperation() throws IOException {
+        if (pendingItems >= groupCommitItems || pending.remaining() < RECORD_SLACK) {
+            commit();
+        }
+        if (checkpointInterval > 0 && sketch.getCurrentTime() - lastCheckpointTime >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Apply every intact record of the log and truncate it after the last one
+     *
+     * @return Number of items, cleaning passes and queries replayed
+     */
+    private static long replay(SKMV sketch, FileChannel log) throws IOException {
+        long size = log.size();
+        if (size == 0) {
+            return 0;
+        }
+        ByteBuffer in = log.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C crc = new CRC32C();
+        long operations = 0;
+        int end = 0;  // End of the last intact record
+        while (in.remaining() >= 5) {
+            int start = in.position();
+            byte type = in.get();
+            long length;
+            if (type == RECORD_ITEMS) {
+                length = 5 + (long) in.getInt() * ITEM_BYTES;
+            } else if (type == RECORD_CLEAN || type == RECORD_FLOW_ESTIMATE) {
+                length = 9;
+            } else if (type == RECORD_ESTIMATE) {
+                length = 1;
+            } else {
+                break;
+            }
+            if (length < 1 || start + length + 4 > size) {
+                break;  // Torn or corrupt tail
+            }
+            ByteBuffer record = in.duplicate();
+            record.position(start).limit((int) (start + length));
+            crc.reset();
+            crc.update(record);
+            if (in.getInt((int) (start + length)) != (int) crc.getValue()) {
+                break;
+            }
+            if (type == RECORD_ITEMS) {
+                for (int p = start + 5; p < start + length; p += ITEM_BYTES) {
+                    sketch.recordItem(in.getLong(p), in.getLong(p + 8), in.getLong(p + 16));
+                    operations++;
+                }
+            } else {
+                if (type == RECORD_CLEAN) {
+                    sketch.periodicClean(in.getLong(start + 1));
+                } else if (type == RECORD_ESTIMATE) {
+                    sketch.estimateCardinality();
+                } else {
+                    sketch.estimateFlowCardinality(in.getLong(start + 1));
+                }
+                operations++;
+            }
+            in.position((int) (start + length + 4));
+            end = in.position();
+        }
+        if (end < size) {
+            log.truncate(end);
+            log.force(false);
+        }
+        log.position(end);
+        return operations;
+    }
+
+    private void forceDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory; the rename is still atomic there
+        }
+    }
+
+    private static Path logFile(Path directory, long generation) {
+        return directory.resolve(LOG_PREFIX + generation);
+    }
+
+    // Getter methods for configuration and state
+    public long getCurrentTime() { return sketch.getCurrentTime(); }
+    public long getWindowSize() { return sketch.getWindowSize(); }
+    public int getK() { return sketch.getK(); }
+    public int getM() { return sketch.getM(); }
+    public long getGeneration() { return generation; }
+    public long getCommits() { return commits; }
+    public long getCheckpoints() { return checkpoints; }
+    public long getRecoveredOperations() { return recoveredOperations; }
+    public long getRecoveryNanos() { return recoveryNanos; }
+    public SKMV getSketch() { return sketch; }
+}
@@ -0,0 +1,188 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Per-bucket cache of Sliding KMV estimate terms for incremental cardinality queries
+ *
+ * Each bucket's 1/n_i term is kept together with the time until which it stays valid (the earliest
+ * expiry among its counted entries and its lock), and the harmonic sum and non-empty bucket count are
+ * kept up to date as terms change. Buckets written since the last query are queued as dirty; buckets
+ * whose term has timed out are found through an indexed min-heap on the valid-until times, so a query
+ * only recomputes those two sets.
+ *
+ * @author Research Implementation
+ */
+final class EstimateCache {
+
+    private final double[] terms;       // 1/n_i of each bucket, 0 if it adds nothing to the sum
+    private final boolean[] counted;    // Whether each bucket has k' > 0 (counts towards effective m)
+    private double harmonicSum;         // Sum of all terms
+    private int countedBuckets;         // Buckets with k' > 0
+
+    private final int[] dirty;          // Stack of buckets queued for recomputation
+    private int dirtyCount;
+    private final boolean[] queued;     // Whether each bucket is on the dirty stack
+
+    private final int[] heap;           // Buckets ordered by valid-until time
+    private final int[] heapIndex;      // Position of each bucket in the heap, -1 if absent
+    private final long[] validUntil;    // Time at which each bucket's term may change
+    private int heapSize;
+
+    private final int fullRecomputeEvery; // Queries between full recomputations
+    private int queriesSinceFull;
+
+    /**
+     * @param m Number of buckets
+     * @param fullRecomputeEvery Queries between full recomputations that reset rounding drift
+     */
+    EstimateCache(int m, int fullRecomputeEvery) {
+        this.terms = new double[m];
+        this.counted = new boolean[m];
+        this.dirty = new int[m];
+        this.queued = new boolean[m];
+        this.heap = new int[m];
+        this.heapIndex = new int[m];
+        this.validUntil = new long[m];
+        this.fullRecomputeEvery = fullRecomputeEvery;
+        java.util.Arrays.fill(heapIndex, -1);
+        this.queriesSinceFull = fullRecomputeEvery;  // First query recomputes everything
+    }
+
+    void markDirty(int bucketIndex) {
+        if (!queued[bucketIndex]) {
+            queued[bucketIndex] = true;
+            dirty[dirtyCount++] = bucketIndex;
+        }
+    }
+
+    /**
+     * Queue every bucket whose term timed out at or before the given time
+     */
+    void expire(long currentTime) {
+        while (heapSize > 0 && validUntil[heap[0]] <= currentTime) {
+            int bucket = heap[0];
+            removeFromHeap(bucket);
+            markDirty(bucket);
+        }
+    }
+
+    /**
+     * @return Next dirty bucket to recompute, or -1 when none is left
+     */
+    int pollDirty() {
+        if (dirtyCount == 0) {
+            return -1;
+        }
+        int bucket = dirty[--dirtyCount];
+        queued[bucket] = false;
+        return bucket;
+    }
+
+    /**
+     * Drop the dirty queue after all buckets were recomputed
+     */
+    void clearDirty() {
+        while (dirtyCount > 0) {
+            queued[dirty[--dirtyCount]] = false;
+        }
+    }
+
+    /**
+     * Count a query; true when it should recompute all buckets instead of the dirty ones
+     */
+    boolean startQuery() {
+        if (++queriesSinceFull >= fullRecomputeEvery) {
+            queriesSinceFull = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replace a bucket's term
+     *
+     * @param bucketIndex Bucket to update
+     * @param isCounted Whether the bucket has k' > 0
+     * @param term 1/n_i, or 0 if the bucket adds nothing to the harmonic sum
+     * @param until Time at which the term may change (Long.MAX_VALUE if only a write can change it)
+     */
+    void set(int bucketIndex, boolean isCounted, double term, long until) {
+        harmonicSum += term - terms[bucketIndex];
+        terms[bucketIndex] = term;
+        if (isCounted != counted[bucketIndex]) {
+            countedBuckets += isCounted ? 1 : -1;
+            counted[bucketIndex] = isCounted;
+        }
+        removeFromHeap(bucketIndex);
+        if (until != Long.MAX_VALUE) {
+            validUntil[bucketIndex] = until;
+            heapIndex[bucketIndex] = heapSize;
+            heap[heapSize++] = bucketIndex;
+            siftUp(heapIndex[bucketIndex]);
+        }
+    }
+
+    /**
+     * Recompute the harmonic sum from the cached terms, dropping accumulated rounding error
+     */
+    void resum() {
+        double sum = 0.0;
+        for (double term : terms) {
+            sum += term;
+        }
+        harmonicSum = sum;
+    }
+
+    double getHarmonicSum() { return harmonicSum; }
+    int getCountedBuckets() { return countedBuckets; }
+
+    private void removeFromHeap(int bucketIndex) {
+        int index = heapIndex[bucketIndex];
+        if (index == -1) {
+            return;
+        }
+        heapIndex[bucketIndex] = -1;
+        int last = heap[--heapSize];
+        if (index < heapSize) {
+            heap[index] = last;
+            heapIndex[last] = index;
+            siftDown(index);
+            siftUp(heapIndex[last]);
+        }
+    }
+
+    private void siftUp(int index) {
+        int bucket = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (validUntil[heap[parent]] <= validUntil[bucket]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heapIndex[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = bucket;
+        heapIndex[bucket] = index;
+    }
+
+    private void siftDown(int index) {
+        int bucket = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && validUntil[heap[child + 1]] < validUntil[heap[child]]) {
+                child++;
+            }
+            if (validUntil[bucket] <= validUntil[heap[child]]) {
+                break;
+            }
+            heap[index] = heap[child];
+            heapIndex[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = bucket;
+        heapIndex[bucket] = index;
+    }
+}
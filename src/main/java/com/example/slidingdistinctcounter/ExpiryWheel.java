@@ -0,0 +1,117 @@
+package com.example.slidingdistinctcounter;
+
+import java.util.Arrays;
+
+/**
+ * Timer wheel indexing buckets by the earliest time one of their entries or their lock expires
+ *
+ * Each bucket sits in at most one slot, a doubly linked list threaded through per-bucket arrays.
+ * Slots cover granularity time units each, with granularity = ceil(N / slots), so every expiry
+ * within the N time units ahead has its own position and the wheel needs no overflow levels.
+ * Positions are reused modulo the slot count; each bucket keeps its absolute slot so a position
+ * shared with a later round is never fired early.
+ *
+ * @author Research Implementation
+ */
+final class ExpiryWheel {
+
+    private static final long UNSCHEDULED = Long.MIN_VALUE;
+
+    private final int mask;            // Slot count - 1 (slot count is a power of two)
+    private final long granularity;    // Time units per slot
+    private final int[] slotHead;      // First bucket of each slot, -1 when empty
+    private final int[] next;          // Next bucket in the same slot, -1 at the end
+    private final int[] prev;          // Previous bucket in the same slot, -1 at the front
+    private final long[] scheduledAt;  // Absolute slot of each bucket, UNSCHEDULED if none
+    private long nextToFire;           // First absolute slot not fired yet
+
+    /**
+     * @param m Number of buckets
+     * @param N Window length (time units)
+     * @param slots Slot count (rounded up to a power of two)
+     * @param currentTime Time the wheel starts at; buckets due at it fire on the first poll
+     */
+    ExpiryWheel(int m, long N, int slots, long currentTime) {
+        int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+        this.mask = size - 1;
+        this.granularity = Math.max(1, (N + size - 1) / size);
+        this.slotHead = new int[size];
+        this.next = new int[m];
+        this.prev = new int[m];
+        this.scheduledAt = new long[m];
+        Arrays.fill(slotHead, -1);
+        Arrays.fill(scheduledAt, UNSCHEDULED);
+        this.nextToFire = Math.floorDiv(currentTime, granularity);
+    }
+
+    /**
+     * Make the bucket fire once time reaches the expiry, unless it is already due no later
+     */
+    void schedule(int bucketIndex, long expiry) {
+        long slot = Math.max(Math.floorDiv(expiry, granularity), nextToFire);
+        if (scheduledAt[bucketIndex] != UNSCHEDULED) {
+            if (scheduledAt[bucketIndex] <= slot) {
+                return;
+            }
+            unschedule(bucketIndex);
+        }
+        int position = (int) (slot & mask);
+        scheduledAt[bucketIndex] = slot;
+        prev[bucketIndex] = -1;
+        next[bucketIndex] = slotHead[position];
+        if (slotHead[position] != -1) {
+            prev[slotHead[position]] = bucketIndex;
+        }
+        slotHead[position] = bucketIndex;
+    }
+
+    void unschedule(int bucketIndex) {
+        if (scheduledAt[bucketIndex] == UNSCHEDULED) {
+            return;
+        }
+        if (prev[bucketIndex] != -1) {
+            next[prev[bucketIndex]] = next[bucketIndex];
+        } else {
+            slotHead[(int) (scheduledAt[bucketIndex] & mask)] = next[bucketIndex];
+        }
+        if (next[bucketIndex] != -1) {
+            prev[next[bucketIndex]] = prev[bucketIndex];
+        }
+        scheduledAt[bucketIndex] = UNSCHEDULED;
+    }
+
+    /**
+     * Remove and return a bucket whose slot has fully passed at the given time
+     *
+     * @return Bucket index, or -1 once no bucket is due
+     */
+    int pollDue(long currentTime) {
+        long limit = Math.floorDiv(currentTime + 1, granularity);
+        if (limit - nextToFire > mask + 1) {
+            nextToFire = limit - (mask + 1);  // One round visits every position
+        }
+        while (nextToFire < limit) {
+            for (int b = slotHead[(int) (nextToFire & mask)]; b != -1; b = next[b]) {
+                if (scheduledAt[b] < limit) {
+                    unschedule(b);
+                    return b;
+                }
+            }
+            nextToFire++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return Number of buckets currently scheduled
+     */
+    int size() {
+        int count = 0;
+        for (long slot : scheduledAt) {
+            if (slot != UNSCHEDULED) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Per-bucket fingerprint bitmap for the Case 0 duplicate check
+ *
+ * Each bucket owns a small bitmap (8 bits per entry, rounded up to a power of two and at least
+ * one 64-bit word) with one bit set per non-empty entry, chosen by a multiplicative hash of the
+ * entry's hash value. An arriving hash whose bit is clear cannot be in the bucket, so the common
+ * miss costs a single word test instead of a k-entry scan; a set bit falls back to the scan.
+ *
+ * Writing an entry only sets the new hash's bit; the old hash's bit is left behind because another
+ * entry may share it. Such stale bits can only cause false positives (an extra scan), never a missed
+ * duplicate. A bucket's bitmap is rebuilt from its entries once it has accumulated k stale bits and
+ * whenever the bucket is cleaned, so maintenance stays O(1) amortized per write.
+ *
+ * @author Research Implementation
+ */
+final class FingerprintFilter {
+
+    private static final int BITS_PER_ENTRY = 8;
+
+    private final int k;              // Entries per bucket
+    private final int wordsPerBucket; // 64-bit words per bucket bitmap
+    private final int shift;          // 64 - log2(bits per bucket)
+    private final long emptyHash;     // Hash value that marks an empty entry
+    private final long[] words;       // Bitmaps of all buckets
+    private final int[] staleBits;    // Overwritten non-empty hashes since the last rebuild, per bucket
+
+    /**
+     * Build the filter for all buckets from the current storage contents
+     *
+     * @param store Storage holding the bucket state
+     * @param emptyHash Hash value that marks an empty entry (2^delta1 - 1)
+     */
+    FingerprintFilter(SKMVStorage store, long emptyHash) {
+        this.k = store.getK();
+        int bits = Math.max(64, Integer.highestOneBit(Math.max(1, BITS_PER_ENTRY * k - 1)) << 1);
+        this.wordsPerBucket = bits >>> 6;
+        this.shift = 64 - Integer.numberOfTrailingZeros(bits);
+        this.emptyHash = emptyHash;
+        this.words = new long[store.getM() * wordsPerBucket];
+        this.staleBits = new int[store.getM()];
+
+        for (int b = 0; b < store.getM(); b++) {
+            rebuild(store, b);
+        }
+    }
+
+    private int bitIndex(long hash) {
+        return (int) ((hash * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * @return false if no entry of the bucket holds the hash, true if one might
+     */
+    boolean mightContain(int bucketIndex, long hash) {
+        int bit = bitIndex(hash);
+        return (words[bucketIndex * wordsPerBucket + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Record that an entry of the bucket changed from oldHash to newHash
+     */
+    void replace(SKMVStorage store, int bucketIndex, long oldHash, long newHash) {
+        if (oldHash != emptyHash && ++staleBits[bucketIndex] >= k) {
+            rebuild(store, bucketIndex);
+            return;
+        }
+        if (newHash != emptyHash) {
+            int bit = bitIndex(newHash);
+            words[bucketIndex * wordsPerBucket + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Recompute a bucket's bitmap from its entries, dropping stale bits
+     */
+    void rebuild(SKMVStorage store, int bucketIndex) {
+        staleBits[bucketIndex] = 0;
+        int first = bucketIndex * wordsPerBucket;
+        for (int w = first; w < first + wordsPerBucket; w++) {
+            words[w] = 0;
+        }
+        int base = bucketIndex * k;
+        for (int slot = base; slot < base + k; slot++) {
+            long hash = store.getHash(slot);
+            if (hash != emptyHash) {
+                int bit = bitIndex(hash);
+                words[first + (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+}
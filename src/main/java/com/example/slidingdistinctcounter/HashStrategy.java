@@ -0,0 +1,92 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Hash functions of the Sliding KMV sketch: H() maps flow labels to buckets, h() maps elements to
+ * hash values
+ *
+ * A strategy is given the sketch's seeds on every call, so one stateless instance serves any number
+ * of sketches. Sketches only agree on buckets and hash values, and can only be merged, if they use
+ * the same strategy and seeds; the strategy's id is recorded in {@link SKMVCodec} encodings for that
+ * check. Ids are one unsigned byte: 0 to 127 are reserved for the built-in strategies below and 128
+ * to 255 are free for custom ones.
+ *
+ * @author Research Implementation
+ */
+public interface HashStrategy {
+
+    /**
+     * The original FNV-1a flow hash and MurmurHash3 element hash with modulo bucket mapping, which
+     * reproduces the buckets and hash values of sketches built before strategies existed; labels that
+     * differ only in their upper bytes spread unevenly over a bucket count that is not a power of two
+     */
+    HashStrategy FNV_MURMUR = new BuiltinHashStrategy.FnvMurmur(0, false);
+
+    /**
+     * FNV-1a and MurmurHash3 as above, with the bucket taken by fastrange of the flow hash times the
+     * golden ratio instead of modulo
+     */
+    HashStrategy FNV_MURMUR_FASTRANGE = new BuiltinHashStrategy.FnvMurmur(1, true);
+
+    /**
+     * wyhash-style 64-bit mixer (two 64x64->128 bit multiply-folds) for both hashes, fastrange mapping
+     */
+    HashStrategy WYHASH = new BuiltinHashStrategy.WyHash(2);
+
+    /**
+     * XXH3-style rrmxmx finalizer for 8-byte inputs for both hashes, fastrange mapping
+     */
+    HashStrategy XXH3 = new BuiltinHashStrategy.Xxh3(3);
+
+    /**
+     * 64-bit hash of a flow label, reduced to a bucket by {@link #bucketIndex}
+     *
+     * @param flowLabel The flow identifier
+     * @param seed Bucket hash seed of the sketch
+     * @return Flow hash
+     */
+    long flowHash(long flowLabel, long seed);
+
+    /**
+     * 64-bit hash of an element; the sketch keeps its low delta1 bits
+     *
+     * @param elementID The element identifier
+     * @param seed Element hash seed of the sketch
+     * @return Element hash
+     */
+    long elementHash(long elementID, int seed);
+
+    /**
+     * Map a flow hash to a bucket
+     * The default takes the non-negative hash modulo m, which costs an integer division.
+     *
+     * @param flowHash Result of {@link #flowHash}
+     * @param m Number of buckets
+     * @return Bucket index (0 to m-1)
+     */
+    default int bucketIndex(long flowHash, int m) {
+        return (int) ((flowHash & Long.MAX_VALUE) % m);
+    }
+
+    /**
+     * @return Identifier in [0, 255] recorded in encodings; equal ids must mean equal hash functions
+     */
+    int id();
+
+    /**
+     * Built-in strategy with the given id
+     *
+     * @param id Strategy id from an encoding
+     * @return Built-in strategy
+     * @throws IllegalArgumentException If no built-in strategy has this id
+     */
+    static HashStrategy forId(int id) {
+        switch (id) {
+            case 0: return FNV_MURMUR;
+            case 1: return FNV_MURMUR_FASTRANGE;
+            case 2: return WYHASH;
+            case 3: return XXH3;
+            default:
+                throw new IllegalArgumentException("No built-in hash strategy with id " + id);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Per-bucket tournament tree over entry hashes for O(log k) head maintenance
+ *
+ * For each bucket, a complete binary tree with one leaf per entry slot keeps at every
+ * internal node the slot with the larger hash among its children (empty entries lose).
+ * The root is therefore the slot holding the bucket's maximum hash, and changing one
+ * slot's hash repairs only the log2(k) nodes on its path to the root.
+ *
+ * Nodes are stored heap-style (root at 1, children of i at 2i and 2i+1) in one int[] for all
+ * buckets; -1 marks a padding leaf or a subtree with no non-empty entry.
+ *
+ * @author Research Implementation
+ */
+final class HeadTree {
+
+    private final int k;              // Entries per bucket
+    private final int leaves;         // Leaf count per bucket (next power of two >= k)
+    private final long emptyHash;     // Hash value that marks an empty entry
+    private final int[] nodes;        // 2 * leaves nodes per bucket, node 0 unused
+
+    /**
+     * Build the tree for all buckets from the current storage contents
+     *
+     * @param store Storage holding the bucket state
+     * @param emptyHash Hash value that marks an empty entry (2^delta1 - 1)
+     */
+    HeadTree(SKMVStorage store, long emptyHash) {
+        this.k = store.getK();
+        this.leaves = k <= 1 ? 1 : Integer.highestOneBit(k - 1) << 1;
+        this.emptyHash = emptyHash;
+        this.nodes = new int[store.getM() * 2 * leaves];
+
+        for (int b = 0; b < store.getM(); b++) {
+            int root = b * 2 * leaves;
+            for (int i = 0; i < leaves; i++) {
+                nodes[root + leaves + i] = i < k ? i : -1;
+            }
+            for (int node = leaves - 1; node >= 1; node--) {
+                nodes[root + node] = winner(store, b, nodes[root + 2 * node], nodes[root + 2 * node + 1]);
+            }
+        }
+    }
+
+    /**
+     * @return Slot index (0 to k-1) of the largest non-empty hash in the bucket, or -1 if all are empty
+     */
+    int top(SKMVStorage store, int bucketIndex) {
+        int slot = nodes[bucketIndex * 2 * leaves + 1];
+        return slot != -1 && store.getHash(bucketIndex * k + slot) != emptyHash ? slot : -1;
+    }
+
+    /**
+     * Repair the path from a slot to the root after its hash changed
+     */
+    void update(SKMVStorage store, int bucketIndex, int i) {
+        int root = bucketIndex * 2 * leaves;
+        for (int node = (leaves + i) >> 1; node >= 1; node >>= 1) {
+            nodes[root + node] = winner(store, bucketIndex, nodes[root + 2 * node], nodes[root + 2 * node + 1]);
+        }
+    }
+
+    private int winner(SKMVStorage store, int bucketIndex, int left, int right) {
+        return key(store, bucketIndex, right) > key(store, bucketIndex, left) ? right : left;
+    }
+
+    private long key(SKMVStorage store, int bucketIndex, int i) {
+        if (i == -1) {
+            return -1;
+        }
+        long hash = store.getHash(bucketIndex * k + i);
+        return hash == emptyHash ? -1 : hash;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Cursor over the buckets of a Sliding KMV sketch for incremental cleaning
+ *
+ * The sweeper hands out buckets in passes over 0..m-1. Each pass must finish within half of the
+ * configured maximum staleness: besides a fixed number of buckets per recorded item, a pass that
+ * started at time P owes ceil(m * (T - P) / (maxStaleness / 2)) buckets by time T. Any bucket is then
+ * visited again at most one pass start plus one pass later, i.e. within maxStaleness time units.
+ *
+ * @author Research Implementation
+ */
+final class IncrementalSweeper {
+
+    private final int m;               // Number of buckets
+    private final int bucketsPerItem;  // Buckets cleaned per recordItem call
+    private final long maxStaleness;   // Bound on time between two visits of a bucket
+    private final long passDuration;   // Deadline of a pass, maxStaleness / 2
+
+    private int cursor;                // Next bucket to clean
+    private long passStart;            // Time the current pass started
+    private long previousPassStart;    // Time the previous pass started
+    private long bucketsSwept;         // Buckets cleaned since the sweeper was enabled
+    private long passes;               // Completed passes
+    private long worstStaleness;       // Largest (pass end - previous pass start) seen
+
+    IncrementalSweeper(int m, int bucketsPerItem, long maxStaleness, long currentTime) {
+        this.m = m;
+        this.bucketsPerItem = bucketsPerItem;
+        this.maxStaleness = maxStaleness;
+        this.passDuration = Math.max(1, maxStaleness / 2);
+        this.passStart = currentTime;
+        this.previousPassStart = currentTime;
+    }
+
+    /**
+     * @return Number of buckets to clean now so the current pass keeps to its deadline,
+     * at least the per-item quota when called from recordItem
+     */
+    int due(long currentTime, boolean perItem) {
+        long elapsed = currentTime - passStart;
+        long owed = elapsed <= 0 ? 0
+            : elapsed >= passDuration ? m
+            : (elapsed * m + passDuration - 1) / passDuration;
+        int behind = (int) Math.max(0, owed - cursor);
+        return perItem ? Math.max(behind, Math.min(bucketsPerItem, m - cursor)) : behind;
+    }
+
+    /**
+     * @return Index of the next bucket to clean, starting a new pass after the last bucket
+     */
+    int next(long currentTime) {
+        int bucket = cursor++;
+        bucketsSwept++;
+        if (cursor == m) {
+            cursor = 0;
+            passes++;
+            worstStaleness = Math.max(worstStaleness, currentTime - previousPassStart);
+            previousPassStart = passStart;
+            passStart = currentTime;
+        }
+        return bucket;
+    }
+
+    int getBucketsPerItem() { return bucketsPerItem; }
+    long getMaxStaleness() { return maxStaleness; }
+    long getBucketsSwept() { return bucketsSwept; }
+    long getPasses() { return passes; }
+    long getWorstStaleness() { return worstStaleness; }
+
+    /**
+     * @return Buckets per time unit the deadline alone enforces
+     */
+    double getBucketsPerTimeUnit() { return (double) m / passDuration; }
+}
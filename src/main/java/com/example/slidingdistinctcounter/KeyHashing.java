@@ -0,0 +1,146 @@
+package com.example.slidingdistinctcounter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reduction of variable-length keys (IP addresses, 5-tuples, strings) to the 64-bit labels and IDs
+ * the sketch hashes
+ *
+ * A key's bytes are read 8 at a time as little-endian words and folded through the strategy's flow
+ * hash with the given seed, starting from a state that encodes the key length, so keys that differ
+ * only in trailing zero bytes do not collide. The seed only enters through the strategy: FNV-1a
+ * starts from the seed itself, so XORing it into the start state as well would cancel its low byte.
+ * A byte[] range, the remaining bytes of a ByteBuffer (in either byte order) and the UTF-8 encoding
+ * of a CharSequence with the same bytes all give the same value. Nothing is allocated: byte arrays
+ * are read through a VarHandle view, buffers with absolute gets, and characters are UTF-8 encoded on
+ * the fly (unpaired surrogates as '?', like String.getBytes).
+ *
+ * @author Research Implementation
+ */
+final class KeyHashing {
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long LENGTH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private KeyHashing() {
+    }
+
+    /**
+     * Hash bytes [offset, offset + length) of an array
+     */
+    static long hash(HashStrategy strategy, long seed, byte[] key, int offset, int length) {
+        if (offset < 0 || length < 0 || length > key.length - offset) {  // offset + length could overflow
+            throw new IllegalArgumentException(String.format("Key range [%d, %d) out of bounds for length %d",
+                offset, (long) offset + length, key.length));
+        }
+        long h = length * LENGTH_MULTIPLIER;
+        int end = offset + length;
+        int i = offset;
+        for (; end - i >= 8; i += 8) {
+            h = strategy.flowHash(h ^ (long) LONG_LE.get(key, i), seed);
+        }
+        if (i == end && length != 0) {
+            return h;
+        }
+        long tail = 0;
+        for (int shift = 0; i < end; i++, shift += 8) {
+            tail |= (key[i] & 0xFFL) << shift;
+        }
+        return strategy.flowHash(h ^ tail, seed);
+    }
+
+    /**
+     * Hash the bytes between the buffer's position and limit, leaving both unchanged
+     */
+    static long hash(HashStrategy strategy, long seed, ByteBuffer key) {
+        int length = key.remaining();
+        boolean swap = key.order() != ByteOrder.LITTLE_ENDIAN;
+        long h = length * LENGTH_MULTIPLIER;
+        int end = key.limit();
+        int i = key.position();
+        for (; end - i >= 8; i += 8) {  // i + 8 could overflow near the largest buffers
+            long word = key.getLong(i);
+            h = strategy.flowHash(h ^ (swap ? Long.reverseBytes(word) : word), seed);
+        }
+        if (i == end && length != 0) {
+            return h;
+        }
+        long tail = 0;
+        for (int shift = 0; i < end; i++, shift += 8) {
+            tail |= (key.get(i) & 0xFFL) << shift;
+        }
+        return strategy.flowHash(h ^ tail, seed);
+    }
+
+    /**
+     * Hash the UTF-8 encoding of the characters
+     */
+    static long hash(HashStrategy strategy, long seed, CharSequence key) {
+        int n = key.length();
+        long length = utf8Length(key, n);
+        long h = length * LENGTH_MULTIPLIER;
+        long word = 0;
+        int shift = 0;
+        for (int i = 0; i < n; i++) {
+            int c = key.charAt(i);
+            int encoded;  // UTF-8 bytes of the character, first byte lowest
+            int count;
+            if (c < 0x80) {
+                encoded = c;
+                count = 1;
+            } else if (c < 0x800) {
+                encoded = (0xC0 | c >>> 6) | (0x80 | c & 0x3F) << 8;
+                count = 2;
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < n
+                    && Character.isLowSurrogate(key.charAt(i + 1))) {
+                int cp = Character.toCodePoint((char) c, key.charAt(++i));
+                encoded = (0xF0 | cp >>> 18) | (0x80 | cp >>> 12 & 0x3F) << 8
+                    | (0x80 | cp >>> 6 & 0x3F) << 16 | (0x80 | cp & 0x3F) << 24;
+                count = 4;
+            } else if (Character.isSurrogate((char) c)) {
+                encoded = '?';
+                count = 1;
+            } else {
+                encoded = (0xE0 | c >>> 12) | (0x80 | c >>> 6 & 0x3F) << 8 | (0x80 | c & 0x3F) << 16;
+                count = 3;
+            }
+            for (; count > 0; count--, encoded >>>= 8) {
+                word |= (encoded & 0xFFL) << shift;
+                shift += 8;
+                if (shift == 64) {
+                    h = strategy.flowHash(h ^ word, seed);
+                    word = 0;
+                    shift = 0;
+                }
+            }
+        }
+        if (shift == 0 && length != 0) {
+            return h;
+        }
+        return strategy.flowHash(h ^ word, seed);
+    }
+
+    /**
+     * @return Number of bytes in the UTF-8 encoding of the first n characters, which can exceed an int
+     */
+    private static long utf8Length(CharSequence key, int n) {
+        long length = n;
+        for (int i = 0; i < n; i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(key.charAt(i + 1))) {
+                    length += 2;  // Two chars, four bytes
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    length += 2;
+                }
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.slidingdistinctcounter;
+
+import java.util.Arrays;
+
+/**
+ * Per-bucket epoch stamps for lazy expiry of a Sliding KMV sketch
+ *
+ * Instead of sweeping all buckets, periodicClean only advances a global epoch; a bucket whose
+ * stamp is behind is cleaned the next time it is touched by recordItem or estimateCardinality.
+ *
+ * A bucket that sits untouched for a long time would break the AT assumption that every stored
+ * timestamp is less than 2N old, so its entries could look fresh again. Two stamps prevent that:
+ * a bucket is also stale once N time units have passed since its last clean, and its last touch
+ * time serves as the anchor from which the actual entry timestamps are recovered. Every stored
+ * timestamp lies in (last clean - N, last touch], an interval shorter than 2N, so the recovery is exact.
+ *
+ * @author Research Implementation
+ */
+final class LazyExpiry {
+
+    private final long N;             // Window length
+    private int epoch;                // Advanced by every periodicClean call
+    private final int[] cleanEpoch;   // Epoch of each bucket's last clean
+    private final long[] cleanTime;   // Time of each bucket's last clean
+    private final long[] touchTime;   // Latest time each bucket was modified
+
+    /**
+     * Stamp all buckets as cleaned at the given time
+     * The sketch must be freshly created or freshly cleaned at that time
+     */
+    LazyExpiry(int m, long N, long currentTime) {
+        this.N = N;
+        this.cleanEpoch = new int[m];
+        this.cleanTime = new long[m];
+        this.touchTime = new long[m];
+        Arrays.fill(cleanTime, currentTime);
+        Arrays.fill(touchTime, currentTime);
+    }
+
+    void advanceEpoch() {
+        epoch++;
+    }
+
+    /**
+     * @return true if the bucket missed a periodic clean or was last cleaned N or more time units ago
+     */
+    boolean isStale(int bucketIndex, long currentTime) {
+        return cleanEpoch[bucketIndex] != epoch || currentTime - cleanTime[bucketIndex] >= N;
+    }
+
+    void markCleaned(int bucketIndex, long currentTime) {
+        cleanEpoch[bucketIndex] = epoch;
+        cleanTime[bucketIndex] = currentTime;
+        touch(bucketIndex, currentTime);
+    }
+
+    void touch(int bucketIndex, long currentTime) {
+        if (currentTime > touchTime[bucketIndex]) {
+            touchTime[bucketIndex] = currentTime;
+        }
+    }
+
+    /**
+     * @return Time no older than any timestamp stored in the bucket, and less than 2N newer than all of them
+     */
+    long anchor(int bucketIndex) {
+        return touchTime[bucketIndex];
+    }
+}
@@ -0,0 +1,509 @@
+package com.example.slidingdistinctcounter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Non-blocking Sliding KMV sketch over CAS-updated 64-bit words
+ *
+ * Each entry is packed into one word (AT value in the high delta2 bits, hash in the low delta1 bits)
+ * and each bucket's P2C state into another (lock bit, lock_time AT, lock_maxV), with the head index in
+ * a third. Keeping lock_maxV in the lock word means a lock activation resets it in the same CAS that
+ * publishes the new lock period, and a Subcase 2b lowering is a CAS against the period it observed, so
+ * a lowering is never overwritten by a reset and no reader sees a previous period's lock_maxV.
+ * recordItem follows the Case 0/1/2a/2b/2c logic of {@link SKMV#recordItem}, performing every write
+ * as a compare-and-set against the word it read; if another thread changed that word first, the
+ * item is retried from Step 2 on the fresh state, so no writer ever waits for another.
+ *
+ * Semantics differ from the sequential sketch only under concurrency:
+ * - The global time is an atomic clock holding the largest timestamp seen. Window checks use the
+ *   clock, items are recorded at their own timestamp, and items already N or more behind the clock
+ *   are dropped as being outside the window.
+ * - Case 0 never moves an entry's timestamp backwards, so a late writer cannot shorten its life.
+ * - Two writers inserting the same hash into different slots both scan for the duplicate after
+ *   their write; whichever scans last sees it and clears the higher slot, keeping the newer timestamp.
+ * - Head repairs after a concurrent write are best effort, as the head is only a search hint that
+ *   updateHead and periodicClean recompute.
+ * - Subcase 2a repairs the head and then resets the lock in two CASes, and only resets the lock
+ *   period it saw in Step 2, so a reader can briefly see the new head with the lock still set.
+ * Queries only read: each bucket's P2C status is evaluated at the clock without being written back,
+ * so estimateCardinality is wait-free and sees every bucket word at a single point, though not all
+ * buckets at the same point. Single-threaded with non-decreasing timestamps, the bucket state matches
+ * {@link SKMV} exactly.
+ *
+ * @author Research Implementation
+ */
+public class LockFreeSKMV {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Lock word layout: lock bit | lock_time AT (delta2 bits) | lock_maxV (delta1 bits)
+    private static final long LOCK_BIT = 1L << 63;
+
+    // Core parameters
+    private final long N;          // Window length (time units)
+    private final int k;           // k-minimum value count per bucket
+    private final int m;           // Number of buckets
+    private final int delta1;      // Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+    private final int delta2;      // Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+
+    // Computed ranges based on bit-widths
+    private final long hashRange;      // 2^delta1 - 1
+    private final long timestampRange; // 2^delta2 - 1
+    private final long emptyAT;        // 2*N, raw AT value of an unset timestamp
+    private final long emptyWord;      // Packed empty entry
+
+    private final long[] entries;      // Packed (AT, hash) word per slot (m * k)
+    private final long[] locks;        // Packed (lock, lock_time, lock_maxV) word per bucket
+    private final long[] heads;        // Head index per bucket
+    private final AtomicLong clock;    // Largest timestamp seen (the global time T)
+    private final LongAdder retries;   // Items restarted after losing a CAS race
+
+    /**
+     * Constructor for the lock-free sketch
+     *
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (delta1 + delta2 at most 63, leaving the lock bit)
+     */
+    public LockFreeSKMV(long N, int k, int m, int delta1, int delta2) {
+        if (delta1 + delta2 > 63) {
+            throw new IllegalArgumentException(
+                String.format("Packed words need delta1 + delta2 <= 63, got delta1=%d, delta2=%d", delta1, delta2));
+        }
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive, got " + k);
+        }
+        this.N = N;
+        this.k = k;
+        this.m = m;
+        this.delta1 = delta1;
+        this.delta2 = delta2;
+
+        this.hashRange = (1L << delta1) - 1;
+        this.timestampRange = (1L << delta2) - 1;
+        this.emptyAT = 2 * N;
+
+        // Validate that N fits within the timestamp range
+        if (N > timestampRange / 2) {
+            throw new IllegalArgumentException(
+                String.format("Window size N=%d exceeds half of timestamp range (2^%d - 1)/2 = %d",
+                    N, delta2, timestampRange / 2));
+        }
+
+        this.emptyWord = entryWord(hashRange, emptyAT);
+        this.entries = new long[Math.multiplyExact(m, k)];  // Overflow must not allocate a short array
+        this.locks = new long[m];
+        this.heads = new long[m];
+        java.util.Arrays.fill(entries, emptyWord);
+        java.util.Arrays.fill(locks, lockWord(0, emptyAT, hashRange));
+        this.clock = new AtomicLong(0);
+        this.retries = new LongAdder();
+    }
+
+    // Word packing
+
+    private long entryWord(long hash, long vAT) {
+        return (vAT << delta1) | hash;
+    }
+
+    private long hashOf(long word) {
+        return word & hashRange;
+    }
+
+    private long atOf(long word) {
+        return word >>> delta1;
+    }
+
+    private long lockWord(int lock, long lockTime, long lockMaxV) {
+        return (lock == 1 ? LOCK_BIT : 0) | (lockTime << delta1) | lockMaxV;
+    }
+
+    private static int lockOf(long lockWord) {
+        return (int) (lockWord >>> 63);
+    }
+
+    private long lockTimeOf(long lockWord) {
+        return (lockWord & ~LOCK_BIT) >>> delta1;
+    }
+
+    private long lockMaxVOf(long lockWord) {
+        return lockWord & hashRange;
+    }
+
+    private long get(long[] words, int index) {
+        return (long) WORDS.getVolatile(words, index);
+    }
+
+    private boolean cas(long[] words, int index, long expected, long value) {
+        return WORDS.compareAndSet(words, index, expected, value);
+    }
+
+    // Adjusted timestamp operations relative to an explicit current time (see SKMV.AdjustedTimestamp)
+
+    private long recordAT(long t) {
+        return Math.floorMod(t, 2 * N);
+    }
+
+    private boolean lookupAT(long vAT, long now) {
+        return vAT != emptyAT && Math.floorMod(now - vAT, 2 * N) < N;
+    }
+
+    private long actualTimestamp(long vAT, long now) {
+        if (vAT == emptyAT) {
+            return now - N;
+        }
+        return now - Math.floorMod(now - vAT, 2 * N);
+    }
+
+    /**
+     * Hash function H(): Maps flow label to bucket index using FNV-1a hash
+     */
+    private int H(long flowLabel) {
+        long hash = SKMV.fnv1aHash64(flowLabel);
+        return (int) ((hash & Long.MAX_VALUE) % m);
+    }
+
+    /**
+     * Hash function h(): Produces uniform hash value for elements using MurmurHash3
+     */
+    private long h(long elementID) {
+        long hash = SKMV.murmurHash3_64(elementID, SKMV.DEFAULT_ELEMENT_SEED);
+        return hash & hashRange;
+    }
+
+    /**
+     * Online Item Recording, callable from any number of threads without blocking
+     *
+     * @param flowLabel The flow identifier
+     * @param elementID The element identifier to process
+     * @param timestamp The timestamp of the arriving item (advances the clock if newer)
+     * @return false if the item was dropped for being outside the window
+     */
+    public boolean recordItem(long flowLabel, long elementID, long timestamp) {
+        int b = H(flowLabel);
+        long h_y = h(elementID);
+        if (advanceClock(timestamp) - timestamp >= N) {
+            return false;
+        }
+        while (!tryUpdate(b, h_y, timestamp)) {
+            retries.increment();
+        }
+        return true;
+    }
+
+    /**
+     * One attempt at Steps 2 and 3 of recordItem
+     *
+     * @return false if a CAS failed and the item must be retried on the fresh state
+     */
+    private boolean tryUpdate(int b, long h_y, long timestamp) {
+        long now = clock.get();
+        int base = b * k;
+        long newWord = entryWord(h_y, recordAT(timestamp));
+
+        // Step 2: Check and Reset P2C Lock Zone
+        long lockWord = get(locks, b);
+        long status = lockStatus(b, lockWord, now, false);
+        if (status != lockWord && !cas(locks, b, lockWord, status)) {
+            return false;
+        }
+
+        // Step 3, Case 0: Check for Duplicate
+        for (int slot = base; slot < base + k; slot++) {
+            long word = get(entries, slot);
+            if (hashOf(word) == h_y) {
+                long vAT = atOf(word);
+                if (vAT != emptyAT && lookupAT(vAT, now) && actualTimestamp(vAT, now) >= timestamp) {
+                    return true;  // A newer write already refreshed it
+                }
+                return cas(entries, slot, word, newWord);
+            }
+        }
+
+        int head = (int) get(heads, b);
+        long headWord = get(entries, base + head);
+        long headHash = hashOf(headWord);
+
+        if (lockOf(status) == 0) {
+            // Case 1: No Lock, fill an empty or else an outdated entry
+            int insert = -1;
+            long insertWord = 0;
+            for (int slot = base; slot < base + k && insert == -1; slot++) {
+                long word = get(entries, slot);
+                if (hashOf(word) == hashRange) {
+                    insert = slot;
+                    insertWord = word;
+                }
+            }
+            for (int slot = base; slot < base + k && insert == -1; slot++) {
+                long word = get(entries, slot);
+                if (!lookupAT(atOf(word), now)) {
+                    insert = slot;
+                    insertWord = word;
+                }
+            }
+            if (insert != -1) {
+                if (!cas(entries, insert, insertWord, newWord)) {
+                    return false;
+                }
+                removeDuplicate(base, insert, h_y, now);
+                if (h_y < headHash) {
+                    cas(heads, b, head, insert - base);  // Best effort
+                }
+            } else if (h_y < headHash) {
+                // Replace head with new smaller value
+                if (!cas(entries, base + head, headWord, newWord)) {
+                    return false;
+                }
+                removeDuplicate(base, base + head, h_y, now);
+                updateHead(b, now);
+            }
+            // If h_y >= head hash, reject (not in k-minimum)
+        } else if (h_y < headHash) {
+            // Subcase 2a: k-Minimum, update an outdated entry or else overwrite the head
+            for (int slot = base; slot < base + k; slot++) {
+                long word = get(entries, slot);
+                if (!lookupAT(atOf(word), now)) {
+                    if (!cas(entries, slot, word, newWord)) {
+                        return false;
+                    }
+                    removeDuplicate(base, slot, h_y, now);
+                    return true;
+                }
+            }
+            if (!cas(entries, base + head, headWord, newWord)) {
+                return false;
+            }
+            removeDuplicate(base, base + head, h_y, now);
+            updateHead(b, now);
+            unlock(b, status);
+        } else if (headHash < h_y && h_y < lockMaxVOf(status)) {
+            // Subcase 2b: Falls in P2C Zone, lower lock_maxV of the lock period seen in Step 2
+            return cas(locks, b, status, (status & ~hashRange) | h_y);
+        }
+        // Subcase 2c: Falls Beyond (h_y >= lock_maxV) - Do nothing
+        return true;
+    }
+
+    /**
+     * Clear the higher of two slots holding the same hash after a racing insert, keeping the newer timestamp
+     */
+    private void removeDuplicate(int base, int slot, long h_y, long now) {
+        if (h_y == hashRange) {
+            return;  // Empty entries share this hash
+        }
+        for (int other = base; other < base + k; other++) {
+            if (other == slot) {
+                continue;
+            }
+            long otherWord = get(entries, other);
+            if (hashOf(otherWord) != h_y) {
+                continue;
+            }
+            long word = get(entries, slot);
+            if (hashOf(word) != h_y) {
+                return;  // Our entry is already gone
+            }
+            int keep = Math.min(slot, other);
+            long keepWord = keep == slot ? word : otherWord;
+            long dropWord = keep == slot ? otherWord : word;
+            if (actualTimestamp(atOf(dropWord), now) > actualTimestamp(atOf(keepWord), now)) {
+                cas(entries, keep, keepWord, dropWord);
+            }
+            cas(entries, Math.max(slot, other), dropWord, emptyWord);
+            return;
+        }
+    }
+
+    /**
+     * Point the head at the entry with the highest hash value in sliding window
+     */
+    private void updateHead(int b, long now) {
+        while (true) {
+            long head = get(heads, b);
+            long updated = maxEntry(b, now);
+            if (updated == head || cas(heads, b, head, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reset the lock after Subcase 2a overwrote the head, unless a new lock period has started since
+     * Step 2 (a lock_maxV lowering within the same period is kept)
+     */
+    private void unlock(int b, long status) {
+        long word = get(locks, b);
+        while (lockOf(word) == 1 && lockTimeOf(word) == lockTimeOf(status) && !cas(locks, b, word, word & ~LOCK_BIT)) {
+            word = get(locks, b);
+        }
+    }
+
+    /**
+     * @return Index within the bucket of the largest hash in sliding window (0 if none)
+     */
+    private int maxEntry(int b, long now) {
+        int base = b * k;
+        long maxHash = -1;
+        int maxIndex = 0;
+        for (int i = 0; i < k; i++) {
+            long word = get(entries, base + i);
+            long hash = hashOf(word);
+            if (hash != hashRange && lookupAT(atOf(word), now) && hash > maxHash) {
+                maxHash = hash;
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    /**
+     * P2C status of the bucket at the given time: lock timeout, then head outdate
+     *
+     * @param atQuery Lock time recorded on activation: now for queries and cleaning, as in
+     *                SKMV's updateBucketStatus, the head's timestamp for recordItem
+     * @return Lock word after the transitions (the same word if nothing changes); an activation
+     *         also resets lock_maxV to the maximum hash value
+     */
+    private long lockStatus(int b, long lockWord, long now, boolean atQuery) {
+        if (lockOf(lockWord) == 1 && !lookupAT(lockTimeOf(lockWord), now)) {
+            lockWord &= ~LOCK_BIT;
+        }
+        if (lockOf(lockWord) == 0) {
+            long headAT = atOf(get(entries, b * k + (int) get(heads, b)));
+            if (!lookupAT(headAT, now)) {
+                long lockTime = atQuery ? recordAT(now) : recordAT(actualTimestamp(headAT, now));
+                lockWord = lockWord(1, lockTime, hashRange);
+            }
+        }
+        return lockWord;
+    }
+
+    /**
+     * Periodic cleaning, callable concurrently with writers
+     *
+     * @param currentTime Current global time for cleaning (advances the clock if newer)
+     */
+    public void periodicClean(long currentTime) {
+        advanceClock(currentTime);
+        long now = clock.get();
+        for (int b = 0; b < m; b++) {
+            cleanBucket(b, now);
+        }
+    }
+
+    private void cleanBucket(int b, long now) {
+        int base = b * k;
+        for (int slot = base; slot < base + k; slot++) {
+            long word = get(entries, slot);
+            while (word != emptyWord && !lookupAT(atOf(word), now) && !cas(entries, slot, word, emptyWord)) {
+                word = get(entries, slot);
+            }
+        }
+        updateHead(b, now);
+        while (true) {
+            long lockWord = get(locks, b);
+            long status = lockStatus(b, lockWord, now, true);
+            if (status == lockWord || cas(locks, b, lockWord, status)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Query method for cardinality estimation, wait-free and callable concurrently with writers
+     *
+     * @return Estimated cardinality of distinct elements in sliding window
+     */
+    public double estimateCardinality() {
+        long now = clock.get();
+        double harmonicSum = 0.0;
+        int effectiveM = m;
+        for (int b = 0; b < m; b++) {
+            double n_i = bucketCardinality(b, now);
+            if (Double.isNaN(n_i)) {
+                effectiveM--;  // Skip empty buckets
+            } else if (n_i > 0) {
+                harmonicSum += 1.0 / n_i;
+            }
+        }
+
+        if (harmonicSum > 0 && effectiveM > 0) {
+            return effectiveM / harmonicSum;
+        } else {
+            return 0.0;
+        }
+    }
+
+    /**
+     * Query method for the cardinality of a single flow, callable concurrently with writers
+     *
+     * @param flowLabel The flow identifier
+     * @return Estimated number of distinct elements of the flow in sliding window (0 if none)
+     */
+    public double estimateFlowCardinality(long flowLabel) {
+        double n_i = bucketCardinality(H(flowLabel), clock.get());
+        return Double.isNaN(n_i) ? 0.0 : Math.max(0.0, n_i);
+    }
+
+    /**
+     * @return n̂_i = k' / α_k' * (hashRange) - 1, or NaN if the bucket holds no valid hash value
+     */
+    private double bucketCardinality(int b, long now) {
+        long status = lockStatus(b, get(locks, b), now, true);
+        int excluded = lockOf(status) == 1 ? (int) get(heads, b) : -1;  // If lock=1, exclude head entry
+        int base = b * k;
+        int kPrime = 0;
+        long alpha_k = -1;
+        for (int i = 0; i < k; i++) {
+            long word = get(entries, base + i);
+            long hash = hashOf(word);
+            if (hash != hashRange && lookupAT(atOf(word), now) && i != excluded) {
+                kPrime++;
+                alpha_k = Math.max(alpha_k, hash);
+            }
+        }
+        if (kPrime == 0) {
+            return Double.NaN;
+        }
+        return (double) kPrime / alpha_k * hashRange - 1;
+    }
+
+    /**
+     * Move the clock forward to the timestamp unless it is already past it
+     *
+     * @return Clock value after the update
+     */
+    private long advanceClock(long timestamp) {
+        long now = clock.get();
+        while (timestamp > now) {
+            if (clock.compareAndSet(now, timestamp)) {
+                return timestamp;
+            }
+            now = clock.get();
+        }
+        return now;
+    }
+
+    // Unpacked bucket state for inspection (slot = bucketIndex * k + i)
+    long getHash(int slot) { return hashOf(get(entries, slot)); }
+    long getAT(int slot) { return atOf(get(entries, slot)); }
+    int getLock(int bucketIndex) { return lockOf(get(locks, bucketIndex)); }
+    int getHead(int bucketIndex) { return (int) get(heads, bucketIndex); }
+    long getLockTime(int bucketIndex) { return lockTimeOf(get(locks, bucketIndex)); }
+    long getLockMaxV(int bucketIndex) { return lockMaxVOf(get(locks, bucketIndex)); }
+
+    // Getter methods for configuration and state
+    public long getCurrentTime() { return clock.get(); }
+    public long getWindowSize() { return N; }
+    public int getK() { return k; }
+    public int getM() { return m; }
+    public int getDelta1() { return delta1; }
+    public int getDelta2() { return delta2; }
+    public long getRetries() { return retries.sum(); }
+}
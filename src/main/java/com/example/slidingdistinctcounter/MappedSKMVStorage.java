@@ -0,0 +1,176 @@
+package com.example.slidingdistinctcounter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Persistent storage backend for the Sliding KMV sketch backed by a memory-mapped file
+ *
+ * The file holds a fixed 64-byte header followed by the same bucket regions as {@link DirectSKMVStorage}
+ * (little-endian). Every write from recordItem goes straight into the mapping, so reopening the file
+ * after a restart resumes the sliding window without replaying any input.
+ *
+ * Header layout (byte offset: field):
+ * 0: magic "SKMV", 4: format version, 8: N, 16: k, 20: m, 24: delta1, 28: delta2, 32: T, 40-63: reserved
+ *
+ * {@link #checkpoint(long)} records T and forces the mapping to disk; without it the OS still writes
+ * dirty pages back eventually, but only a checkpoint is durable against a host crash. Each periodic
+ * clean also records T in the header without forcing it, so after an unclean exit the header time
+ * trails the newest surviving entries by at most one cleaning period.
+ *
+ * @author Research Implementation
+ */
+public class MappedSKMVStorage extends DirectSKMVStorage {
+
+    public static final int MAGIC = 0x534B4D56;      // "SKMV"
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+
+    private static final int OFFSET_N = 8;
+    private static final int OFFSET_K = 16;
+    private static final int OFFSET_M = 20;
+    private static final int OFFSET_DELTA1 = 24;
+    private static final int OFFSET_DELTA2 = 28;
+    private static final int OFFSET_TIME = 32;
+
+    private final Path file;              // Backing file
+    private final MappedByteBuffer mapped; // Whole-file mapping (header + regions)
+    private final boolean restored;       // The file existed and its header validated
+
+    private MappedSKMVStorage(Path file, MappedByteBuffer mapped, int m, int k, long N, long maxHashValue,
+                              boolean initialize) {
+        super(regionsOf(mapped), m, k, N, maxHashValue, initialize);
+        this.file = file;
+        this.mapped = mapped;
+        this.restored = !initialize;
+    }
+
+    /**
+     * Open a persistent storage file, creating and initializing it if it does not exist yet
+     * An existing file must have been created with the same parameters
+     *
+     * @param file Path of the backing file
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values
+     * @param delta2 Bit-width for timestamps
+     * @return Storage mapped onto the file
+     * @throws IOException If the file cannot be created, mapped, or has an unknown format
+     */
+    public static MappedSKMVStorage open(Path file, long N, int k, int m, int delta1, int delta2) throws IOException {
+        long regionBytes = sizeInBytes(m, k);
+        if (HEADER_BYTES + regionBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Sketch too large for a single mapping: " + regionBytes + " bytes");
+        }
+        int fileSize = (int) (HEADER_BYTES + regionBytes);
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (exists && channel.size() != fileSize) {
+                throw new IOException(String.format("File %s has %d bytes, expected %d for m=%d, k=%d",
+                    file, channel.size(), fileSize, m, k));
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        long maxHashValue = (1L << delta1) - 1;
+        if (exists) {
+            validateHeader(file, mapped, N, k, m, delta1, delta2);
+            return new MappedSKMVStorage(file, mapped, m, k, N, maxHashValue, false);
+        }
+
+        MappedSKMVStorage storage = new MappedSKMVStorage(file, mapped, m, k, N, maxHashValue, true);
+        mapped.putInt(4, FORMAT_VERSION);
+        mapped.putLong(OFFSET_N, N);
+        mapped.putInt(OFFSET_K, k);
+        mapped.putInt(OFFSET_M, m);
+        mapped.putInt(OFFSET_DELTA1, delta1);
+        mapped.putInt(OFFSET_DELTA2, delta2);
+        mapped.putLong(OFFSET_TIME, 0);
+        mapped.force();
+        mapped.putInt(0, MAGIC);  // Written last so a torn initialization is never mistaken for a sketch
+        mapped.force();
+        return storage;
+    }
+
+    private static ByteBuffer regionsOf(MappedByteBuffer mapped) {
+        ByteBuffer view = mapped.duplicate();
+        view.position(HEADER_BYTES);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void validateHeader(Path file, ByteBuffer header, long N, int k, int m, int delta1, int delta2)
+            throws IOException {
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not an SKMV storage file: " + file);
+        }
+        int version = header.getInt(4);
+        if (version != FORMAT_VERSION) {
+            throw new IOException(String.format("Unsupported SKMV format version %d in %s (expected %d)",
+                version, file, FORMAT_VERSION));
+        }
+        if (header.getLong(OFFSET_N) != N || header.getInt(OFFSET_K) != k || header.getInt(OFFSET_M) != m
+                || header.getInt(OFFSET_DELTA1) != delta1 || header.getInt(OFFSET_DELTA2) != delta2) {
+            throw new IllegalArgumentException(String.format(
+                "File %s was created with N=%d, k=%d, m=%d, delta1=%d, delta2=%d", file,
+                header.getLong(OFFSET_N), header.getInt(OFFSET_K), header.getInt(OFFSET_M),
+                header.getInt(OFFSET_DELTA1), header.getInt(OFFSET_DELTA2)));
+        }
+    }
+
+    @Override
+    public void checkpoint(long currentTime) {
+        if (isClosed()) {
+            return;
+        }
+        mapped.putLong(OFFSET_TIME, currentTime);
+        mapped.force();
+    }
+
+    @Override
+    public void recordTime(long currentTime) {
+        if (!isClosed()) {
+            mapped.putLong(OFFSET_TIME, currentTime);
+        }
+    }
+
+    @Override
+    public boolean isRestored() {
+        return restored;
+    }
+
+    @Override
+    public long getCheckpointTime() {
+        if (isClosed()) {
+            throw new IllegalStateException("Storage file " + file + " is closed");
+        }
+        return mapped.getLong(OFFSET_TIME);
+    }
+
+    /**
+     * Unmap the file; call {@link #checkpoint(long)} first to make the latest state durable
+     */
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        super.close();
+        freeDirect(mapped);
+    }
+
+    /**
+     * @return Path of the backing file
+     */
+    public Path getFile() { return file; }
+}
@@ -0,0 +1,1099 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Sliding KMV (S-KMV) Sketch over primitive storage
+ *
+ * Runs the same algorithm as {@link SKMV} (Sections III and IV of the Sliding KMV paper)
+ * but keeps the bucket state in an {@link SKMVStorage} backend instead of an object graph,
+ * so a sketch costs a handful of arrays rather than ~2k objects per bucket.
+ * Given the same parameters and input it produces identical results to {@link SKMV}.
+ *
+ * Sketches over off-heap storage (e.g. {@link DirectSKMVStorage}) must be closed to release their memory.
+ * Over a {@link MappedSKMVStorage} the sketch resumes from the time recorded in the file. After an
+ * unclean exit the file can hold entries and locks written after that time; any timestamp up to N/2
+ * ahead of it is taken as such and the sketch resumes from the newest one, since cleaning every N/2
+ * leaves no genuinely older entry that far behind. No cleaning ran while the sketch was down, so if the
+ * first time update after the restore jumps N/2 or more past the resumed time, every bucket is cleaned
+ * first with entry times recovered relative to that time; otherwise the mod-2N AT values of entries
+ * older than 2N would wrap and make them look live again.
+ *
+ * @author Research Implementation
+ */
+public class PackedSKMV implements AutoCloseable {
+
+    // Core parameters
+    private final long N;          // Window length (time units)
+    private final int k;           // k-minimum value count per bucket
+    private final int m;           // Number of buckets
+    private final int delta1;      // Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+    private final int delta2;      // Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+
+    // Computed ranges based on bit-widths
+    private final long hashRange;      // 2^delta1 - 1
+    private final long timestampRange; // 2^delta2 - 1
+    private final long emptyAT;        // 2*N, raw AT value of an unset timestamp
+
+    // Global state
+    private long T;                     // Current global time (0, or the time restored from the storage)
+    private long tMod;                  // T mod 2N, cached for AT window checks
+    private boolean restored;           // Resumed from a persistent store and not caught up to a later time yet
+    private final SKMVStorage store;    // Bucket state of all m buckets
+
+    // Optional acceleration structures
+    private HeadTree headTree;          // Per-bucket max tree over hashes (null when disabled)
+    private FingerprintFilter filter;   // Per-bucket duplicate-check bitmap (null when disabled)
+    private long[] admission;           // Per-bucket (threshold, valid-until time) pairs (null when disabled)
+    private long[] admissionMaxHash;    // Upper bound on the largest non-empty entry hash per bucket
+    private LazyExpiry lazy;            // Per-bucket clean stamps for deferred cleaning (null when disabled)
+    private IncrementalSweeper sweeper; // Cursor for cleaning a slice of buckets per call (null when disabled)
+    private ExpiryWheel expiry;         // Buckets indexed by their earliest expiry (null when disabled)
+    private EstimateCache estimates;    // Cached per-bucket estimate terms (null when disabled)
+    private long lastQueryTime;         // T at the last incremental query
+    private long highestTime;           // Largest T seen while the incremental estimate is enabled
+    private boolean lastQueryBehind;    // Whether the last incremental query ran before highestTime
+    private final boolean view;         // Shares another sketch's state but keeps its own clock
+    private boolean viewed;             // A cleaning view shares this sketch's state, freezing its configuration
+
+    // Pipelined batch ingest
+    static final int DEFAULT_PREFETCH_DISTANCE = 16; // Items hashed and touched ahead of their updates
+    private static final int MAX_PREFETCH_DISTANCE = 64;
+    private final int[] aheadBuckets = new int[MAX_PREFETCH_DISTANCE];  // H() values of the current group
+    private final long[] aheadHashes = new long[MAX_PREFETCH_DISTANCE]; // h() values of the current group
+    private long prefetchSink;                       // Keeps the touch loads from being optimized away
+
+    /**
+     * Constructor for the packed sketch using struct-of-arrays storage
+     *
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+     */
+    public PackedSKMV(long N, int k, int m, int delta1, int delta2) {
+        this(N, k, m, delta1, delta2, new ArraySKMVStorage(m, k, N, (1L << delta1) - 1));
+    }
+
+    /**
+     * Constructor for the packed sketch over a caller-supplied storage backend
+     * The storage must be sized for m buckets of k entries and initialized to empty buckets
+     *
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+     * @param store Storage backend holding the bucket state
+     */
+    public PackedSKMV(long N, int k, int m, int delta1, int delta2, SKMVStorage store) {
+        this.N = N;
+        this.k = k;
+        this.m = m;
+        this.delta1 = delta1;
+        this.delta2 = delta2;
+
+        this.hashRange = (1L << delta1) - 1;
+        this.timestampRange = (1L << delta2) - 1;
+        this.emptyAT = 2 * N;
+
+        // Validate that N fits within the timestamp range
+        if (N > timestampRange / 2) {
+            throw new IllegalArgumentException(
+                String.format("Window size N=%d exceeds half of timestamp range (2^%d - 1)/2 = %d",
+                    N, delta2, timestampRange / 2));
+        }
+        if (store.getM() != m || store.getK() != k) {
+            throw new IllegalArgumentException(
+                String.format("Storage shape m=%d, k=%d does not match sketch shape m=%d, k=%d",
+                    store.getM(), store.getK(), m, k));
+        }
+
+        this.store = store;
+        this.T = store.getCheckpointTime();  // Resume from a persistent backend
+        this.restored = store.isRestored();
+        if (restored) {
+            T += newestAhead();
+        }
+        this.tMod = recordAT(T);
+        this.view = false;
+    }
+
+    /**
+     * Constructor for a view sharing the storage and acceleration structures of another sketch
+     * The view has its own time, so another thread can clean buckets at a time of its choosing
+     */
+    private PackedSKMV(PackedSKMV owner) {
+        this.N = owner.N;
+        this.k = owner.k;
+        this.m = owner.m;
+        this.delta1 = owner.delta1;
+        this.delta2 = owner.delta2;
+        this.hashRange = owner.hashRange;
+        this.timestampRange = owner.timestampRange;
+        this.emptyAT = owner.emptyAT;
+        this.store = owner.store;
+        this.T = owner.T;
+        this.tMod = owner.tMod;
+        this.headTree = owner.headTree;
+        this.filter = owner.filter;
+        this.admission = owner.admission;
+        this.admissionMaxHash = owner.admissionMaxHash;
+        this.view = true;
+    }
+
+    /**
+     * Create a view for cleaning this sketch from another thread (see {@link BackgroundCleaner})
+     * Callers must serialize access per bucket; the view never touches buckets it is not asked to clean.
+     * At most one view per sketch; once it exists every enable method throws IllegalStateException.
+     */
+    PackedSKMV cleaningView() {
+        checkNotShared();
+        if (lazy != null || sweeper != null || expiry != null) {
+            throw new IllegalStateException(
+                "Background cleaning replaces lazy expiry, the incremental sweep and the expiry index");
+        }
+        if (estimates != null) {
+            throw new IllegalStateException("Background cleaning does not support the incremental estimate");
+        }
+        viewed = true;
+        return new PackedSKMV(this);
+    }
+
+    /**
+     * Reject configuration changes once a cleaning view shares the state: the view copied the
+     * acceleration structures at creation and cleans concurrently, so it would miss new ones
+     */
+    private void checkNotShared() {
+        if (view || viewed) {
+            throw new IllegalStateException("Sketch configuration is frozen while a cleaning view shares its state");
+        }
+    }
+
+    /**
+     * Switch head maintenance from a full k-entry rescan to a per-bucket tournament tree
+     *
+     * Replacing the head then costs O(log k) tree repairs instead of k AT lookups, which pays off
+     * for large k (see SKMVBenchmark). Expired maxima met while looking for the new head are
+     * cleaned on the spot, exactly as periodicCleanBucket would clean them, so estimates follow
+     * the same algorithm but individual entry placement can differ from the rescan mode.
+     * The tree is built from the current contents and costs 2 ints per entry (k rounded up to a power of two).
+     */
+    public void enableHeadTree() {
+        checkNotShared();
+        if (headTree == null) {
+            headTree = new HeadTree(store, hashRange);
+        }
+    }
+
+    /**
+     * Guard the Case 0 duplicate scan with a per-bucket fingerprint bitmap
+     *
+     * An arriving hash whose fingerprint bit is clear skips the k-entry scan entirely; results are
+     * identical to the unfiltered scan. The filter is built from the current contents and costs
+     * 8 bits per entry (at least one 64-bit word per bucket) plus one int per bucket.
+     */
+    public void enableFingerprintFilter() {
+        checkNotShared();
+        if (filter == null) {
+            filter = new FingerprintFilter(store, hashRange);
+        }
+    }
+
+    /**
+     * Keep a dense per-bucket admission threshold that recordItem consults before touching the bucket
+     *
+     * For each bucket the sketch records the largest hash h_y could equal without changing it
+     * (the max entry hash, and while locked also the head hash and lock_maxV - 1) together with the time until which
+     * that holds (the earliest entry expiry, or the lock expiry). An item with a larger hash arriving
+     * before that time is rejected after one array load and two comparisons. Buckets with empty or
+     * outdated entries never qualify, so estimates are identical to the unaccelerated sketch.
+     */
+    public void enableFastReject() {
+        checkNotShared();
+        if (admission == null) {
+            admission = new long[2 * m];
+            admissionMaxHash = new long[m];
+            for (int b = 0; b < m; b++) {
+                refreshAdmission(b);
+            }
+        }
+    }
+
+    /**
+     * Defer the periodicClean sweep: each bucket is cleaned the next time it is touched instead
+     *
+     * periodicClean then only advances a global epoch in O(1), removing the O(m * k) pause from the
+     * ingest path. recordItem and estimateCardinality clean a bucket first if it has missed an epoch or
+     * has not been cleaned for N time units, which also keeps buckets that are never touched from
+     * outliving the 2N range of their AT values. A bucket is cleaned at its first touch rather than at
+     * the periodicClean call, so it drops at least the entries an eager sweep would have dropped.
+     * Must be enabled on a new sketch or right after periodicClean; costs 2 longs and 1 int per bucket.
+     */
+    public void enableLazyExpiry() {
+        checkNotShared();
+        if (estimates != null) {
+            throw new IllegalStateException("Lazy expiry cannot be combined with the incremental estimate");
+        }
+        if (lazy == null) {
+            lazy = new LazyExpiry(m, N, T);
+        }
+    }
+
+    /**
+     * Replace the periodicClean sweep with an incremental one that cleans a few buckets at a time
+     *
+     * A cursor walks the buckets; recordItem cleans bucketsPerItem of them and, like periodicClean, as
+     * many more as needed to finish each pass within maxStaleness / 2 time units. Every bucket is then
+     * cleaned at least once per maxStaleness time units, so the per-window pause becomes a small constant
+     * cost per item. periodicClean no longer sweeps everything; it only catches up on the pass deadline.
+     *
+     * @param bucketsPerItem Buckets cleaned per recordItem call (0 to rely on the time deadline alone)
+     * @param maxStaleness Longest time a bucket may go without cleaning (1 to N)
+     */
+    public void enableIncrementalSweep(int bucketsPerItem, long maxStaleness) {
+        checkNotShared();
+        if (bucketsPerItem < 0 || bucketsPerItem > m) {
+            throw new IllegalArgumentException(
+                String.format("Buckets per item must be in [0, %d], got %d", m, bucketsPerItem));
+        }
+        if (maxStaleness < 1 || maxStaleness > N) {
+            throw new IllegalArgumentException(
+                String.format("Maximum staleness must be in [1, N=%d], got %d", N, maxStaleness));
+        }
+        sweeper = new IncrementalSweeper(m, bucketsPerItem, maxStaleness, T);
+    }
+
+    /**
+     * Index buckets by the earliest expiry of their entries and lock in a timer wheel
+     *
+     * periodicClean then cleans only the buckets holding something that has expired, so its cost follows
+     * the number of expirations instead of m * k, and calling it every time unit becomes cheap. Buckets
+     * are rescheduled whenever they are written or cleaned. With N up to the slot count each slot is one
+     * time unit and periodicClean(T) cleans exactly the buckets an eager sweep would change; larger N
+     * groups ceil(N / slots) time units per slot, delaying cleaning by at most that many time units.
+     * Costs 2 ints and 1 long per bucket plus 1 int per slot.
+     *
+     * @param slots Number of wheel slots (rounded up to a power of two)
+     */
+    public void enableExpiryIndex(int slots) {
+        checkNotShared();
+        if (slots < 1) {
+            throw new IllegalArgumentException("Slot count must be positive: " + slots);
+        }
+        if (expiry == null) {
+            expiry = new ExpiryWheel(m, N, slots, T);
+            for (int b = 0; b < m; b++) {
+                scheduleExpiry(b);
+            }
+        }
+    }
+
+    /**
+     * Keep each bucket's 1/n_i term and the harmonic sum up to date between queries
+     *
+     * recordItem and cleaning queue the buckets they touch, and a min-heap on the time each term
+     * next changes on its own (earliest entry or lock expiry) queues buckets that timed out, so
+     * estimateCardinality costs O(changed buckets * k) instead of O(m * k). Results equal the full
+     * recomputation up to floating-point rounding of the running sum; every fullRecomputeEvery-th query
+     * recomputes all buckets and resums, bounding that drift. Not available with lazy expiry, whose
+     * deferred cleaning can change a bucket without touching it.
+     *
+     * @param fullRecomputeEvery Queries between full recomputations (1 recomputes every time)
+     */
+    public void enableIncrementalEstimate(int fullRecomputeEvery) {
+        checkNotShared();
+        if (fullRecomputeEvery < 1) {
+            throw new IllegalArgumentException("Full recompute period must be positive: " + fullRecomputeEvery);
+        }
+        if (lazy != null) {
+            throw new IllegalStateException("The incremental estimate cannot be combined with lazy expiry");
+        }
+        if (estimates == null) {
+            estimates = new EstimateCache(m, fullRecomputeEvery);
+            highestTime = T;
+            lastQueryTime = T;
+        }
+    }
+
+    /**
+     * Hash function H(): Maps flow label to bucket index using FNV-1a hash
+     */
+    private int H(long flowLabel) {
+        long hash = SKMV.fnv1aHash64(flowLabel);
+        return (int) ((hash & Long.MAX_VALUE) % m);
+    }
+
+    /**
+     * @return Bucket index the flow label maps to
+     */
+    int bucketOf(long flowLabel) {
+        return H(flowLabel);
+    }
+
+    /**
+     * Hash function h(): Produces uniform hash value for elements using MurmurHash3
+     * Respects delta1 bit-width constraint
+     */
+    private long h(long elementID) {
+        long hash = SKMV.murmurHash3_64(elementID, SKMV.DEFAULT_ELEMENT_SEED);
+        return hash & hashRange;
+    }
+
+    // Adjusted timestamp operations on raw AT values (see SKMV.AdjustedTimestamp)
+
+    private long recordAT(long t) {
+        return Math.floorMod(t, 2 * N);
+    }
+
+    /**
+     * Time elapsed since an AT value was recorded, modulo 2N
+     * Equal to (T + 2N - vAT) % 2N but uses T mod 2N cached at the last time update instead of a division
+     */
+    private long age(long vAT) {
+        long diff = tMod - vAT;
+        return diff < 0 ? diff + 2 * N : diff;
+    }
+
+    private boolean lookupAT(long vAT) {
+        if (vAT == emptyAT) {
+            return false;  // Unset/empty timestamp
+        }
+        return age(vAT) < N;
+    }
+
+    private long actualTimestamp(long vAT) {
+        if (vAT == emptyAT) {
+            return T - N;
+        }
+        return T - age(vAT);
+    }
+
+    /**
+     * Online Item Recording - Core algorithm for processing streaming elements
+     *
+     * @param flowLabel The flow identifier
+     * @param elementID The element identifier to process
+     * @param timestamp The timestamp of the arriving item (becomes current time T)
+     */
+    public void recordItem(long flowLabel, long elementID, long timestamp) {
+        // Step 1: Time Update and Hashing
+        advanceTime(timestamp);
+        recordHashed(H(flowLabel), h(elementID));
+    }
+
+    /**
+     * Batched Online Item Recording with the default prefetch distance
+     *
+     * @param flowLabels The flow identifiers
+     * @param elementIDs The element identifiers
+     * @param timestamps The timestamps of the arriving items
+     * @param offset Position of the first item in the arrays
+     * @param length Number of items to record
+     */
+    public void recordBatch(long[] flowLabels, long[] elementIDs, long[] timestamps, int offset, int length) {
+        recordBatch(flowLabels, elementIDs, timestamps, offset, length, DEFAULT_PREFETCH_DISTANCE);
+    }
+
+    /**
+     * Batched Online Item Recording, pipelined to overlap the cache misses of consecutive items
+     *
+     * Items are applied one by one in order, exactly as by recordItem, in groups of prefetchDistance:
+     * first every item of the group is hashed and its bucket's memory read in a short loop of
+     * independent loads, so the CPU has the misses of the whole group outstanding at once, then the
+     * group's updates run against cached buckets. Java has no prefetch instruction, and a plain load
+     * placed between two updates would stall retirement for its full miss, hence the staging.
+     * This pays off once the storage exceeds the last-level cache; for small sketches the buckets are
+     * already cached and distance 0 is as good.
+     *
+     * @param flowLabels The flow identifiers
+     * @param elementIDs The element identifiers
+     * @param timestamps The timestamps of the arriving items
+     * @param offset Position of the first item in the arrays
+     * @param length Number of items to record
+     * @param prefetchDistance Items hashed and touched ahead, i.e. the group size (0 to 64, 0 disables the pipeline)
+     */
+    public void recordBatch(long[] flowLabels, long[] elementIDs, long[] timestamps, int offset, int length,
+                            int prefetchDistance) {
+        if (offset < 0 || length < 0
+                || length > flowLabels.length - offset
+                || length > elementIDs.length - offset
+                || length > timestamps.length - offset) {
+            throw new IllegalArgumentException(
+                String.format("Batch [%d, %d) out of bounds for arrays of length %d, %d, %d",
+                    offset, (long) offset + length, flowLabels.length, elementIDs.length, timestamps.length));
+        }
+        if (prefetchDistance < 0 || prefetchDistance > MAX_PREFETCH_DISTANCE) {
+            throw new IllegalArgumentException(
+                String.format("Prefetch distance must be in [0, %d], got %d", MAX_PREFETCH_DISTANCE, prefetchDistance));
+        }
+        if (prefetchDistance == 0) {
+            for (int i = offset; i < offset + length; i++) {
+                recordItem(flowLabels[i], elementIDs[i], timestamps[i]);
+            }
+            return;
+        }
+
+        int end = offset + length;
+        long sink = 0;
+        for (int group = offset; group < end; group += prefetchDistance) {
+            int size = Math.min(prefetchDistance, end - group);
+            // Stage: hash the group and load its buckets
+            for (int j = 0; j < size; j++) {
+                int b = H(flowLabels[group + j]);
+                aheadBuckets[j] = b;
+                aheadHashes[j] = h(elementIDs[group + j]);
+                sink += store.touch(b);
+            }
+            // Apply the group in order
+            for (int j = 0; j < size; j++) {
+                advanceTime(timestamps[group + j]);
+                recordHashed(aheadBuckets[j], aheadHashes[j]);
+            }
+        }
+        prefetchSink += sink;
+    }
+
+    /**
+     * Recording after Step 1, once the time is set and the item is hashed
+     */
+    private void recordHashed(int b, long h_y) {
+        if (sweeper != null) {
+            sweep(true);
+        }
+        if (lazy != null) {
+            if (lazy.isStale(b, T)) {
+                cleanBucket(b);
+            }
+            lazy.touch(b, T);
+        }
+
+        if (admission == null) {
+            updateBucket(b, h_y);
+        } else if (T < admission[2 * b + 1]) {
+            // Fast reject: the bucket provably stays unchanged (h_y == hashRange may match an empty entry)
+            if (h_y > admission[2 * b] && h_y != hashRange) {
+                return;
+            }
+            // Short of a lock transition, an update only writes h_y (no larger than the threshold),
+            // refreshes timestamps or lowers lock_maxV, so the state stays valid and is patched in O(1)
+            int lock = store.getLock(b);
+            updateBucket(b, h_y);
+            if (store.getLock(b) != lock) {
+                refreshAdmission(b);
+            } else if (lock == 1) {
+                admissionMaxHash[b] = Math.max(admissionMaxHash[b], h_y);
+                admission[2 * b] = lockedThreshold(b);
+            }
+        } else {
+            updateBucket(b, h_y);
+            refreshAdmission(b);
+        }
+    }
+
+    /**
+     * Set the global time, dropping all admission thresholds if time moves backwards
+     * (they are only valid for times at or after the one they were computed at);
+     * a cleaning view leaves that to its owner, which makes every backward move itself
+     */
+    private void advanceTime(long currentTime) {
+        if (admission != null && currentTime < T && !view) {
+            for (int b = 0; b < m; b++) {
+                invalidateAdmission(b);
+            }
+        }
+        if (estimates != null && currentTime > highestTime) {
+            highestTime = currentTime;
+        }
+        long previous = T;
+        T = currentTime;
+        tMod = recordAT(currentTime);
+        if (restored) {
+            restored = false;
+            if (currentTime - previous >= N / 2) {
+                catchUp(previous);
+            }
+        }
+    }
+
+    /**
+     * Scan a restored store for entries and locks recorded after the stored time T
+     *
+     * @return Largest distance ahead of T, up to N/2, of a stored timestamp (0 if none is ahead)
+     */
+    private long newestAhead() {
+        long ahead = 0;
+        for (int slot = 0; slot < m * k; slot++) {
+            ahead = Math.max(ahead, aheadOf(store.getAT(slot)));
+        }
+        for (int b = 0; b < m; b++) {
+            if (store.getLock(b) == 1) {
+                ahead = Math.max(ahead, aheadOf(store.getLockTime(b)));
+            }
+        }
+        return ahead;
+    }
+
+    private long aheadOf(long vAT) {
+        if (vAT == emptyAT) {
+            return 0;
+        }
+        long ahead = Math.floorMod(vAT - T, 2 * N);
+        return ahead <= N / 2 ? ahead : 0;
+    }
+
+    /**
+     * Clean every bucket after the first time jump since a restore, recovering entry and lock times
+     * relative to the restored time, which no stored timestamp exceeds and all lie within 2N of
+     */
+    private void catchUp(long restoredTime) {
+        for (int b = 0; b < m; b++) {
+            cleanBucket(b, restoredTime);
+        }
+    }
+
+    /**
+     * Recompute the admission threshold of a bucket from its current state
+     */
+    private void refreshAdmission(int b) {
+        int base = b * k;
+        long maxHash = -1;
+        if (store.getLock(b) == 0) {
+            // Case 1 rejects h_y >= head hash only while no entry is empty or outdated; empty entries
+            // are filled front to back, so scanning backwards gives up early on a bucket with room
+            long validUntil = Long.MAX_VALUE;
+            for (int slot = base + k - 1; slot >= base; slot--) {
+                long hash = store.getHash(slot);
+                long vAT = store.getAT(slot);
+                if (hash == hashRange || !lookupAT(vAT)) {
+                    invalidateAdmission(b);
+                    return;
+                }
+                maxHash = Math.max(maxHash, hash);
+                validUntil = Math.min(validUntil, actualTimestamp(vAT) + N);
+            }
+            admissionMaxHash[b] = maxHash;
+            admission[2 * b] = maxHash;
+            admission[2 * b + 1] = validUntil;
+        } else {
+            // Case 2c rejects until the lock times out, whatever the entries' timestamps
+            long lockTime = store.getLockTime(b);
+            if (!lookupAT(lockTime)) {
+                invalidateAdmission(b);
+                return;
+            }
+            for (int slot = base; slot < base + k; slot++) {
+                long hash = store.getHash(slot);
+                if (hash != hashRange) {
+                    maxHash = Math.max(maxHash, hash);  // Outdated entries still match in Case 0
+                }
+            }
+            admissionMaxHash[b] = maxHash;
+            admission[2 * b] = lockedThreshold(b);
+            admission[2 * b + 1] = actualTimestamp(lockTime) + N;
+        }
+    }
+
+    /**
+     * Threshold of a locked bucket: Case 2c rejects h_y >= max(head hash, lock_maxV) that matches no entry
+     * (the head may be an empty entry, whose hash is hashRange)
+     */
+    private long lockedThreshold(int b) {
+        long headHash = store.getHash(b * k + store.getHead(b));
+        return Math.max(Math.max(admissionMaxHash[b], headHash), store.getLockMaxV(b) - 1);
+    }
+
+    private void invalidateAdmission(int b) {
+        admission[2 * b + 1] = Long.MIN_VALUE;
+    }
+
+    /**
+     * Steps 2 and 3 of recordItem on the target bucket
+     */
+    private void updateBucket(int b, long h_y) {
+        if (estimates != null) {
+            estimates.markDirty(b);
+        }
+        int base = b * k;
+
+        // Step 2: Check and Reset P2C Lock Zone
+        if (store.getLock(b) == 1 && !lookupAT(store.getLockTime(b))) {
+            store.setLock(b, 0);
+        }
+        if (store.getLock(b) == 0) {
+            long headAT = store.getAT(base + store.getHead(b));
+            if (!lookupAT(headAT)) {
+                store.setLock(b, 1);
+                store.setLockTime(b, recordAT(actualTimestamp(headAT)));
+                store.setLockMaxV(b, hashRange);
+            }
+        }
+
+        // Step 3: Update Item y
+
+        // Case 0: Check for Duplicate (the filter never holds empty entries, so h_y == hashRange must scan)
+        if (filter == null || h_y == hashRange || filter.mightContain(b, h_y)) {
+            for (int slot = base; slot < base + k; slot++) {
+                if (store.getHash(slot) == h_y) {
+                    store.setAT(slot, recordAT(T));
+                    return;
+                }
+            }
+        }
+
+        if (store.getLock(b) == 0) {
+            updateNoLock(b, h_y, T);
+        } else {
+            updateWithLock(b, h_y, T);
+        }
+    }
+
+    /**
+     * Handle Case 1: No Lock
+     */
+    private void updateNoLock(int b, long h_y, long currentTime) {
+        int base = b * k;
+        int head = store.getHead(b);
+        long headHash = store.getHash(base + head);
+
+        int insertIndex = findInsertPosition(b);
+        if (insertIndex != -1) {
+            writeEntry(b, insertIndex, h_y, recordAT(currentTime));
+            if (h_y < headHash) {
+                store.setHead(b, insertIndex);
+            }
+        } else if (h_y < headHash) {
+            // Replace head with new smaller value and find the new head
+            writeEntry(b, head, h_y, recordAT(currentTime));
+            updateHead(b);
+        }
+        // If h_y >= head hash, reject (not in k-minimum)
+    }
+
+    /**
+     * Handle Case 2: Lock Active
+     */
+    private void updateWithLock(int b, long h_y, long currentTime) {
+        int base = b * k;
+        int head = store.getHead(b);
+        long headHash = store.getHash(base + head);
+
+        if (h_y < headHash) {
+            // Subcase 2a: k-Minimum
+            int outdatedIndex = findOutdatedEntry(b);
+            if (outdatedIndex != -1) {
+                writeEntry(b, outdatedIndex, h_y, recordAT(currentTime));
+            } else {
+                // All entries up-to-date, overwrite head and reset lock
+                writeEntry(b, head, h_y, recordAT(currentTime));
+                updateHead(b);
+                store.setLock(b, 0);
+            }
+        } else if (headHash < h_y && h_y < store.getLockMaxV(b)) {
+            // Subcase 2b: Falls in P2C Zone
+            store.setLockMaxV(b, h_y);
+        }
+        // Subcase 2c: Falls Beyond (h_y >= lock_maxV) - Do nothing
+    }
+
+    /**
+     * Overwrite an entry's hash and AT value, keeping the head tree, fingerprint filter and expiry index in sync
+     */
+    private void writeEntry(int b, int i, long hash, long vAT) {
+        long oldHash = store.getHash(b * k + i);
+        store.setHash(b * k + i, hash);
+        store.setAT(b * k + i, vAT);
+        if (headTree != null) {
+            headTree.update(store, b, i);
+        }
+        if (filter != null) {
+            filter.replace(store, b, oldHash, hash);
+        }
+        if (expiry != null) {
+            // Writes may leave the head short of the maximum; the next clean restores it as a sweep would
+            expiry.schedule(b, T);
+        }
+    }
+
+    /**
+     * Find position to insert new entry (empty first, then outdated)
+     */
+    private int findInsertPosition(int b) {
+        int base = b * k;
+        for (int i = 0; i < k; i++) {
+            if (store.getHash(base + i) == hashRange) {
+                return i;
+            }
+        }
+        return findOutdatedEntry(b);
+    }
+
+    /**
+     * Find an outdated entry in the bucket
+     */
+    private int findOutdatedEntry(int b) {
+        int base = b * k;
+        for (int i = 0; i < k; i++) {
+            if (!lookupAT(store.getAT(base + i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Update head index to point to entry with highest hash value in sliding window
+     */
+    private void updateHead(int b) {
+        int base = b * k;
+        if (headTree != null) {
+            // Walk down the maxima, cleaning expired ones as periodicCleanBucket would
+            int top;
+            while ((top = headTree.top(store, b)) != -1 && !lookupAT(store.getAT(base + top))) {
+                writeEntry(b, top, hashRange, emptyAT);
+            }
+            store.setHead(b, top == -1 ? 0 : top);
+            return;
+        }
+
+        long maxHash = -1;
+        int maxIndex = 0;
+
+        for (int i = 0; i < k; i++) {
+            long hash = store.getHash(base + i);
+            if (hash != hashRange && hash > maxHash && lookupAT(store.getAT(base + i))) {
+                maxHash = hash;
+                maxIndex = i;
+            }
+        }
+
+        store.setHead(b, maxIndex);
+    }
+
+    /**
+     * Periodic cleaning method for AT implementation
+     * Should be called every N time units or at regular intervals to clean outdated entries
+     *
+     * @param currentTime Current global time for cleaning
+     */
+    public void periodicClean(long currentTime) {
+        advanceTime(currentTime);
+        if (!view) {
+            store.recordTime(currentTime);
+        }
+        if (sweeper != null) {
+            sweep(false);  // Spread over recordItem calls, only catch up here
+            return;
+        }
+        if (expiry != null) {
+            int b;
+            while ((b = expiry.pollDue(currentTime)) != -1) {
+                cleanBucket(b);
+            }
+            return;
+        }
+        if (lazy != null) {
+            lazy.advanceEpoch();  // Buckets are cleaned when next touched
+            return;
+        }
+        for (int i = 0; i < m; i++) {
+            periodicCleanBucket(currentTime, i);
+        }
+    }
+
+    /**
+     * Periodic cleaning method for a specific bucket
+     *
+     * @param currentTime Current global time for cleaning
+     * @param bucketIndex Index of the bucket to clean (0 to m-1)
+     */
+    public void periodicCleanBucket(long currentTime, int bucketIndex) {
+        if (bucketIndex < 0 || bucketIndex >= m) {
+            throw new IllegalArgumentException("Bucket index out of range: " + bucketIndex);
+        }
+
+        advanceTime(currentTime);
+        cleanBucket(bucketIndex);
+    }
+
+    /**
+     * Clean the buckets the incremental sweeper owes at the current time
+     */
+    private void sweep(boolean perItem) {
+        for (int n = sweeper.due(T, perItem); n > 0; n--) {
+            cleanBucket(sweeper.next(T));
+        }
+    }
+
+    /**
+     * Clean a bucket at the current time
+     *
+     * With lazy expiry the bucket may not have been cleaned for up to 2N time units, so entry and
+     * lock timestamps are recovered relative to its last touch time (which no stored timestamp exceeds)
+     * rather than to T; otherwise the anchor is T itself and this is the plain AT clean.
+     */
+    private void cleanBucket(int bucketIndex) {
+        cleanBucket(bucketIndex, lazy == null ? T : lazy.anchor(bucketIndex));
+    }
+
+    /**
+     * Clean a bucket at the current time with stored timestamps recovered relative to the given anchor
+     */
+    private void cleanBucket(int bucketIndex, long anchor) {
+        long anchorMod = anchor == T ? tMod : recordAT(anchor);
+        int base = bucketIndex * k;
+        for (int i = 0; i < k; i++) {
+            long vAT = store.getAT(base + i);
+            if (vAT != emptyAT && !expiredSince(vAT, anchor, anchorMod)) {
+                continue;
+            }
+            store.setAT(base + i, emptyAT);
+            if (store.getHash(base + i) != hashRange) {
+                store.setHash(base + i, hashRange);  // Reset to max hash value (empty)
+                if (headTree != null) {
+                    headTree.update(store, bucketIndex, i);
+                }
+            }
+        }
+        if (store.getLock(bucketIndex) == 1 && expiredSince(store.getLockTime(bucketIndex), anchor, anchorMod)) {
+            store.setLock(bucketIndex, 0);
+        }
+        if (filter != null) {
+            filter.rebuild(store, bucketIndex);
+        }
+
+        updateHead(bucketIndex);
+        updateBucketStatus(bucketIndex);
+        if (admission != null) {
+            refreshAdmission(bucketIndex);
+        }
+        if (lazy != null) {
+            lazy.markCleaned(bucketIndex, T);
+        }
+        if (estimates != null) {
+            estimates.markDirty(bucketIndex);
+        }
+        if (expiry != null) {
+            expiry.unschedule(bucketIndex);
+            scheduleExpiry(bucketIndex);
+        }
+    }
+
+    /**
+     * Schedule a bucket at the earliest time cleaning would change it
+     */
+    private void scheduleExpiry(int b) {
+        long earliest = earliestChange(b);
+        if (earliest != Long.MAX_VALUE) {
+            expiry.schedule(b, earliest);
+        }
+    }
+
+    /**
+     * @return Earliest time the passage of time alone changes the bucket: the earliest expiry of its
+     * valid entries and lock, T if it is unlocked with an invalid head, or Long.MAX_VALUE if never
+     */
+    private long earliestChange(int b) {
+        long earliest = Long.MAX_VALUE;
+        int base = b * k;
+        for (int slot = base; slot < base + k; slot++) {
+            long vAT = store.getAT(slot);
+            if (lookupAT(vAT)) {
+                earliest = Math.min(earliest, actualTimestamp(vAT) + N);
+            }
+        }
+        if (store.getLock(b) == 1) {
+            earliest = Math.min(earliest, actualTimestamp(store.getLockTime(b)) + N);
+        } else if (!lookupAT(store.getAT(base + store.getHead(b)))) {
+            earliest = T;  // Cleaning locks a bucket whose head is outdated or empty
+        }
+        return earliest;
+    }
+
+    /**
+     * @return true if the timestamp recorded as vAT is N or more time units older than T,
+     * given an anchor time that is no older than the timestamp and less than 2N newer
+     */
+    private boolean expiredSince(long vAT, long anchor, long anchorMod) {
+        if (vAT == emptyAT) {
+            return true;
+        }
+        long diff = anchorMod - vAT;
+        return T - anchor + (diff < 0 ? diff + 2 * N : diff) >= N;
+    }
+
+    /**
+     * Query method for cardinality estimation
+     *
+     * @return Estimated cardinality of distinct elements in sliding window
+     */
+    public double estimateCardinality() {
+        if (estimates != null) {
+            return estimateIncrementally();
+        }
+        double harmonicSum = 0.0;
+        int effectiveM = m;
+        for (int b = 0; b < m; b++) {
+            prepareBucket(b);
+            double n_i = bucketCardinality(b);
+            if (Double.isNaN(n_i)) {
+                effectiveM--;
+                continue;
+            }
+            if (n_i > 0) {
+                harmonicSum += 1.0 / n_i;
+            }
+        }
+
+        if (harmonicSum > 0 && effectiveM > 0) {
+            return effectiveM / harmonicSum;
+        } else {
+            return 0.0;
+        }
+    }
+
+    /**
+     * Query using the cached per-bucket terms, recomputing only buckets changed or timed out since the last query
+     *
+     * Falls back to a full recomputation periodically and around backward time moves: entries recorded
+     * after the query time count as outdated now but become valid again without a write once time catches up.
+     */
+    private double estimateIncrementally() {
+        boolean behind = T < highestTime;
+        if (estimates.startQuery() || T < lastQueryTime || behind || lastQueryBehind) {
+            for (int b = 0; b < m; b++) {
+                updateEstimate(b);
+            }
+            estimates.resum();
+            estimates.clearDirty();
+        } else {
+            estimates.expire(T);
+            int b;
+            while ((b = estimates.pollDirty()) != -1) {
+                updateEstimate(b);
+            }
+        }
+        lastQueryTime = T;
+        lastQueryBehind = behind;
+
+        double harmonicSum = estimates.getHarmonicSum();
+        int effectiveM = estimates.getCountedBuckets();
+        if (harmonicSum > 0 && effectiveM > 0) {
+            return effectiveM / harmonicSum;
+        } else {
+            return 0.0;
+        }
+    }
+
+    private void updateEstimate(int b) {
+        prepareBucket(b);
+        double n_i = bucketCardinality(b);
+        boolean isCounted = !Double.isNaN(n_i);
+        estimates.set(b, isCounted, isCounted && n_i > 0 ? 1.0 / n_i : 0.0, earliestChange(b));
+    }
+
+    /**
+     * Bring a bucket up to date for querying (lazy clean and lock status)
+     */
+    private void prepareBucket(int b) {
+        if (lazy != null && lazy.isStale(b, T)) {
+            cleanBucket(b);
+        }
+        updateBucketStatus(b);
+    }
+
+    /**
+     * KMV estimate n_i = k' / alpha_k' * hashRange - 1 of one bucket, from k' and the k'-th minimum
+     * (largest valid hash) found in one pass
+     *
+     * @return n_i, or NaN if the bucket has no valid entry (k' = 0)
+     */
+    private double bucketCardinality(int b) {
+        int base = b * k;
+        int head = store.getHead(b);
+        boolean locked = store.getLock(b) == 1;
+        int kPrime = 0;
+        long alpha_k = -1;
+        for (int i = 0; i < k; i++) {
+            long hash = store.getHash(base + i);
+            if (hash != hashRange && lookupAT(store.getAT(base + i))) {
+                if (locked && i == head) {
+                    continue;  // Exclude head entry while locked
+                }
+                kPrime++;
+                if (hash > alpha_k) {
+                    alpha_k = hash;
+                }
+            }
+        }
+        if (kPrime == 0) {
+            return Double.NaN;
+        }
+        return (double) kPrime / alpha_k * hashRange - 1;
+    }
+
+    /**
+     * Update bucket status for querying
+     */
+    private void updateBucketStatus(int b) {
+        boolean changed = false;
+        if (store.getLock(b) == 1 && !lookupAT(store.getLockTime(b))) {
+            store.setLock(b, 0);
+            changed = true;
+        }
+        if (store.getLock(b) == 0) {
+            if (!lookupAT(store.getAT(b * k + store.getHead(b)))) {
+                store.setLock(b, 1);
+                store.setLockTime(b, recordAT(T));
+                store.setLockMaxV(b, hashRange);
+                changed = true;
+            }
+        }
+        if (changed && admission != null) {
+            invalidateAdmission(b);
+        }
+        if (changed && lazy != null) {
+            lazy.touch(b, T);
+        }
+        if (changed && expiry != null && store.getLock(b) == 1) {
+            expiry.schedule(b, actualTimestamp(store.getLockTime(b)) + N);
+        }
+    }
+
+    /**
+     * Flush the sketch state to durable media (persistent backends only)
+     * Recorded items are already in the backend; this makes them and the current time survive a crash
+     */
+    public void checkpoint() {
+        store.checkpoint(T);
+    }
+
+    /**
+     * Checkpoint and release the storage backend; the sketch must not be used afterwards
+     */
+    @Override
+    public void close() {
+        store.checkpoint(T);
+        store.close();
+    }
+
+    // Getter methods for debugging and analysis
+    public long getCurrentTime() { return T; }
+    public long getWindowSize() { return N; }
+    public int getK() { return k; }
+    public int getM() { return m; }
+    public int getDelta1() { return delta1; }
+    public int getDelta2() { return delta2; }
+    public long getHashRange() { return hashRange; }
+    public long getTimestampRange() { return timestampRange; }
+    public SKMVStorage getStorage() { return store; }
+    public int getExpiryScheduledBuckets() { return expiry == null ? 0 : expiry.size(); }
+
+    // Incremental sweep configuration and metrics (0 when the sweep is disabled)
+    public int getSweepBucketsPerItem() { return sweeper == null ? 0 : sweeper.getBucketsPerItem(); }
+    public double getSweepBucketsPerTimeUnit() { return sweeper == null ? 0 : sweeper.getBucketsPerTimeUnit(); }
+    public long getSweepMaxStaleness() { return sweeper == null ? 0 : sweeper.getMaxStaleness(); }
+    public long getSweptBuckets() { return sweeper == null ? 0 : sweeper.getBucketsSwept(); }
+    public long getSweepPasses() { return sweeper == null ? 0 : sweeper.getPasses(); }
+    /** Largest time from the start of a pass to the end of the next, an upper bound on observed bucket staleness */
+    public long getSweepWorstStaleness() { return sweeper == null ? 0 : sweeper.getWorstStaleness(); }
+}
@@ -1,5 +1,9 @@
 package com.example.slidingdistinctcounter;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
 /**
  * Sliding KMV (S-KMV) Sketch for Flow Cardinality Estimation
  * 
@@ -14,6 +18,13 @@ package com.example.slidingdistinctcounter;
  */
 public class SKMV {
     
+    // Default hash seeds (the original fixed constants)
+    static final long DEFAULT_BUCKET_SEED = 0xcbf29ce484222325L;  // FNV-1a 64-bit offset basis
+    static final int DEFAULT_ELEMENT_SEED = 0x9747b28c;           // MurmurHash3 seed
+    
+    // Buckets merged per task when merging in parallel
+    private static final int MERGE_CHUNK = 4096;
+    
     // Core parameters
     private final long N;          // Window length (time units)
     private final int k;           // k-minimum value count per bucket
@@ -25,10 +36,25 @@ public class SKMV {
     private final long hashRange;      // 2^delta1 - 1
     private final long timestampRange; // 2^delta2 - 1
     
+    private final int flowBuckets;     // Buckets each flow is recorded in (1 = the paper's mapping)
+    private final HashStrategy hashStrategy;  // Hash functions behind H() and h()
+    private final long bucketSeed;     // Seed for H() (the FNV-1a offset basis by default)
+    private final int elementSeed;     // Seed for h() (the MurmurHash3 seed by default)
+    
     // Global state
     private long T;           // Current global time (initialized to 0)
     private Bucket[] C;       // Array of m buckets
     
+    // Replication state (see SKMVCodec.writeDelta)
+    private final long[] dirty;  // Bit b set if bucket b may have changed since the last delta
+    private long deltaSequence;  // Number of deltas emitted (or last applied, on a replica)
+    
+    // Scratch space for recordBatch, grown on demand
+    private long[] batchHashes = new long[0];  // h() of each item in the batch
+    private long[] batchKeys = new long[0];    // (bucket index << 32) | item position
+    private long[] batchSorted = new long[0];  // Radix sort buffer for batchKeys
+    private final int[] batchCounts = new int[1 << 11];  // Radix digit counts
+    
     /**
      * Memory-efficient timestamp representation for sliding windows
      * Uses modular arithmetic to compress timestamps into smaller space
@@ -51,7 +77,7 @@ public class SKMV {
          * @param t The actual timestamp to record
          */
         public void record(long t) {
-            this.vAT = t % (2 * N);
+            this.vAT = Math.floorMod(t, 2 * N);
         }
         
         /**
@@ -78,6 +104,21 @@ public class SKMV {
             }
         }
         
+        /**
+         * Restore a raw adjusted timestamp value, as read back by SKMVCodec
+         * @param vAT Value in [0, 2N], where 2N is unset
+         */
+        void setRawValue(long vAT) {
+            this.vAT = vAT;
+        }
+        
+        /**
+         * Reset to the unset state
+         */
+        public void clear() {
+            this.vAT = 2 * N;
+        }
+        
         /**
          * Get the raw adjusted timestamp value (for debugging)
          * @return The vAT value
@@ -165,6 +206,74 @@ public class SKMV {
      * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
      */
     public SKMV(long N, int k, int m, int delta1, int delta2) {
+        this(N, k, m, delta1, delta2, 1);
+    }
+    
+    /**
+     * Constructor for SKMV sketch recording each flow in several buckets
+     * 
+     * Every item of a flow is recorded in flowBuckets buckets chosen by independent hashes of the flow label
+     * (the first being the usual H()), and per-flow queries answer with the smallest of their estimates.
+     * A bucket shared with other flows only overestimates the flow, so the minimum over several buckets
+     * reduces collision bias, at flowBuckets times the recording cost. The global estimate is unchanged
+     * in form but sees every flow flowBuckets times.
+     * 
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+     * @param flowBuckets Buckets per flow (1 to m)
+     */
+    public SKMV(long N, int k, int m, int delta1, int delta2, int flowBuckets) {
+        this(N, k, m, delta1, delta2, flowBuckets, DEFAULT_BUCKET_SEED, DEFAULT_ELEMENT_SEED);
+    }
+    
+    /**
+     * Constructor for SKMV sketch with explicit hash seeds
+     * 
+     * Sketches can only be merged if they hash with the same seeds, so collectors that feed one
+     * aggregator must agree on them; the other constructors use the original fixed seeds.
+     * 
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+     * @param flowBuckets Buckets per flow (1 to m)
+     * @param bucketSeed FNV-1a offset basis for the bucket hash H()
+     * @param elementSeed MurmurHash3 seed for the element hash h()
+     */
+    public SKMV(long N, int k, int m, int delta1, int delta2, int flowBuckets, long bucketSeed, int elementSeed) {
+        this(N, k, m, delta1, delta2, flowBuckets, HashStrategy.FNV_MURMUR, bucketSeed, elementSeed);
+    }
+    
+    /**
+     * Constructor for SKMV sketch with explicit hash functions and seeds
+     * 
+     * The strategy replaces the original FNV-1a / MurmurHash3 pair behind H() and h(), e.g. with a
+     * faster mixer or fastrange bucket mapping. Like the seeds, it must be the same for sketches that
+     * are merged.
+     * 
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+     * @param flowBuckets Buckets per flow (1 to m)
+     * @param hashStrategy Hash functions for H() and h()
+     * @param bucketSeed Seed for the bucket hash H()
+     * @param elementSeed Seed for the element hash h()
+     */
+    public SKMV(long N, int k, int m, int delta1, int delta2, int flowBuckets, HashStrategy hashStrategy,
+                long bucketSeed, int elementSeed) {
+        if (hashStrategy == null) {
+            throw new IllegalArgumentException("Hash strategy must not be null");
+        }
+        if (hashStrategy.id() < 0 || hashStrategy.id() > 255) {
+            throw new IllegalArgumentException(
+                String.format("Hash strategy id must be in [0, 255], got %d", hashStrategy.id()));
+        }
         this.N = N;
         this.k = k;
         this.m = m;
@@ -172,6 +281,15 @@ public class SKMV {
         this.delta2 = delta2;
         this.T = 0;
         
+        if (flowBuckets < 1 || flowBuckets > m) {
+            throw new IllegalArgumentException(
+                String.format("Buckets per flow must be in [1, m=%d], got %d", m, flowBuckets));
+        }
+        this.flowBuckets = flowBuckets;
+        this.hashStrategy = hashStrategy;
+        this.bucketSeed = bucketSeed;
+        this.elementSeed = elementSeed;
+        
         // Calculate ranges based on bit-widths
         // For delta1 bits: range is [0, 2^delta1 - 1]
         this.hashRange = (1L << delta1) - 1;
@@ -185,6 +303,8 @@ public class SKMV {
                     N, delta2, timestampRange / 2));
         }
         
+        this.dirty = new long[(m + 63) >>> 6];
+        
         // Initialize bucket array
         this.C = new Bucket[m];
         for (int i = 0; i < m; i++) {
@@ -206,27 +326,48 @@ public class SKMV {
     }
     
     /**
-     * Hash function H(): Maps flow label to bucket index using FNV-1a hash
+     * Hash function H(): Maps flow label to bucket index using the strategy's flow hash
+     * (FNV-1a by default)
      * 
      * @param flowLabel The flow identifier
      * @return Bucket index (0 to m-1)
      */
     private int H(long flowLabel) {
-        // FNV-1a hash for bucket assignment
-        long hash = fnv1aHash64(flowLabel);
-        return (int) ((hash & Long.MAX_VALUE) % m);
+        return hashStrategy.bucketIndex(hashStrategy.flowHash(flowLabel, bucketSeed), m);
+    }
+    
+    /**
+     * The j-th bucket of a flow for multi-bucket mapping; the 0-th is H(flowLabel)
+     * 
+     * @param flowLabel The flow identifier
+     * @param j Bucket number (0 to flowBuckets-1)
+     * @return Bucket index (0 to m-1)
+     */
+    private int H(long flowLabel, int j) {
+        if (j == 0) {
+            return H(flowLabel);
+        }
+        long hash = hashStrategy.flowHash(flowLabel ^ (j * 0x9E3779B97F4A7C15L), bucketSeed);
+        return hashStrategy.bucketIndex(hash, m);
+    }
+    
+    /**
+     * @return Index of the j-th bucket (0 to flowBuckets-1) the flow label maps to
+     */
+    int bucketOf(long flowLabel, int j) {
+        return H(flowLabel, j);
     }
     
     /**
-     * Hash function h(): Produces uniform hash value for elements using MurmurHash3
+     * Hash function h(): Produces uniform hash value for elements using the strategy's element hash
+     * (MurmurHash3 by default)
      * Respects delta1 bit-width constraint
      * 
      * @param elementID The element identifier
      * @return Uniform hash value in range [0, 2^delta1 - 1]
      */
     private long h(long elementID) {
-        // MurmurHash3 for uniform hash distribution
-        long hash = murmurHash3_64(elementID, 0x9747b28c);  // Fixed seed for reproducibility
+        long hash = hashStrategy.elementHash(elementID, elementSeed);
         // Mask to delta1 bits: ensures hash is in range [0, 2^delta1 - 1]
         return hash & hashRange;
     }
@@ -238,11 +379,17 @@ public class SKMV {
          * @return Hash value in range [0, Long.MAX_VALUE]
          * 
          */
-    private long fnv1aHash64(long data) {
-        final long FNV_OFFSET_BASIS_64 = 0xcbf29ce484222325L;
+    static long fnv1aHash64(long data) {
+        return fnv1aHash64(data, DEFAULT_BUCKET_SEED);
+    }
+    
+    /**
+     * FNV-1a 64-bit hash starting from the given offset basis instead of the standard one
+     */
+    static long fnv1aHash64(long data, long offsetBasis) {
         final long FNV_PRIME_64 = 0x100000001b3L;
         
-        long hash = FNV_OFFSET_BASIS_64;
+        long hash = offsetBasis;
         
         // Process each byte of the long value
         for (int i = 0; i < 8; i++) {
@@ -258,7 +405,7 @@ public class SKMV {
      * MurmurHash3 64-bit implementation (simplified version)
      * Excellent uniformity and avalanche properties
      */
-    private long murmurHash3_64(long key, int seed) {
+    static long murmurHash3_64(long key, int seed) {
         long h1 = seed;
         long h2 = seed;
         
@@ -294,7 +441,7 @@ public class SKMV {
     /**
      * Finalization mix function for MurmurHash3
      */
-    private long fmix64(long k) {
+    static long fmix64(long k) {
         k ^= k >>> 33;
         k *= 0xff51afd7ed558ccdL;
         k ^= k >>> 33;
@@ -313,26 +460,232 @@ public class SKMV {
     public void recordItem(long flowLabel, long elementID, long timestamp) {
         // Step 1: Time Update and Hashing
         T = timestamp;  // Update global time to the item's timestamp
-        int bucketIndex = H(flowLabel);
         long h_y = h(elementID);
         
-        Bucket bucket = C[bucketIndex];
+        for (int j = 0; j < flowBuckets; j++) {
+            int b = H(flowLabel, j);
+            updateBucket(C[b], h_y, T, T);
+            markDirty(b);
+        }
+    }
+    
+    /**
+     * Online Item Recording for keys given as byte ranges (e.g. packed IPv6 addresses or 5-tuples)
+     * The keys are reduced to a flow label and element ID (see {@link #flowLabelOf(byte[], int, int)})
+     * without allocating, and recorded like recordItem(long, long, long).
+     * 
+     * @param flowKey Array holding the flow key
+     * @param flowOffset Position of the flow key
+     * @param flowLength Length of the flow key in bytes
+     * @param elementKey Array holding the element key
+     * @param elementOffset Position of the element key
+     * @param elementLength Length of the element key in bytes
+     * @param timestamp The timestamp of the arriving item (becomes current time T)
+     */
+    public void recordItem(byte[] flowKey, int flowOffset, int flowLength,
+                           byte[] elementKey, int elementOffset, int elementLength, long timestamp) {
+        recordItem(flowLabelOf(flowKey, flowOffset, flowLength), elementIdOf(elementKey, elementOffset, elementLength),
+            timestamp);
+    }
+    
+    /**
+     * Online Item Recording for keys given as the remaining bytes of buffers (e.g. slices of a
+     * direct packet buffer); positions and limits are left unchanged
+     * 
+     * @param flowKey Buffer holding the flow key
+     * @param elementKey Buffer holding the element key
+     * @param timestamp The timestamp of the arriving item (becomes current time T)
+     */
+    public void recordItem(ByteBuffer flowKey, ByteBuffer elementKey, long timestamp) {
+        recordItem(flowLabelOf(flowKey), elementIdOf(elementKey), timestamp);
+    }
+    
+    /**
+     * Online Item Recording for keys given as text (e.g. srcIP and dstIP strings), hashed as UTF-8
+     * 
+     * @param flowKey The flow key
+     * @param elementKey The element key
+     * @param timestamp The timestamp of the arriving item (becomes current time T)
+     */
+    public void recordItem(CharSequence flowKey, CharSequence elementKey, long timestamp) {
+        recordItem(flowLabelOf(flowKey), elementIdOf(elementKey), timestamp);
+    }
+    
+    /**
+     * Flow label of a variable-length flow key: a 64-bit fold of its bytes through the hash strategy,
+     * seeded with the bucket seed
+     * Recording with the key and recording with its label are the same, so keys can be reduced to
+     * labels up front for recordBatch. The same bytes give the same label as a byte[], a ByteBuffer
+     * or (as UTF-8) a CharSequence; labels of different keys collide with probability about 2^-64.
+     * 
+     * @param key Array holding the key
+     * @param offset Position of the key
+     * @param length Length of the key in bytes
+     * @return Flow label for recordItem, recordBatch and estimateFlowCardinality
+     * @throws IllegalArgumentException if the range is not within the array
+     */
+    public long flowLabelOf(byte[] key, int offset, int length) {
+        return KeyHashing.hash(hashStrategy, bucketSeed, key, offset, length);
+    }
+    
+    /**
+     * Flow label of the remaining bytes of a buffer (see flowLabelOf(byte[], int, int))
+     */
+    public long flowLabelOf(ByteBuffer key) {
+        return KeyHashing.hash(hashStrategy, bucketSeed, key);
+    }
+    
+    /**
+     * Flow label of the UTF-8 encoding of a key (see flowLabelOf(byte[], int, int))
+     */
+    public long flowLabelOf(CharSequence key) {
+        return KeyHashing.hash(hashStrategy, bucketSeed, key);
+    }
+    
+    /**
+     * Element ID of a variable-length element key, folded like flowLabelOf but seeded with the element seed
+     * 
+     * @param key Array holding the key
+     * @param offset Position of the key
+     * @param length Length of the key in bytes
+     * @return Element ID for recordItem and recordBatch
+     * @throws IllegalArgumentException if the range is not within the array
+     */
+    public long elementIdOf(byte[] key, int offset, int length) {
+        return KeyHashing.hash(hashStrategy, elementSeed, key, offset, length);
+    }
+    
+    /**
+     * Element ID of the remaining bytes of a buffer (see elementIdOf(byte[], int, int))
+     */
+    public long elementIdOf(ByteBuffer key) {
+        return KeyHashing.hash(hashStrategy, elementSeed, key);
+    }
+    
+    /**
+     * Element ID of the UTF-8 encoding of a key (see elementIdOf(byte[], int, int))
+     */
+    public long elementIdOf(CharSequence key) {
+        return KeyHashing.hash(hashStrategy, elementSeed, key);
+    }
+    
+    /**
+     * Batched Online Item Recording, equivalent to calling recordItem on each item in order
+     * 
+     * All hashes are computed in one pass, then the items are grouped by bucket with a stable radix
+     * sort and applied bucket by bucket. A bucket's state depends only on its own items and the time
+     * of each, so applying every item at its own timestamp in per-bucket arrival order leaves the
+     * sketch exactly as sequential recording would. Current time ends at the batch's last timestamp.
+     * 
+     * @param flowLabels The flow identifiers
+     * @param elementIDs The element identifiers
+     * @param timestamps The timestamps of the arriving items
+     * @param offset Position of the first item in the arrays
+     * @param length Number of items to record
+     */
+    public void recordBatch(long[] flowLabels, long[] elementIDs, long[] timestamps, int offset, int length) {
+        if (offset < 0 || length < 0
+                || length > flowLabels.length - offset
+                || length > elementIDs.length - offset
+                || length > timestamps.length - offset) {
+            throw new IllegalArgumentException(
+                String.format("Batch [%d, %d) out of bounds for arrays of length %d, %d, %d",
+                    offset, (long) offset + length, flowLabels.length, elementIDs.length, timestamps.length));
+        }
+        if ((long) length * flowBuckets > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                String.format("Batch of %d items in %d buckets each exceeds %d bucket updates",
+                    length, flowBuckets, Integer.MAX_VALUE));
+        }
+        if (length == 0) {
+            return;
+        }
+        int updates = length * flowBuckets;
+        if (batchKeys.length < updates) {
+            batchKeys = new long[updates];
+            batchSorted = new long[updates];
+        }
+        if (batchHashes.length < length) {
+            batchHashes = new long[length];
+        }
         
+        // Hashing pass
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            batchHashes[i] = h(elementIDs[offset + i]);
+            for (int j = 0; j < flowBuckets; j++) {
+                batchKeys[n++] = ((long) H(flowLabels[offset + i], j) << 32) | i;
+            }
+        }
+        
+        // Group by bucket; the sort is stable so each bucket keeps arrival order
+        long[] sorted = sortByBucket(n);
+        
+        // Application pass
+        for (int u = 0; u < n; u++) {
+            int i = (int) sorted[u];
+            T = timestamps[offset + i];
+            int b = (int) (sorted[u] >>> 32);
+            updateBucket(C[b], batchHashes[i], T, T);
+            markDirty(b);
+        }
+        T = timestamps[offset + length - 1];
+    }
+    
+    /**
+     * Stable LSD radix sort of the first n batch keys on their bucket index, 11 bits per pass
+     * 
+     * @return Array holding the sorted keys (batchKeys or batchSorted)
+     */
+    private long[] sortByBucket(int n) {
+        int bucketBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, m - 1));
+        long[] from = batchKeys;
+        long[] to = batchSorted;
+        int[] counts = batchCounts;
+        for (int shift = 32; shift < 32 + bucketBits; shift += 11) {
+            java.util.Arrays.fill(counts, 0);
+            for (int u = 0; u < n; u++) {
+                counts[(int) (from[u] >>> shift) & 0x7FF]++;
+            }
+            int position = 0;
+            for (int d = 0; d < counts.length; d++) {
+                int count = counts[d];
+                counts[d] = position;
+                position += count;
+            }
+            for (int u = 0; u < n; u++) {
+                to[counts[(int) (from[u] >>> shift) & 0x7FF]++] = from[u];
+            }
+            long[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+    
+    /**
+     * Steps 2 and 3 of recordItem on one bucket of the flow
+     * 
+     * The item is stored with its own timestamp, while the window is evaluated at currentTime; the
+     * two differ only for a late item recorded behind the clock (see ConcurrentSKMV), which must be
+     * less than N behind it.
+     */
+    private void updateBucket(Bucket bucket, long h_y, long timestamp, long currentTime) {
         // Step 2: Check and Reset P2C Lock Zone (Section IV-A, Step 1)
         
         // Check Lock Timeout (using AT lookup)
-        if (bucket.lock == 1 && !bucket.lock_time.lookup(T)) {
+        if (bucket.lock == 1 && !bucket.lock_time.lookup(currentTime)) {
             bucket.lock = 0;
         }
         
         // Check Head Outdate (Lock Activation)
         if (bucket.lock == 0) {
             Entry headEntry = bucket.entries[bucket.head];
-            if (!headEntry.t.lookup(T)) {  // Use AT lookup method
+            if (!headEntry.t.lookup(currentTime)) {  // Use AT lookup method
                 bucket.lock = 1;
                 // Lock time should remain at previous value (when head was last valid)
                 // Set lock_time to head entry's timestamp + N
-                long headTimestamp = getActualTimestamp(headEntry.t, T);
+                long headTimestamp = getActualTimestamp(headEntry.t, currentTime);
                 bucket.lock_time.record(headTimestamp);
                 bucket.lock_maxV = bucket.maxHashValue;  // Reset to max hash value
             }
@@ -342,25 +695,29 @@ public class SKMV {
         
         // Case 0: Check for Duplicate
         for (int i = 0; i < k; i++) {
-            if (bucket.entries[i].h == h_y) {
-                bucket.entries[i].t.record(T);  // Update timestamp using AT method
+            Entry entry = bucket.entries[i];
+            if (entry.h == h_y) {
+                // A late item never moves a newer timestamp back
+                if (!entry.t.lookup(currentTime) || getActualTimestamp(entry.t, currentTime) < timestamp) {
+                    entry.t.record(timestamp);  // Update timestamp using AT method
+                }
                 return;  // Exit early
             }
         }
         
         if (bucket.lock == 0) {
             // Case 1: No Lock
-            updateNoLock(bucket, h_y, T);
+            updateNoLock(bucket, h_y, timestamp, currentTime);
         } else {
             // Case 2: Lock Active
-            updateWithLock(bucket, h_y, T);
+            updateWithLock(bucket, h_y, timestamp, currentTime);
         }
     }
     
     /**
      * Handle Case 1: No Lock (Section IV-A, Step 2, Case 1)
      */
-    private void updateNoLock(Bucket bucket, long h_y, long currentTime) {
+    private void updateNoLock(Bucket bucket, long h_y, long timestamp, long currentTime) {
         Entry headEntry = bucket.entries[bucket.head];
         
         // Find an empty or outdated entry to insert
@@ -368,7 +725,7 @@ public class SKMV {
         if (insertIndex != -1) {
             // Found empty or outdated position, insert new item
             bucket.entries[insertIndex].h = h_y;
-            bucket.entries[insertIndex].t.record(currentTime);
+            bucket.entries[insertIndex].t.record(timestamp);
             
             // Update head to point to maximum hash value in window
 
@@ -380,7 +737,7 @@ public class SKMV {
             if (h_y < headEntry.h) {
             // Replace head with new smaller value
             bucket.entries[bucket.head].h = h_y;
-            bucket.entries[bucket.head].t.record(currentTime);
+            bucket.entries[bucket.head].t.record(timestamp);
             
             // Find new head (maximum hash value in window)
             updateHead(bucket, currentTime);
@@ -392,7 +749,7 @@ public class SKMV {
     /**
      * Handle Case 2: Lock Active (Section IV-A, Step 2, Case 2)
      */
-    private void updateWithLock(Bucket bucket, long h_y, long currentTime) {
+    private void updateWithLock(Bucket bucket, long h_y, long timestamp, long currentTime) {
         Entry headEntry = bucket.entries[bucket.head];
         
         if (h_y < headEntry.h) {
@@ -401,11 +758,11 @@ public class SKMV {
             if (outdatedIndex != -1) {
                 // Update outdated entry
                 bucket.entries[outdatedIndex].h = h_y;
-                bucket.entries[outdatedIndex].t.record(currentTime);  // Use AT record method
+                bucket.entries[outdatedIndex].t.record(timestamp);  // Use AT record method
             } else {
                 // All entries up-to-date, overwrite head
                 bucket.entries[bucket.head].h = h_y;
-                bucket.entries[bucket.head].t.record(currentTime);  // Use AT record method
+                bucket.entries[bucket.head].t.record(timestamp);  // Use AT record method
                 updateHead(bucket, currentTime);
                 // Reset lock
                 bucket.lock = 0;
@@ -499,23 +856,39 @@ public class SKMV {
         }
         
         T = currentTime;  // Update global time
-        Bucket bucket = C[bucketIndex];
+        if (cleanBucket(C[bucketIndex], currentTime)) {
+            markDirty(bucketIndex);
+        }
+    }
+    
+    /**
+     * Clean outdated entries of a bucket at the given time
+     * 
+     * @return Whether any entry, the head or the lock state changed
+     */
+    private boolean cleanBucket(Bucket bucket, long currentTime) {
+        boolean changed = false;
+        int head = bucket.head;
         
         // Clean all entries using AT clean method
         for (int j = 0; j < k; j++) {
-            bucket.entries[j].t.clean(T);
+            Entry entry = bucket.entries[j];
+            long before = entry.t.getRawValue();
+            entry.t.clean(currentTime);
             
             // If timestamp was cleaned (outdated), also clear the hash value
-            if (bucket.entries[j].t.getRawValue() == 2 * N) {
-                bucket.entries[j].h = bucket.entries[j].maxHashValue;  // Reset to max hash value (empty)
+            if (entry.t.getRawValue() == 2 * N) {
+                changed |= before != 2 * N || entry.h != entry.maxHashValue;
+                entry.h = entry.maxHashValue;  // Reset to max hash value (empty)
             }
         }
         
         // Update head pointer after cleaning
-        updateHead(bucket, T);
+        updateHead(bucket, currentTime);
         
         // Update bucket lock status
-        updateBucketStatus(bucket);
+        changed |= updateBucketStatus(bucket, currentTime);
+        return changed || bucket.head != head;
     }
     
     /**
@@ -530,28 +903,19 @@ public class SKMV {
             Bucket bucket = C[i];
             
             // Update bucket status (P2C Management)
-            updateBucketStatus(bucket);
+            if (updateBucketStatus(bucket, T)) {
+                markDirty(i);
+            }
             
-            // Collect hash values in sliding window
-            java.util.List<Long> hashValues = collectValidHashValues(bucket);
+            // Per-bucket cardinality from the hash values in sliding window
+            double n_i = bucketCardinality(bucket, T);
             
-            if (hashValues.isEmpty()) {
+            if (Double.isNaN(n_i)) {
                 effectiveM--;        // Count actual non-empty buckets for accurate estimation
 
                 continue; // Skip empty buckets
             }
             
-            // Sort hash values to find k'-th minimum
-            hashValues.sort(Long::compareTo);
-            
-            int kPrime = hashValues.size();
-            long alpha_k = hashValues.get(kPrime - 1); // k'-th minimum (largest of k' values)
-            
-            // Calculate per-bucket cardinality using KMV formula
-            // n̂_i = k' / α_k' * (hashRange) - 1
-            // Use hashRange (2^delta1 - 1) instead of Long.MAX_VALUE
-            double n_i = (double) kPrime / alpha_k * hashRange - 1;
-            
             // Add to harmonic sum
             if (n_i > 0) {
                 harmonicSum += 1.0 / n_i;
@@ -564,51 +928,420 @@ public class SKMV {
             return effectiveM / harmonicSum;
         } else {
             return 0.0;
+        }
+    }
+    
+    /**
+     * Query method for the cardinality of a single flow
+     * Reads only the flow's bucket(s), so it costs O(k) per bucket regardless of m
+     * 
+     * @param flowLabel The flow identifier
+     * @return Estimated number of distinct elements of the flow in sliding window (0 if none)
+     */
+    public double estimateFlowCardinality(long flowLabel) {
+        double estimate = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < flowBuckets; j++) {
+            int b = H(flowLabel, j);
+            Bucket bucket = C[b];
+            if (updateBucketStatus(bucket, T)) {
+                markDirty(b);
             }
-            }
-
+            double n_i = bucketCardinality(bucket, T);
+            // Other flows sharing a bucket only add to its estimate, so keep the smallest
+            estimate = Math.min(estimate, Double.isNaN(n_i) ? 0.0 : Math.max(0.0, n_i));
+        }
+        return estimate;
+    }
+    
+    /**
+     * Query method for the cardinality of a flow given by a text key (see flowLabelOf(CharSequence))
+     * 
+     * @param flowKey The flow key
+     * @return Estimated number of distinct elements of the flow in sliding window (0 if none)
+     */
+    public double estimateFlowCardinality(CharSequence flowKey) {
+        return estimateFlowCardinality(flowLabelOf(flowKey));
+    }
+    
+    /**
+     * Batched query method for per-flow cardinalities
+     * 
+     * @param flowLabels The flow identifiers
+     * @return Estimated cardinality of each flow, in the same order
+     */
+    public double[] estimateFlowCardinality(long[] flowLabels) {
+        double[] estimates = new double[flowLabels.length];
+        estimateFlowCardinality(flowLabels, estimates);
+        return estimates;
+    }
+    
+    /**
+     * Batched query method for per-flow cardinalities into a caller-supplied array
+     * 
+     * @param flowLabels The flow identifiers
+     * @param estimates Receives the estimated cardinality of each flow (at least flowLabels.length long)
+     */
+    public void estimateFlowCardinality(long[] flowLabels, double[] estimates) {
+        if (estimates.length < flowLabels.length) {
+            throw new IllegalArgumentException(
+                String.format("Output array has %d slots for %d flows", estimates.length, flowLabels.length));
+        }
+        for (int i = 0; i < flowLabels.length; i++) {
+            estimates[i] = estimateFlowCardinality(flowLabels[i]);
+        }
+    }
+    
+    /**
+     * Recover the actual timestamp of an AT value relative to the current time
+     * An unset AT is treated as having expired exactly one window ago
+     * 
+     * @param at The adjusted timestamp to recover
+     * @param currentTime Current global time
+     * @return Actual timestamp in (currentTime - 2N, currentTime]
+     */
+    private long getActualTimestamp(AdjustedTimestamp at, long currentTime) {
+        long vAT = at.getRawValue();
+        if (vAT == 2 * N) {
+            return currentTime - N;
+        }
+        return currentTime - (currentTime + 2 * N - vAT) % (2 * N);
     }
     
     /**
      * Update bucket status for querying
+     * 
+     * @return Whether the lock state changed
      */
-    private void updateBucketStatus(Bucket bucket) {
+    private boolean updateBucketStatus(Bucket bucket, long currentTime) {
+        boolean changed = false;
+        
         // Check Lock Timeout (using AT lookup)
-        if (bucket.lock == 1 && !bucket.lock_time.lookup(T)) {
+        if (bucket.lock == 1 && !bucket.lock_time.lookup(currentTime)) {
             bucket.lock = 0;
+            changed = true;
         }
         
         // Check Head Outdate (Lock Activation)
         if (bucket.lock == 0) {
             Entry headEntry = bucket.entries[bucket.head];
-            if (!headEntry.t.lookup(T)) {  // Use AT lookup method
+            if (!headEntry.t.lookup(currentTime)) {  // Use AT lookup method
                 bucket.lock = 1;
-                bucket.lock_time.record(T);  // Record lock time using AT
+                bucket.lock_time.record(currentTime);  // Record lock time using AT
                 bucket.lock_maxV = bucket.maxHashValue;  // Reset to max hash value
+                changed = true;
             }
         }
+        return changed;
     }
     
     /**
-     * Collect valid hash values for cardinality estimation
+     * Per-bucket cardinality for estimation, in a single pass over the entries without allocation
+     * k' counts the valid hash values and the k'-th minimum is the largest of them, so no sort is needed
+     * 
+     * @return n̂_i = k' / α_k' * (hashRange) - 1, or NaN if the bucket holds no valid hash value
      */
-    private java.util.List<Long> collectValidHashValues(Bucket bucket) {
-        java.util.List<Long> hashValues = new java.util.ArrayList<>();
+    private double bucketCardinality(Bucket bucket, long currentTime) {
+        int kPrime = 0;
+        long alpha_k = -1;  // k'-th minimum (largest of k' values)
         
         for (int i = 0; i < k; i++) {
             Entry entry = bucket.entries[i];
             
             // Check if entry is in sliding window using AT lookup
-            if (entry.h != entry.maxHashValue && entry.t.lookup(T)) {
+            if (entry.h != entry.maxHashValue && entry.t.lookup(currentTime)) {
                 // Special case: If lock=1, exclude head entry
                 if (bucket.lock == 1 && i == bucket.head) {
                     continue;
                 }
-                hashValues.add(entry.h);
+                kPrime++;
+                if (entry.h > alpha_k) {
+                    alpha_k = entry.h;
+                }
             }
         }
         
-        return hashValues;
+        if (kPrime == 0) {
+            return Double.NaN;
+        }
+        // Use hashRange (2^delta1 - 1) instead of Long.MAX_VALUE
+        return (double) kPrime / alpha_k * hashRange - 1;
+    }
+    
+    /**
+     * Merge another sketch into this one, so this sketch summarizes the union of both streams
+     * 
+     * Per bucket, the result holds the k smallest distinct hash values in the window of either sketch,
+     * each with its newest timestamp, evaluated at the later of the two current times; lock state is
+     * reconciled as described for unionBuckets. Both sketches must have the same parameters and seeds.
+     * 
+     * @param other Sketch to merge in (left unchanged)
+     * @throws IllegalArgumentException if the sketches are not compatible
+     */
+    public void merge(SKMV other) {
+        unionOf(new SKMV[] {this, other}, 2);
+    }
+    
+    /**
+     * Merge several sketches into this one in a single pass over the buckets
+     * 
+     * @param others Sketches to merge in (left unchanged)
+     * @throws IllegalArgumentException if any sketch is not compatible with this one
+     */
+    public void merge(SKMV... others) {
+        SKMV[] sources = new SKMV[others.length + 1];
+        sources[0] = this;
+        System.arraycopy(others, 0, sources, 1, others.length);
+        unionOf(sources, sources.length);
+    }
+    
+    /**
+     * Replace this sketch's state with the union of the given sketches, evaluated at their latest time
+     * This sketch may be one of the sources. Large sketches are merged in chunks of buckets on the
+     * common fork-join pool, each chunk with its own scratch space.
+     * 
+     * @param sources Sketches with the same parameters and seeds as this one
+     * @param count Number of sources to use from the array
+     */
+    void unionOf(SKMV[] sources, int count) {
+        long time = Long.MIN_VALUE;
+        for (int s = 0; s < count; s++) {
+            checkMergeable(sources[s]);
+            time = Math.max(time, sources[s].T);
+        }
+        if (count == 0) {
+            return;
+        }
+        long currentTime = time;
+        if (m >= 2 * MERGE_CHUNK && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            IntStream.range(0, (m + MERGE_CHUNK - 1) / MERGE_CHUNK).parallel().forEach(chunk ->
+                unionBuckets(sources, count, chunk * MERGE_CHUNK, Math.min(m, (chunk + 1) * MERGE_CHUNK),
+                    currentTime, new long[k], new long[k]));
+        } else {
+            unionBuckets(sources, count, 0, m, currentTime, new long[k], new long[k]);
+        }
+        T = currentTime;
+    }
+    
+    private void checkMergeable(SKMV other) {
+        if (other.N != N || other.k != k || other.m != m || other.delta1 != delta1
+                || other.delta2 != delta2 || other.flowBuckets != flowBuckets) {
+            throw new IllegalArgumentException(
+                String.format("Cannot merge sketch (N=%d, k=%d, m=%d, delta1=%d, delta2=%d, flowBuckets=%d) "
+                    + "into (N=%d, k=%d, m=%d, delta1=%d, delta2=%d, flowBuckets=%d)",
+                    other.N, other.k, other.m, other.delta1, other.delta2, other.flowBuckets,
+                    N, k, m, delta1, delta2, flowBuckets));
+        }
+        if (other.hashStrategy.id() != hashStrategy.id()) {
+            throw new IllegalArgumentException(
+                String.format("Cannot merge sketch with hash strategy %d into one with %d",
+                    other.hashStrategy.id(), hashStrategy.id()));
+        }
+        if (other.bucketSeed != bucketSeed || other.elementSeed != elementSeed) {
+            throw new IllegalArgumentException(
+                String.format("Cannot merge sketch with hash seeds (0x%x, 0x%x) into one with (0x%x, 0x%x)",
+                    other.bucketSeed, other.elementSeed, bucketSeed, elementSeed));
+        }
+    }
+    
+    /**
+     * Replace buckets [from, to) with the union of the same buckets of the sources at currentTime
+     * 
+     * A bucket of the union holds the k smallest distinct hash values that are in the window in any
+     * source, each with its newest timestamp, so the union of complete k-minimum sets is the k-minimum
+     * set of the combined stream. Each source's P2C status is evaluated at currentTime as a query would,
+     * without writing it back. Lock state is reconciled conservatively: if any source is locked and the
+     * union holds fewer than k values, the union is locked with the latest lock time and the smallest
+     * lock_maxV of the locked sources, and its head points at an empty entry as after a lock activation;
+     * a full union is unlocked with the head on its largest value, as after Subcase 2a. A locked source's
+     * head, refilled in place by Subcase 2a, holds a value that its queries skip, so the union skips it too.
+     * 
+     * @param hashes Scratch space of k values
+     * @param times Scratch space of k values
+     */
+    void unionBuckets(SKMV[] sources, int count, int from, int to, long currentTime, long[] hashes, long[] times) {
+        for (int i = from; i < to; i++) {
+            int n = 0;
+            boolean locked = false;
+            long lockTime = Long.MIN_VALUE;
+            long lockMaxV = hashRange;
+            for (int s = 0; s < count; s++) {
+                Bucket source = sources[s].C[i];
+                
+                // P2C status at currentTime (see updateBucketStatus)
+                int lock = source.lock;
+                long sourceLockTime = getActualTimestamp(source.lock_time, currentTime);
+                long sourceMaxV = source.lock_maxV;
+                if (lock == 1 && !source.lock_time.lookup(currentTime)) {
+                    lock = 0;
+                }
+                if (lock == 0 && !source.entries[source.head].t.lookup(currentTime)) {
+                    lock = 1;
+                    sourceLockTime = currentTime;
+                    sourceMaxV = hashRange;
+                }
+                if (lock == 1) {
+                    locked = true;
+                    lockTime = Math.max(lockTime, sourceLockTime);
+                    lockMaxV = Math.min(lockMaxV, sourceMaxV);
+                }
+                
+                for (int j = 0; j < k; j++) {
+                    Entry entry = source.entries[j];
+                    if (lock == 1 && j == source.head) {
+                        continue;  // As in bucketCardinality
+                    }
+                    if (entry.h != entry.maxHashValue && entry.t.lookup(currentTime)) {
+                        n = insertSmallest(hashes, times, n, entry.h, getActualTimestamp(entry.t, currentTime));
+                    }
+                }
+            }
+            
+            // Sources are fully read, so the target may be one of them
+            Bucket bucket = C[i];
+            for (int j = 0; j < k; j++) {
+                Entry entry = bucket.entries[j];
+                if (j < n) {
+                    entry.h = hashes[j];
+                    entry.t.record(times[j]);
+                } else {
+                    entry.h = entry.maxHashValue;
+                    entry.t.clear();
+                }
+            }
+            if (locked && n < k) {
+                bucket.lock = 1;
+                bucket.lock_time.record(lockTime);
+                bucket.lock_maxV = lockMaxV;
+                bucket.head = n;
+            } else {
+                bucket.lock = 0;
+                bucket.lock_time.clear();
+                bucket.lock_maxV = hashRange;
+                bucket.head = Math.max(0, n - 1);  // Values are sorted, so the last is the largest
+            }
+            markDirty(i);  // Parallel chunks are multiples of 64 buckets, so they never share a word
+        }
+    }
+    
+    /**
+     * Add a hash value to the ascending list of the n smallest distinct values seen, keeping at most k
+     * A value already listed keeps the newer of the two timestamps
+     * 
+     * @return New list length
+     */
+    private int insertSmallest(long[] hashes, long[] times, int n, long hash, long time) {
+        if (n == k && hash > hashes[k - 1]) {
+            return n;  // Common case once the list is full
+        }
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (hashes[mid] < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo < n && hashes[lo] == hash) {
+            times[lo] = Math.max(times[lo], time);
+            return n;
+        }
+        if (n == k) {
+            n--;  // Drop the largest
+        }
+        System.arraycopy(hashes, lo, hashes, lo + 1, n - lo);
+        System.arraycopy(times, lo, times, lo + 1, n - lo);
+        hashes[lo] = hash;
+        times[lo] = time;
+        return n + 1;
+    }
+    
+    /**
+     * Flag a bucket for the next delta
+     */
+    void markDirty(int bucketIndex) {
+        dirty[bucketIndex >>> 6] |= 1L << bucketIndex;
+    }
+    
+    /**
+     * @return Whether the bucket may have changed since the last delta
+     */
+    public boolean isDirty(int bucketIndex) {
+        return (dirty[bucketIndex >>> 6] & (1L << bucketIndex)) != 0;
+    }
+    
+    /**
+     * @return Number of buckets that may have changed since the last delta
+     */
+    public int getDirtyBucketCount() {
+        int count = 0;
+        for (long word : dirty) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+    
+    /**
+     * @return Dirty bitmap, 64 buckets per word (read by SKMVCodec)
+     */
+    long[] dirtyWords() {
+        return dirty;
+    }
+    
+    /**
+     * Start the next delta: clear the dirty bitmap and move to the given sequence number
+     */
+    void resetDirty(long sequence) {
+        java.util.Arrays.fill(dirty, 0);
+        deltaSequence = sequence;
+    }
+    
+    /**
+     * Move to the given sequence number without touching the dirty bitmap (replicas, after a
+     * snapshot or delta was applied)
+     */
+    void setDeltaSequence(long sequence) {
+        deltaSequence = sequence;
+    }
+    
+    // Per-bucket operations at an explicit time, for callers that serialize access to each bucket
+    // themselves and keep their own clock (see ConcurrentSKMV); they never read or write T.
+    // They do not mark buckets dirty: bucket locks of different stripes would race on bitmap words.
+    
+    int bucketOf(long flowLabel) {
+        return H(flowLabel);
+    }
+    
+    long elementHash(long elementID) {
+        return h(elementID);
+    }
+    
+    /**
+     * Record an item with its own timestamp, evaluating the window at currentTime (less than N ahead of it)
+     */
+    void recordInBucket(int bucketIndex, long h_y, long timestamp, long currentTime) {
+        updateBucket(C[bucketIndex], h_y, timestamp, currentTime);
+    }
+    
+    void cleanBucketAt(int bucketIndex, long currentTime) {
+        cleanBucket(C[bucketIndex], currentTime);
+    }
+    
+    /**
+     * @return n̂_i of the bucket after its P2C status update, or NaN if it holds no valid hash value
+     */
+    double bucketEstimateAt(int bucketIndex, long currentTime) {
+        Bucket bucket = C[bucketIndex];
+        updateBucketStatus(bucket, currentTime);
+        return bucketCardinality(bucket, currentTime);
+    }
+    
+    /**
+     * Restore the current global time, as read back by SKMVCodec
+     */
+    void setCurrentTime(long currentTime) {
+        T = currentTime;
     }
     
     // Getter methods for debugging and analysis
@@ -620,5 +1353,10 @@ public class SKMV {
     public int getDelta2() { return delta2; }
     public long getHashRange() { return hashRange; }
     public long getTimestampRange() { return timestampRange; }
+    public int getFlowBuckets() { return flowBuckets; }
+    public HashStrategy getHashStrategy() { return hashStrategy; }
+    public long getBucketSeed() { return bucketSeed; }
+    public int getElementSeed() { return elementSeed; }
+    public long getDeltaSequence() { return deltaSequence; }
     public Bucket getBucket(int index) { return C[index]; }
 }
\ No newline at end of file
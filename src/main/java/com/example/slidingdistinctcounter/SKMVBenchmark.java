@@ -0,0 +1,1295 @@
+package com.example.slidingdistinctcounter;
+
+import java.util.Random;
+
+/**
+ * Throughput benchmarks for the SKMV implementations
+ * Runs on synthetic streams so results do not depend on the CAIDA traces being available
+ */
+public class SKMVBenchmark {
+
+    /**
+     * Synthetic stream held as parallel primitive arrays
+     */
+    public static class Stream {
+        public final long[] flowLabels;
+        public final long[] elementIDs;
+        public final long[] timestamps;
+
+        public Stream(int size) {
+            this.flowLabels = new long[size];
+            this.elementIDs = new long[size];
+            this.timestamps = new long[size];
+        }
+
+        public int size() { return flowLabels.length; }
+    }
+
+    /**
+     * Generate a uniform stream: flows and elements drawn uniformly, time advancing at a fixed rate
+     *
+     * @param size Number of items
+     * @param flows Number of distinct flow labels
+     * @param elements Number of distinct element IDs
+     * @param itemsPerTimeUnit Items arriving per time unit
+     * @param seed Random seed for reproducibility
+     * @return Generated stream
+     */
+    public static Stream uniformStream(int size, int flows, int elements, int itemsPerTimeUnit, long seed) {
+        Stream stream = new Stream(size);
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            stream.flowLabels[i] = random.nextInt(flows);
+            stream.elementIDs[i] = random.nextInt(elements);
+            stream.timestamps[i] = i / itemsPerTimeUnit;
+        }
+        return stream;
+    }
+
+    /**
+     * Generate a skewed, CAIDA-like stream: flow sizes and element popularity both follow a Zipf law,
+     * so a few heavy flows carry most packets and most packets repeat recently seen sources
+     *
+     * @param size Number of items
+     * @param flows Number of distinct flow labels
+     * @param elements Number of distinct element IDs
+     * @param exponent Zipf exponent (around 1.0 for backbone traces)
+     * @param itemsPerTimeUnit Items arriving per time unit
+     * @param seed Random seed for reproducibility
+     * @return Generated stream
+     */
+    public static Stream skewedStream(int size, int flows, int elements, double exponent,
+                                      int itemsPerTimeUnit, long seed) {
+        Stream stream = new Stream(size);
+        Random random = new Random(seed);
+        double[] flowCdf = zipfCdf(flows, exponent);
+        double[] elementCdf = zipfCdf(elements, exponent);
+        for (int i = 0; i < size; i++) {
+            int flow = sample(flowCdf, random);
+            // Mix the flow into the element so each flow sees its own popular sources
+            stream.flowLabels[i] = flow;
+            stream.elementIDs[i] = (long) flow * elements + sample(elementCdf, random);
+            stream.timestamps[i] = i / itemsPerTimeUnit;
+        }
+        return stream;
+    }
+
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, Random random) {
+        int index = java.util.Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    /**
+     * Feed a stream into a packed sketch, cleaning every N time units as Main does
+     *
+     * @return Elapsed time in nanoseconds
+     */
+    static long run(PackedSKMV sketch, Stream stream) {
+        long lastCleanTime = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < stream.size(); i++) {
+            long timestamp = stream.timestamps[i];
+            if (timestamp - lastCleanTime >= sketch.getWindowSize()) {
+                sketch.periodicClean(timestamp);
+                lastCleanTime = timestamp;
+            }
+            sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double throughput(int items, long nanos) {
+        return items / (nanos / 1e9);
+    }
+
+    /**
+     * Compare rescan head maintenance against the head tree for k = 4..256
+     */
+    public static void benchmarkHeadMaintenance(Stream stream, long N, int m) {
+        System.out.println("\nHead maintenance: rescan vs tree (m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        System.out.println(String.format("%6s %16s %16s %8s", "k", "rescan items/s", "tree items/s", "speedup"));
+        for (int k = 4; k <= 256; k *= 2) {
+            double rescan = 0;
+            double tree = 0;
+            for (int round = 0; round < 3; round++) {  // First rounds warm up the JIT, keep the best
+                PackedSKMV plain = new PackedSKMV(N, k, m, 32, 16);
+                rescan = Math.max(rescan, throughput(stream.size(), run(plain, stream)));
+
+                PackedSKMV indexed = new PackedSKMV(N, k, m, 32, 16);
+                indexed.enableHeadTree();
+                tree = Math.max(tree, throughput(stream.size(), run(indexed, stream)));
+            }
+            System.out.println(String.format("%6d %16.0f %16.0f %8.2f", k, rescan, tree, tree / rescan));
+        }
+    }
+
+    /**
+     * Compare the plain Case 0 duplicate scan against the fingerprint filter for k = 4..256
+     */
+    public static void benchmarkFingerprintFilter(Stream stream, long N, int m) {
+        System.out.println("\nDuplicate check: scan vs fingerprint filter (m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        System.out.println(String.format("%6s %16s %16s %8s", "k", "scan items/s", "filter items/s", "speedup"));
+        for (int k = 4; k <= 256; k *= 2) {
+            double scan = 0;
+            double filtered = 0;
+            for (int round = 0; round < 3; round++) {
+                PackedSKMV plain = new PackedSKMV(N, k, m, 32, 16);
+                scan = Math.max(scan, throughput(stream.size(), run(plain, stream)));
+
+                PackedSKMV withFilter = new PackedSKMV(N, k, m, 32, 16);
+                withFilter.enableFingerprintFilter();
+                filtered = Math.max(filtered, throughput(stream.size(), run(withFilter, stream)));
+            }
+            System.out.println(String.format("%6d %16.0f %16.0f %8.2f", k, scan, filtered, filtered / scan));
+        }
+    }
+
+    /**
+     * Compare recordItem with and without the fast-reject threshold array
+     */
+    public static void benchmarkFastReject(Stream stream, long N, int k, int m) {
+        System.out.println("\nFast reject (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        double plainRate = 0;
+        double rejectRate = 0;
+        double plainEstimate = 0;
+        double rejectEstimate = 0;
+        for (int round = 0; round < 3; round++) {
+            PackedSKMV plain = new PackedSKMV(N, k, m, 32, 16);
+            plainRate = Math.max(plainRate, throughput(stream.size(), run(plain, stream)));
+            plainEstimate = plain.estimateCardinality();
+
+            PackedSKMV rejecting = new PackedSKMV(N, k, m, 32, 16);
+            rejecting.enableFastReject();
+            rejectRate = Math.max(rejectRate, throughput(stream.size(), run(rejecting, stream)));
+            rejectEstimate = rejecting.estimateCardinality();
+        }
+        System.out.println(String.format("  plain:       %12.0f items/s, estimate %.4f", plainRate, plainEstimate));
+        System.out.println(String.format("  fast reject: %12.0f items/s, estimate %.4f (speedup %.2f)",
+            rejectRate, rejectEstimate, rejectRate / plainRate));
+    }
+
+    /**
+     * Feed a stream into a packed sketch as {@link #run} does, timing every step
+     *
+     * @return {elapsed nanoseconds, longest single step, 99.9th percentile step} (periodic clean included)
+     */
+    static long[] runTimed(PackedSKMV sketch, Stream stream) {
+        long lastCleanTime = 0;
+        long longestStep = 0;
+        long[] steps = new long[stream.size()];
+        long start = System.nanoTime();
+        long stepStart = start;
+        for (int i = 0; i < stream.size(); i++) {
+            long timestamp = stream.timestamps[i];
+            if (timestamp - lastCleanTime >= sketch.getWindowSize()) {
+                sketch.periodicClean(timestamp);
+                lastCleanTime = timestamp;
+            }
+            sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+            long now = System.nanoTime();
+            steps[i] = now - stepStart;
+            longestStep = Math.max(longestStep, steps[i]);
+            stepStart = now;
+        }
+        long elapsed = System.nanoTime() - start;
+        java.util.Arrays.sort(steps);
+        return new long[] {elapsed, longestStep, steps.length == 0 ? 0 : steps[(int) (steps.length * 0.999)]};
+    }
+
+    /**
+     * Compare the eager periodicClean sweep against lazy expiry: throughput and the longest ingest pause
+     */
+    public static void benchmarkLazyExpiry(Stream stream, long N, int k, int m) {
+        System.out.println("\nExpiry: eager sweep vs lazy (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        double eagerRate = 0;
+        double lazyRate = 0;
+        long eagerPause = Long.MAX_VALUE;
+        long lazyPause = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long[] eager = runTimed(new PackedSKMV(N, k, m, 32, 16), stream);
+            eagerRate = Math.max(eagerRate, throughput(stream.size(), eager[0]));
+            eagerPause = Math.min(eagerPause, eager[1]);
+
+            PackedSKMV lazySketch = new PackedSKMV(N, k, m, 32, 16);
+            lazySketch.enableLazyExpiry();
+            long[] lazy = runTimed(lazySketch, stream);
+            lazyRate = Math.max(lazyRate, throughput(stream.size(), lazy[0]));
+            lazyPause = Math.min(lazyPause, lazy[1]);
+        }
+        System.out.println(String.format("  eager: %12.0f items/s, longest step %8.1f us", eagerRate, eagerPause / 1e3));
+        System.out.println(String.format("  lazy:  %12.0f items/s, longest step %8.1f us (speedup %.2f)",
+            lazyRate, lazyPause / 1e3, lazyRate / eagerRate));
+    }
+
+    /**
+     * Compare the periodicClean sweep against incremental sweeping: throughput and step latency tail
+     */
+    public static void benchmarkIncrementalSweep(Stream stream, long N, int k, int m) {
+        System.out.println("\nCleaning: full sweep vs incremental (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        System.out.println(String.format("%-22s %14s %12s %12s %10s", "mode", "items/s", "p99.9 us", "max us", "estimate"));
+        int[] bucketsPerItem = {-1, 0, 1};  // -1: periodicClean sweep
+        for (int perItem : bucketsPerItem) {
+            double rate = 0;
+            long p999 = Long.MAX_VALUE;
+            long longest = Long.MAX_VALUE;
+            double estimate = 0;
+            for (int round = 0; round < 3; round++) {
+                PackedSKMV sketch = new PackedSKMV(N, k, m, 32, 16);
+                if (perItem >= 0) {
+                    sketch.enableIncrementalSweep(perItem, N);
+                }
+                long[] timed = runTimed(sketch, stream);
+                rate = Math.max(rate, throughput(stream.size(), timed[0]));
+                longest = Math.min(longest, timed[1]);
+                p999 = Math.min(p999, timed[2]);
+                estimate = sketch.estimateCardinality();
+            }
+            String mode = perItem < 0 ? "full sweep" : "incremental, " + perItem + "/item";
+            System.out.println(String.format("%-22s %14.0f %12.2f %12.1f %10.2f", mode, rate, p999 / 1e3, longest / 1e3, estimate));
+        }
+    }
+
+    /**
+     * Compare inline periodicClean against a background cleaner thread: ingest throughput and longest step
+     */
+    public static void benchmarkBackgroundCleaner(Stream stream, long N, int k, int m) {
+        System.out.println("\nCleaning: inline vs background thread (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        double inlineRate = 0;
+        double backgroundRate = 0;
+        long inlinePause = Long.MAX_VALUE;
+        long backgroundPause = Long.MAX_VALUE;
+        long passes = 0;
+        double cleaningMillis = 0;
+        for (int round = 0; round < 3; round++) {
+            long[] inline = runTimed(new PackedSKMV(N, k, m, 32, 16), stream);
+            inlineRate = Math.max(inlineRate, throughput(stream.size(), inline[0]));
+            inlinePause = Math.min(inlinePause, inline[1]);
+
+            try (BackgroundCleaner cleaner = new BackgroundCleaner(new PackedSKMV(N, k, m, 32, 16), N, 64, 1)) {
+                cleaner.start();
+                long longestStep = 0;
+                long start = System.nanoTime();
+                long stepStart = start;
+                for (int i = 0; i < stream.size(); i++) {
+                    cleaner.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                    long now = System.nanoTime();
+                    longestStep = Math.max(longestStep, now - stepStart);
+                    stepStart = now;
+                }
+                backgroundRate = Math.max(backgroundRate, throughput(stream.size(), System.nanoTime() - start));
+                backgroundPause = Math.min(backgroundPause, longestStep);
+                passes = cleaner.getPasses();
+                cleaningMillis = cleaner.getCleaningNanos() / 1e6;
+            }
+        }
+        System.out.println(String.format("  inline:     %12.0f items/s, longest step %8.1f us", inlineRate, inlinePause / 1e3));
+        System.out.println(String.format("  background: %12.0f items/s, longest step %8.1f us (speedup %.2f, %d passes, %.1f ms cleaning)",
+            backgroundRate, backgroundPause / 1e3, backgroundRate / inlineRate, passes, cleaningMillis));
+    }
+
+    /**
+     * Compare the full periodicClean sweep against the expiry index, cleaning every cleanInterval time units
+     */
+    public static void benchmarkExpiryIndex(Stream stream, long N, int k, int m, long cleanInterval) {
+        System.out.println("\nExpiry index (k=" + k + ", m=" + m + ", N=" + N + ", clean every " + cleanInterval
+            + ", items=" + stream.size() + ")");
+        double sweepRate = 0;
+        double indexRate = 0;
+        double sweepEstimate = 0;
+        double indexEstimate = 0;
+        for (int round = 0; round < 3; round++) {
+            PackedSKMV sweeping = new PackedSKMV(N, k, m, 32, 16);
+            sweepRate = Math.max(sweepRate, throughput(stream.size(), runCleaningEvery(sweeping, stream, cleanInterval)));
+            sweepEstimate = sweeping.estimateCardinality();
+
+            PackedSKMV indexed = new PackedSKMV(N, k, m, 32, 16);
+            indexed.enableExpiryIndex(1024);
+            indexRate = Math.max(indexRate, throughput(stream.size(), runCleaningEvery(indexed, stream, cleanInterval)));
+            indexEstimate = indexed.estimateCardinality();
+        }
+        System.out.println(String.format("  full sweep:   %12.0f items/s, estimate %.4f", sweepRate, sweepEstimate));
+        System.out.println(String.format("  expiry index: %12.0f items/s, estimate %.4f (speedup %.2f)",
+            indexRate, indexEstimate, indexRate / sweepRate));
+    }
+
+    /**
+     * Compare full and incremental estimateCardinality when polling every queryInterval items during ingest
+     */
+    public static void benchmarkIncrementalEstimate(Stream stream, long N, int k, int m, int queryInterval) {
+        System.out.println("\nEstimate while polling every " + queryInterval + " items (k=" + k + ", m=" + m + ", N=" + N
+            + ", items=" + stream.size() + ")");
+        double fullRate = 0;
+        double incrementalRate = 0;
+        for (int round = 0; round < 3; round++) {
+            PackedSKMV full = new PackedSKMV(N, k, m, 32, 16);
+            fullRate = Math.max(fullRate, throughput(stream.size(), runPolling(full, stream, queryInterval)));
+
+            PackedSKMV incremental = new PackedSKMV(N, k, m, 32, 16);
+            incremental.enableIncrementalEstimate(1000);
+            incrementalRate = Math.max(incrementalRate, throughput(stream.size(), runPolling(incremental, stream, queryInterval)));
+        }
+
+        System.out.println(String.format("  full:        %12.0f items/s", fullRate));
+        System.out.println(String.format("  incremental: %12.0f items/s (speedup %.2f)",
+            incrementalRate, incrementalRate / fullRate));
+    }
+
+    /**
+     * Feed a stream into a packed sketch as {@link #run} does, querying every queryInterval items
+     *
+     * @return Elapsed time in nanoseconds
+     */
+    private static long runPolling(PackedSKMV sketch, Stream stream, int queryInterval) {
+        long lastCleanTime = 0;
+        double sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < stream.size(); i++) {
+            long timestamp = stream.timestamps[i];
+            if (timestamp - lastCleanTime >= sketch.getWindowSize()) {
+                sketch.periodicClean(timestamp);
+                lastCleanTime = timestamp;
+            }
+            sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+            if (i % queryInterval == 0) {
+                sink += sketch.estimateCardinality();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink < 0) {
+            System.out.println(sink);  // Keep the queries from being optimized away
+        }
+        return elapsed;
+    }
+
+    /**
+     * Measure time and heap bytes allocated per estimateCardinality call for SKMV and PackedSKMV
+     * Allocation is read from the HotSpot per-thread allocation counter (what a GC profiler reports)
+     */
+    public static void benchmarkQueryAllocation(Stream stream, long N, int k, int m) {
+        System.out.println("\nQuery cost (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        SKMV objects = new SKMV(N, k, m, 32, 16);
+        for (int i = 0; i < stream.size(); i++) {
+            objects.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+        }
+        PackedSKMV packed = new PackedSKMV(N, k, m, 32, 16);
+        run(packed, stream);
+
+        int queries = 50;
+        double sink = 0;
+        for (int round = 0; round < 2; round++) {  // First round warms up the JIT
+            long[] skmv = measureQueries(objects::estimateCardinality, queries);
+            long[] packedCost = measureQueries(packed::estimateCardinality, queries);
+            if (round == 1) {
+                System.out.println(String.format("  SKMV:       %10.1f us/query, %8d bytes/query", skmv[0] / 1e3, skmv[1]));
+                System.out.println(String.format("  PackedSKMV: %10.1f us/query, %8d bytes/query", packedCost[0] / 1e3, packedCost[1]));
+            }
+            sink += objects.estimateCardinality() + packed.estimateCardinality();
+        }
+        if (sink < 0) {
+            System.out.println(sink);
+        }
+    }
+
+    /**
+     * Record string and binary keys directly against converting IP strings to long labels first
+     *
+     * Keys are derived from the stream: destination (flow) and source (element) IPv4 strings as
+     * DataProcessor reads them, and the same values as 16-byte IPv6-mapped keys in a heap array and in
+     * a direct buffer. The conversion baseline splits and parses the dotted quads as preprocessing does.
+     * Allocation is read from the per-thread allocation counter, as in benchmarkQueryAllocation.
+     */
+    public static void benchmarkKeyHashing(Stream stream, long N, int k, int m, int items) {
+        System.out.println("\nKey hashing (k=" + k + ", m=" + m + ", N=" + N + ", items=" + items + ")");
+        String[] flowKeys = new String[items];
+        String[] elementKeys = new String[items];
+        byte[] binaryKeys = new byte[items * 32];
+        java.nio.ByteBuffer directKeys = java.nio.ByteBuffer.allocateDirect(items * 32);
+        for (int i = 0; i < items; i++) {
+            int dst = (int) stream.flowLabels[i];
+            int src = (int) stream.elementIDs[i];
+            flowKeys[i] = (dst >>> 24) + "." + (dst >>> 16 & 0xFF) + "." + (dst >>> 8 & 0xFF) + "." + (dst & 0xFF);
+            elementKeys[i] = (src >>> 24) + "." + (src >>> 16 & 0xFF) + "." + (src >>> 8 & 0xFF) + "." + (src & 0xFF);
+            for (int half = 0; half < 2; half++) {
+                int base = i * 32 + half * 16;
+                binaryKeys[base + 10] = (byte) 0xFF;  // ::ffff:a.b.c.d
+                binaryKeys[base + 11] = (byte) 0xFF;
+                int address = half == 0 ? dst : src;
+                for (int b = 0; b < 4; b++) {
+                    binaryKeys[base + 12 + b] = (byte) (address >>> (24 - 8 * b));
+                }
+            }
+        }
+        directKeys.put(binaryKeys).clear();
+        java.nio.ByteBuffer flowSlice = directKeys.duplicate();
+        java.nio.ByteBuffer elementSlice = directKeys.duplicate();
+
+        String[] names = {"parse to long", "CharSequence", "byte[]", "direct ByteBuffer"};
+        SKMV[] sketches = new SKMV[names.length];
+        long[][] best = new long[names.length][];
+        for (int round = 0; round < 4; round++) {  // First round warms up the JIT
+            for (int path = 0; path < names.length; path++) {
+                SKMV sketch = new SKMV(N, k, m, 32, 16);
+                int p = path;
+                long[] cost = measureQueries(() -> {
+                    long lastCleanTime = 0;
+                    for (int i = 0; i < items; i++) {
+                        long timestamp = stream.timestamps[i];
+                        if (timestamp - lastCleanTime >= N / 2) {
+                            sketch.periodicClean(timestamp);
+                            lastCleanTime = timestamp;
+                        }
+                        if (p == 0) {
+                            sketch.recordItem(parseIPv4(flowKeys[i]), parseIPv4(elementKeys[i]), timestamp);
+                        } else if (p == 1) {
+                            sketch.recordItem(flowKeys[i], elementKeys[i], timestamp);
+                        } else if (p == 2) {
+                            sketch.recordItem(binaryKeys, i * 32, 16, binaryKeys, i * 32 + 16, 16, timestamp);
+                        } else {
+                            flowSlice.limit(i * 32 + 16).position(i * 32);
+                            elementSlice.limit(i * 32 + 32).position(i * 32 + 16);
+                            sketch.recordItem(flowSlice, elementSlice, timestamp);
+                        }
+                    }
+                    return 0;
+                }, 1);
+                if (round > 0 && (best[path] == null || cost[0] < best[path][0])) {
+                    best[path] = cost;
+                }
+                sketches[path] = sketch;
+            }
+        }
+        for (int path = 0; path < names.length; path++) {
+            System.out.println(String.format("  %-17s %7.1f ns/item, %7.1f bytes/item, estimate %.1f", names[path],
+                (double) best[path][0] / items, (double) best[path][1] / items, sketches[path].estimateCardinality()));
+        }
+    }
+
+    /**
+     * Dotted-quad IPv4 address as a long, the way string keys are usually turned into labels
+     */
+    private static long parseIPv4(String address) {
+        String[] parts = address.split("\\.");
+        long value = 0;
+        for (String part : parts) {
+            value = value << 8 | Integer.parseInt(part);
+        }
+        return value;
+    }
+
+    /**
+     * @return {nanoseconds per query, bytes allocated per query (-1 if the JVM cannot tell)}
+     */
+    private static long[] measureQueries(java.util.function.DoubleSupplier query, int queries) {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) threads : null;
+        long thread = Thread.currentThread().getId();
+        long bytesBefore = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        double sink = 0;
+        for (int i = 0; i < queries; i++) {
+            sink += query.getAsDouble();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytesAfter = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread);
+        if (sink < 0) {
+            System.out.println(sink);
+        }
+        return new long[] {elapsed / queries, allocations == null ? -1 : (bytesAfter - bytesBefore) / queries};
+    }
+
+    /**
+     * Compare per-flow estimates against exact per-flow distinct counts, for 1, 2 and 4 buckets per flow
+     * Reports error over flows with at least minCardinality distinct elements in the final window
+     */
+    public static void benchmarkFlowQueries(Stream stream, long N, int k, int m, int minCardinality) {
+        System.out.println("\nPer-flow queries (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        // Exact answer: latest timestamp of every (flow, element) pair
+        java.util.Map<Long, java.util.Map<Long, Long>> lastSeen = new java.util.HashMap<>();
+        for (int i = 0; i < stream.size(); i++) {
+            lastSeen.computeIfAbsent(stream.flowLabels[i], flow -> new java.util.HashMap<>())
+                .put(stream.elementIDs[i], stream.timestamps[i]);
+        }
+        long now = stream.timestamps[stream.size() - 1];
+        long[] flows = new long[lastSeen.size()];
+        double[] exact = new double[flows.length];
+        int f = 0;
+        for (java.util.Map.Entry<Long, java.util.Map<Long, Long>> flow : lastSeen.entrySet()) {
+            flows[f] = flow.getKey();
+            for (long timestamp : flow.getValue().values()) {
+                if (now - timestamp < N) {
+                    exact[f]++;
+                }
+            }
+            f++;
+        }
+
+        for (int flowBuckets = 1; flowBuckets <= 4; flowBuckets *= 2) {
+            SKMV sketch = new SKMV(N, k, m, 32, 16, flowBuckets);
+            long lastCleanTime = 0;
+            for (int i = 0; i < stream.size(); i++) {
+                long timestamp = stream.timestamps[i];
+                if (timestamp - lastCleanTime >= N / 2) {
+                    sketch.periodicClean(timestamp);
+                    lastCleanTime = timestamp;
+                }
+                sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+            }
+            double[] estimates = new double[flows.length];
+            long start = System.nanoTime();
+            sketch.estimateFlowCardinality(flows, estimates);
+            long elapsed = System.nanoTime() - start;
+
+            double error = 0;
+            double bias = 0;
+            int counted = 0;
+            for (int i = 0; i < flows.length; i++) {
+                if (exact[i] >= minCardinality) {
+                    error += Math.abs(estimates[i] - exact[i]) / exact[i];
+                    bias += (estimates[i] - exact[i]) / exact[i];
+                    counted++;
+                }
+            }
+            System.out.println(String.format("  %d bucket(s)/flow: mean rel. error %.3f, bias %+.3f over %d flows, %.0f ns/flow",
+                flowBuckets, error / counted, bias / counted, counted, (double) elapsed / flows.length));
+        }
+    }
+
+    /**
+     * Compare item-at-a-time recording against recordBatch on SKMV
+     * Both clean between batches once N/2 time units have passed (equivalence is checked in SKMVBatchTest)
+     */
+    public static void benchmarkBatchIngest(Stream stream, long N, int k, int m, int batchSize) {
+        System.out.println("\nBatch ingest (k=" + k + ", m=" + m + ", N=" + N + ", batch=" + batchSize
+            + ", items=" + stream.size() + ")");
+        long bestSingle = Long.MAX_VALUE;
+        long bestBatch = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            SKMV single = new SKMV(N, k, m, 32, 16);
+            bestSingle = Math.min(bestSingle, runSkmv(single, stream, N / 2, batchSize, false));
+            SKMV batched = new SKMV(N, k, m, 32, 16);
+            bestBatch = Math.min(bestBatch, runSkmv(batched, stream, N / 2, batchSize, true));
+        }
+        System.out.println(String.format("  recordItem:  %12.0f items/s", throughput(stream.size(), bestSingle)));
+        System.out.println(String.format("  recordBatch: %12.0f items/s (%.2fx)",
+            throughput(stream.size(), bestBatch), (double) bestSingle / bestBatch));
+    }
+
+    /**
+     * Compare the built-in hash strategies: raw H() and h() cost, uniformity and end-to-end ingest
+     *
+     * Uniformity is a chi-square test of m bins with m - 1 degrees of freedom, reported as the
+     * standardized statistic z = (X^2 - df) / sqrt(2 df), which stays within a few units of 0 for a
+     * uniform hash. Flow labels are the consecutive integers 0..64m-1 (like consecutive addresses),
+     * the worst case for weak mixing; element hashes are masked to delta1 = 32 bits and binned by
+     * their high bits, as the k-minimum values are.
+     */
+    public static void benchmarkHashStrategies(Stream stream, long N, int k, int m) {
+        System.out.println("\nHash strategies (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size() + ")");
+        HashStrategy[] strategies = {HashStrategy.FNV_MURMUR, HashStrategy.FNV_MURMUR_FASTRANGE,
+            HashStrategy.WYHASH, HashStrategy.XXH3};
+        String[] names = {"FNV-1a/Murmur3 modulo", "FNV-1a/Murmur3 fastrange", "wyhash-style", "XXH3-style"};
+        long sink = 0;
+        for (int s = 0; s < strategies.length; s++) {
+            HashStrategy strategy = strategies[s];
+            long bestBucket = Long.MAX_VALUE;
+            long bestElement = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < stream.size(); i++) {
+                    sink += strategy.bucketIndex(strategy.flowHash(stream.flowLabels[i], SKMV.DEFAULT_BUCKET_SEED), m);
+                }
+                long middle = System.nanoTime();
+                for (int i = 0; i < stream.size(); i++) {
+                    sink += strategy.elementHash(stream.elementIDs[i], SKMV.DEFAULT_ELEMENT_SEED) & 0xFFFFFFFFL;
+                }
+                long end = System.nanoTime();
+                bestBucket = Math.min(bestBucket, middle - start);
+                bestElement = Math.min(bestElement, end - middle);
+            }
+
+            long[] flowBins = new long[m];
+            long[] elementBins = new long[m];
+            long keys = 64L * m;
+            for (long key = 0; key < keys; key++) {
+                flowBins[strategy.bucketIndex(strategy.flowHash(key, SKMV.DEFAULT_BUCKET_SEED), m)]++;
+                long h = strategy.elementHash(key, SKMV.DEFAULT_ELEMENT_SEED) & 0xFFFFFFFFL;
+                elementBins[(int) ((h * m) >>> 32)]++;
+            }
+
+            long bestIngest = Long.MAX_VALUE;
+            double estimate = 0;
+            for (int round = 0; round < 3; round++) {
+                SKMV sketch = new SKMV(N, k, m, 32, 16, 1, strategy, SKMV.DEFAULT_BUCKET_SEED,
+                    SKMV.DEFAULT_ELEMENT_SEED);
+                bestIngest = Math.min(bestIngest, runSkmv(sketch, stream, N / 2, 4096, false));
+                estimate = sketch.estimateCardinality();
+            }
+            System.out.println(String.format("  %-24s H() %5.2f ns, h() %5.2f ns, chi-square z: buckets %+6.2f, "
+                    + "hashes %+6.2f, ingest %10.0f items/s, estimate %.1f", names[s],
+                (double) bestBucket / stream.size(), (double) bestElement / stream.size(), chiSquareZ(flowBins),
+                chiSquareZ(elementBins), throughput(stream.size(), bestIngest), estimate));
+        }
+        if (sink == 42) {
+            System.out.println("  (checksum " + sink + ")");  // Keeps the hash loops from being optimized away
+        }
+    }
+
+    /**
+     * @return Standardized chi-square statistic of bin counts against a uniform distribution
+     */
+    private static double chiSquareZ(long[] bins) {
+        long total = 0;
+        for (long count : bins) {
+            total += count;
+        }
+        double expected = (double) total / bins.length;
+        double chiSquare = 0;
+        for (long count : bins) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        int df = bins.length - 1;
+        return (chiSquare - df) / Math.sqrt(2.0 * df);
+    }
+
+    /**
+     * Feed an SKMV in batches, through recordBatch or one recordItem call per item, cleaning between batches
+     *
+     * @return Elapsed time in nanoseconds
+     */
+    private static long runSkmv(SKMV sketch, Stream stream, long cleanInterval, int batchSize, boolean batched) {
+        long lastCleanTime = 0;
+        long start = System.nanoTime();
+        for (int offset = 0; offset < stream.size(); offset += batchSize) {
+            int length = Math.min(batchSize, stream.size() - offset);
+            long timestamp = stream.timestamps[offset];
+            if (timestamp - lastCleanTime >= cleanInterval) {
+                sketch.periodicClean(timestamp);
+                lastCleanTime = timestamp;
+            }
+            if (batched) {
+                sketch.recordBatch(stream.flowLabels, stream.elementIDs, stream.timestamps, offset, length);
+            } else {
+                for (int i = offset; i < offset + length; i++) {
+                    sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Compare recordItem against pipelined recordBatch on PackedSKMV for sketches of 16 KB up to maxBytes
+     * Items are fed in batches of 4096 without cleaning, so the timing isolates the bucket accesses
+     */
+    public static void benchmarkPrefetch(Stream stream, long N, int k, long maxBytes) {
+        long bytesPerBucket = 16L * k + 21;  // ArraySKMVStorage: hash and AT per entry, lock fields per bucket
+        System.out.println("\nPipelined ingest (k=" + k + ", N=" + N + ", items=" + stream.size() + ")");
+        System.out.println(String.format("%10s %10s %16s %16s %16s %8s",
+            "size", "m", "item items/s", "group 8 items/s", "group 32 items/s", "best"));
+        for (long bytes = 16L << 10; bytes <= maxBytes; bytes <<= 2) {
+            int m = (int) Math.max(1, bytes / bytesPerBucket);
+            long single = Long.MAX_VALUE;
+            long near = Long.MAX_VALUE;
+            long far = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                single = Math.min(single, runBatches(new PackedSKMV(N, k, m, 32, 16), stream, 0));
+                near = Math.min(near, runBatches(new PackedSKMV(N, k, m, 32, 16), stream, 8));
+                far = Math.min(far, runBatches(new PackedSKMV(N, k, m, 32, 16), stream, 32));
+            }
+            String size = bytes >= 1L << 30 ? (bytes >> 30) + " GB" : bytes >= 1L << 20 ? (bytes >> 20) + " MB" : (bytes >> 10) + " KB";
+            System.out.println(String.format("%10s %10d %16.0f %16.0f %16.0f %7.2fx", size, m,
+                throughput(stream.size(), single), throughput(stream.size(), near),
+                throughput(stream.size(), far), (double) single / Math.min(near, far)));
+        }
+    }
+
+    /**
+     * Feed a packed sketch in batches of 4096 items (prefetch distance 0 is plain recordItem)
+     *
+     * @return Elapsed time in nanoseconds
+     */
+    private static long runBatches(PackedSKMV sketch, Stream stream, int prefetchDistance) {
+        long start = System.nanoTime();
+        for (int offset = 0; offset < stream.size(); offset += 4096) {
+            int length = Math.min(4096, stream.size() - offset);
+            sketch.recordBatch(stream.flowLabels, stream.elementIDs, stream.timestamps, offset, length, prefetchDistance);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Scale ConcurrentSKMV from 1 to maxThreads writer threads, item i going to thread i % threads
+     * Thread 0 also cleans every N/2 time units; each count is timed alone and with a reader thread
+     * querying throughout the run, and the estimate is taken from a run without the reader
+     */
+    public static void benchmarkConcurrentScaling(Stream stream, long N, int k, int m, int stripes, int maxThreads)
+            throws InterruptedException {
+        System.out.println("\nConcurrent ingest (k=" + k + ", m=" + m + ", N=" + N + ", stripes=" + stripes
+            + ", items=" + stream.size() + ", CPUs=" + Runtime.getRuntime().availableProcessors() + ")");
+        long sequential = Long.MAX_VALUE;
+        SKMV reference = null;
+        for (int round = 0; round < 3; round++) {
+            reference = new SKMV(N, k, m, 32, 16);
+            sequential = Math.min(sequential, runSkmv(reference, stream, N / 2, 1, false));
+        }
+        System.out.println(String.format("  SKMV (1 thread): %12.0f items/s, estimate %.1f",
+            throughput(stream.size(), sequential), reference.estimateCardinality()));
+        System.out.println(String.format("%8s %16s %8s %16s %10s %12s",
+            "threads", "items/s", "vs SKMV", "w/ reader", "queries", "estimate"));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long best = Long.MAX_VALUE;
+            long bestWithReader = Long.MAX_VALUE;
+            long queries = 0;
+            double estimate = 0;
+            for (int round = 0; round < 3; round++) {
+                ConcurrentSKMV sketch = new ConcurrentSKMV(N, k, m, 32, 16, stripes);
+                best = Math.min(best, runConcurrent(sketch::recordItem, sketch::periodicClean,
+                    sketch::estimateCardinality, N, stream, threads, false)[0]);
+                estimate = sketch.estimateCardinality();
+                ConcurrentSKMV queried = new ConcurrentSKMV(N, k, m, 32, 16, stripes);
+                long[] result = runConcurrent(queried::recordItem, queried::periodicClean,
+                    queried::estimateCardinality, N, stream, threads, true);
+                if (result[0] < bestWithReader) {
+                    bestWithReader = result[0];
+                    queries = result[1];
+                }
+            }
+            System.out.println(String.format("%8d %16.0f %7.2fx %16.0f %10d %12.1f", threads,
+                throughput(stream.size(), best), (double) sequential / best,
+                throughput(stream.size(), bestWithReader), queries, estimate));
+        }
+    }
+
+    /**
+     * Stress LockFreeSKMV and compare it with the striped-lock ConcurrentSKMV
+     *
+     * First checks that one writer leaves exactly the bucket state of SKMV, then runs up to maxThreads
+     * writers with a concurrent reader and checks the packed state afterwards: no hash held twice in a
+     * bucket, every AT value and head index in range. Finally times both designs for 1 to maxThreads writers.
+     */
+    public static void benchmarkLockFree(Stream stream, long N, int k, int m, int maxThreads) throws InterruptedException {
+        System.out.println("\nLock-free SKMV (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size()
+            + ", CPUs=" + Runtime.getRuntime().availableProcessors() + ")");
+
+        SKMV reference = new SKMV(N, k, m, 32, 16);
+        runSkmv(reference, stream, N / 2, 1, false);
+        LockFreeSKMV single = new LockFreeSKMV(N, k, m, 32, 16);
+        runConcurrent(single::recordItem, single::periodicClean, single::estimateCardinality, N, stream, 1, false);
+        int mismatches = 0;
+        for (int b = 0; b < m; b++) {
+            SKMV.Bucket bucket = reference.getBucket(b);
+            boolean same = bucket.lock == single.getLock(b) && bucket.head == single.getHead(b)
+                && bucket.lock_time.getRawValue() == single.getLockTime(b) && bucket.lock_maxV == single.getLockMaxV(b);
+            for (int i = 0; i < k && same; i++) {
+                same = bucket.entries[i].h == single.getHash(b * k + i)
+                    && bucket.entries[i].t.getRawValue() == single.getAT(b * k + i);
+            }
+            mismatches += same ? 0 : 1;
+        }
+        System.out.println(String.format("  1 writer vs SKMV: %d of %d buckets differ, estimates %.1f / %.1f",
+            mismatches, m, single.estimateCardinality(), reference.estimateCardinality()));
+
+        LockFreeSKMV stressed = new LockFreeSKMV(N, k, m, 32, 16);
+        long[] stress = runConcurrent(stressed::recordItem, stressed::periodicClean, stressed::estimateCardinality,
+            N, stream, maxThreads, true);
+        int duplicates = 0;
+        int malformed = 0;
+        for (int b = 0; b < m; b++) {
+            malformed += stressed.getHead(b) < k && stressed.getLockTime(b) <= 2 * N ? 0 : 1;
+            java.util.Set<Long> seen = new java.util.HashSet<>();
+            for (int slot = b * k; slot < (b + 1) * k; slot++) {
+                long hash = stressed.getHash(slot);
+                malformed += stressed.getAT(slot) <= 2 * N ? 0 : 1;
+                if (hash != (1L << 32) - 1 && !seen.add(hash)) {
+                    duplicates++;
+                }
+            }
+        }
+        System.out.println(String.format("  %d writers + reader: %d duplicate hashes, %d malformed words, %d retries, "
+            + "%d queries, estimate %.1f", maxThreads, duplicates, malformed, stressed.getRetries(), stress[1],
+            stressed.estimateCardinality()));
+
+        System.out.println(String.format("%8s %16s %16s %8s", "threads", "striped items/s", "lock-free items/s", "ratio"));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long striped = Long.MAX_VALUE;
+            long lockFree = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                ConcurrentSKMV locked = new ConcurrentSKMV(N, k, m, 32, 16);
+                striped = Math.min(striped, runConcurrent(locked::recordItem, locked::periodicClean,
+                    locked::estimateCardinality, N, stream, threads, false)[0]);
+                LockFreeSKMV cas = new LockFreeSKMV(N, k, m, 32, 16);
+                lockFree = Math.min(lockFree, runConcurrent(cas::recordItem, cas::periodicClean,
+                    cas::estimateCardinality, N, stream, threads, false)[0]);
+            }
+            System.out.println(String.format("%8d %16.0f %16.0f %7.2fx", threads, throughput(stream.size(), striped),
+                throughput(stream.size(), lockFree), (double) striped / lockFree));
+        }
+    }
+
+    /**
+     * Item-recording operation of a concurrent sketch
+     */
+    private interface ItemRecorder {
+        void recordItem(long flowLabel, long elementID, long timestamp);
+    }
+
+    /**
+     * Compare ShardedSKMV with a single SKMV and with the striped-lock ConcurrentSKMV
+     *
+     * First feeds item i to shard i % shards from one thread and compares the merged estimate with a
+     * single SKMV over the whole stream and with exact k-minimum values over the last window (the value
+     * the union approaches as more shards keep more minima), then times 1 to maxThreads writers (one shard each) with and
+     * without a reader thread that merges the shards for every query.
+     */
+    public static void benchmarkShards(Stream stream, long N, int k, int m, int maxThreads) throws InterruptedException {
+        System.out.println("\nSharded SKMV (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size()
+            + ", CPUs=" + Runtime.getRuntime().availableProcessors() + ")");
+        SKMV reference = new SKMV(N, k, m, 32, 16);
+        runSkmv(reference, stream, N / 2, 1, false);
+        double expected = reference.estimateCardinality();
+        double exact = exactWindowEstimate(reference, stream, N);
+        System.out.println(String.format("%8s %12s %12s %12s %10s %12s", "shards", "SKMV", "exact KMV", "union",
+            "vs SKMV", "merge (ms)"));
+        for (int count = 1; count <= maxThreads; count *= 2) {
+            ShardedSKMV sharded = new ShardedSKMV(N, k, m, 32, 16);
+            ShardedSKMV.Shard[] shards = new ShardedSKMV.Shard[count];
+            for (int i = 0; i < count; i++) {
+                shards[i] = sharded.newShard();
+            }
+            long lastCleanTime = 0;
+            for (int i = 0; i < stream.size(); i++) {
+                long timestamp = stream.timestamps[i];
+                if (timestamp - lastCleanTime >= N / 2) {
+                    sharded.periodicClean(timestamp);
+                    lastCleanTime = timestamp;
+                }
+                shards[i % count].recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+            }
+            long start = System.nanoTime();
+            double estimate = sharded.estimateCardinality();
+            long merge = System.nanoTime() - start;
+            System.out.println(String.format("%8d %12.1f %12.1f %12.1f %9.3fx %12.2f", count, expected, exact,
+                estimate, estimate / expected, merge / 1e6));
+        }
+
+        System.out.println(String.format("%8s %16s %16s %8s %16s %10s", "threads", "striped items/s",
+            "sharded items/s", "ratio", "w/ reader", "queries"));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long striped = Long.MAX_VALUE;
+            long sharded = Long.MAX_VALUE;
+            long shardedWithReader = Long.MAX_VALUE;
+            long queries = 0;
+            for (int round = 0; round < 3; round++) {
+                ConcurrentSKMV locked = new ConcurrentSKMV(N, k, m, 32, 16);
+                striped = Math.min(striped, runConcurrent(locked::recordItem, locked::periodicClean,
+                    locked::estimateCardinality, N, stream, threads, false)[0]);
+                ShardedSKMV local = new ShardedSKMV(N, k, m, 32, 16);
+                sharded = Math.min(sharded, runConcurrent(local::recordItem, local::periodicClean,
+                    local::estimateCardinality, N, stream, threads, false)[0]);
+                ShardedSKMV queried = new ShardedSKMV(N, k, m, 32, 16);
+                long[] result = runConcurrent(queried::recordItem, queried::periodicClean,
+                    queried::estimateCardinality, N, stream, threads, true);
+                if (result[0] < shardedWithReader) {
+                    shardedWithReader = result[0];
+                    queries = result[1];
+                }
+            }
+            System.out.println(String.format("%8d %16.0f %16.0f %7.2fx %16.0f %10d", threads,
+                throughput(stream.size(), striped), throughput(stream.size(), sharded), (double) striped / sharded,
+                throughput(stream.size(), shardedWithReader), queries));
+        }
+    }
+
+    /**
+     * Merge per-collector sketches into one aggregate, n-way and as a pairwise fold
+     *
+     * Item i goes to collector i % collectors, each cleaning every N/2 time units. The aggregate's
+     * estimate is compared with a single SKMV over the whole stream and with exact k-minimum values
+     * over the last window; a sketch with different hash seeds must be rejected.
+     */
+    public static void benchmarkMerge(Stream stream, long N, int k, int m, int maxCollectors) {
+        System.out.println("\nMerge (k=" + k + ", m=" + m + ", N=" + N + ", items=" + stream.size()
+            + ", parallelism=" + java.util.concurrent.ForkJoinPool.getCommonPoolParallelism() + ")");
+        SKMV reference = new SKMV(N, k, m, 32, 16);
+        runSkmv(reference, stream, N / 2, 1, false);
+        System.out.println(String.format("  SKMV over all items: estimate %.1f, exact KMV %.1f",
+            reference.estimateCardinality(), exactWindowEstimate(reference, stream, N)));
+        try {
+            reference.merge(new SKMV(N, k, m, 32, 16, 1, SKMV.DEFAULT_BUCKET_SEED, 1));
+            System.out.println("  Merge with different seeds: NOT rejected");
+        } catch (IllegalArgumentException e) {
+            System.out.println("  Merge with different seeds: rejected");
+        }
+
+        System.out.println(String.format("%10s %14s %14s %14s %14s %12s", "collectors", "n-way (ms)", "pairwise (ms)",
+            "ns/bucket", "n-way est", "pairwise est"));
+        for (int count = 2; count <= maxCollectors; count *= 2) {
+            SKMV[] collectors = new SKMV[count];
+            long[] lastCleanTime = new long[count];
+            for (int c = 0; c < count; c++) {
+                collectors[c] = new SKMV(N, k, m, 32, 16);
+            }
+            for (int i = 0; i < stream.size(); i++) {
+                int c = i % count;
+                long timestamp = stream.timestamps[i];
+                if (timestamp - lastCleanTime[c] >= N / 2) {
+                    collectors[c].periodicClean(timestamp);
+                    lastCleanTime[c] = timestamp;
+                }
+                collectors[c].recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+            }
+
+            long nWay = Long.MAX_VALUE;
+            long pairwise = Long.MAX_VALUE;
+            SKMV all = null;
+            SKMV folded = null;
+            for (int round = 0; round < 5; round++) {
+                all = new SKMV(N, k, m, 32, 16);
+                long start = System.nanoTime();
+                all.merge(collectors);
+                nWay = Math.min(nWay, System.nanoTime() - start);
+                folded = new SKMV(N, k, m, 32, 16);
+                start = System.nanoTime();
+                for (SKMV collector : collectors) {
+                    folded.merge(collector);
+                }
+                pairwise = Math.min(pairwise, System.nanoTime() - start);
+            }
+            System.out.println(String.format("%10d %14.2f %14.2f %14.1f %14.1f %12.1f", count, nWay / 1e6,
+                pairwise / 1e6, (double) nWay / m, all.estimateCardinality(), folded.estimateCardinality()));
+        }
+    }
+
+    /**
+     * Encode and decode a sketch with SKMVCodec
+     *
+     * Compares the encoding with the fixed-layout size of the same sketch in primitive storage
+     * (DirectSKMVStorage) and times encoding into a heap buffer, decoding into a new sketch and
+     * decoding into a reused one.
+     */
+    public static void benchmarkWireFormat(Stream stream, long N, int k, int m) {
+        SKMV sketch = new SKMV(N, k, m, 32, 16);
+        runSkmv(sketch, stream, N / 2, 1, false);
+        long size = SKMVCodec.encodedSize(sketch);
+        long fixed = DirectSKMVStorage.sizeInBytes(m, k);
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate((int) size);
+        SKMV replica = new SKMV(N, k, m, 32, 16);
+        long encode = Long.MAX_VALUE;
+        long decode = Long.MAX_VALUE;
+        long decodeInto = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            buffer.clear();
+            long start = System.nanoTime();
+            SKMVCodec.write(sketch, buffer);
+            encode = Math.min(encode, System.nanoTime() - start);
+            buffer.flip();
+            start = System.nanoTime();
+            SKMVCodec.read(buffer);
+            decode = Math.min(decode, System.nanoTime() - start);
+            buffer.rewind();
+            start = System.nanoTime();
+            SKMVCodec.readInto(replica, buffer);
+            decodeInto = Math.min(decodeInto, System.nanoTime() - start);
+        }
+        System.out.println(String.format("  m=%7d: %10d bytes (%5.1f%% of %10d fixed, %5.1f B/bucket), "
+                + "encode %7.2f ms, decode %7.2f ms, into replica %7.2f ms", m, size, 100.0 * size / fixed, fixed,
+            (double) size / m, encode / 1e6, decode / 1e6, decodeInto / 1e6));
+    }
+
+    /**
+     * Keep a replica up to date with deltas and compare the bytes shipped with full snapshots
+     *
+     * The primary cleans every N/2 time units and is queried once per interval, so query-time lock
+     * transitions reach the replica too. After each interval a delta is applied to the replica.
+     */
+    public static void benchmarkDelta(Stream stream, long N, int k, int m, long interval) {
+        SKMV primary = new SKMV(N, k, m, 32, 16);
+        java.nio.ByteBuffer snapshot = java.nio.ByteBuffer.allocate((int) SKMVCodec.encodedSize(primary));
+        SKMVCodec.write(primary, snapshot);
+        snapshot.flip();
+        SKMV replica = SKMVCodec.read(snapshot);
+
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(1 << 20);
+        long deltaBytes = 0;
+        long snapshotBytes = 0;
+        long dirtyBuckets = 0;
+        long deltaTime = 0;
+        int deltas = 0;
+        long lastCleanTime = 0;
+        long lastDeltaTime = 0;
+        for (int i = 0; i <= stream.size(); i++) {
+            long timestamp = i < stream.size() ? stream.timestamps[i] : Long.MAX_VALUE;
+            if (timestamp - lastDeltaTime >= interval) {
+                primary.estimateCardinality();
+                dirtyBuckets += primary.getDirtyBucketCount();
+                snapshotBytes += SKMVCodec.encodedSize(primary);
+                long start = System.nanoTime();
+                long size = SKMVCodec.deltaSize(primary);
+                if (buffer.capacity() < size) {
+                    buffer = java.nio.ByteBuffer.allocate((int) size);
+                }
+                buffer.clear();
+                SKMVCodec.writeDelta(primary, primary.getDeltaSequence(), buffer);
+                buffer.flip();
+                SKMVCodec.applyDelta(replica, buffer);
+                deltaTime += System.nanoTime() - start;
+                deltaBytes += size;
+                deltas++;
+                lastDeltaTime = timestamp;
+            }
+            if (i == stream.size()) {
+                break;
+            }
+            if (timestamp - lastCleanTime >= N / 2) {
+                primary.periodicClean(timestamp);
+                lastCleanTime = timestamp;
+            }
+            primary.recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+        }
+        System.out.println(String.format("  m=%7d: %4d deltas, %6.2f%% buckets dirty, %10.0f B/delta vs %10.0f "
+                + "B/snapshot (%5.1f%%), %6.3f ms/delta", m, deltas, 100.0 * dirtyBuckets / deltas / m,
+            (double) deltaBytes / deltas, (double) snapshotBytes / deltas, 100.0 * deltaBytes / snapshotBytes,
+            deltaTime / 1e6 / deltas));
+    }
+
+    /**
+     * Durable ingest with group commit, then recovery from the checkpoint and log tail
+     *
+     * Ingests the first items of the stream with cleaning every N/2 time units, closes the sketch
+     * (committing the last group) and reopens the directory, timing the recovery.
+     */
+    public static void benchmarkDurability(Stream stream, long N, int k, int m, int groupCommitItems,
+                                           long checkpointInterval, int items) throws java.io.IOException {
+        java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("skmv-durable");
+        try {
+            DurableSKMV durable = DurableSKMV.open(dir, N, k, m, 32, 16, groupCommitItems, checkpointInterval);
+            long lastCleanTime = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < items; i++) {
+                long timestamp = stream.timestamps[i];
+                if (timestamp - lastCleanTime >= N / 2) {
+                    durable.periodicClean(timestamp);
+                    lastCleanTime = timestamp;
+                }
+                durable.recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+            }
+            durable.close();
+            long ingestTime = System.nanoTime() - start;
+
+            DurableSKMV recovered = DurableSKMV.open(dir, N, k, m, 32, 16, groupCommitItems, checkpointInterval);
+            System.out.println(String.format("  group=%5d, checkpoint every %5s: %9.0f items/s, %7d fsyncs, "
+                    + "%3d checkpoints, recovery %8.2f ms replaying %8d ops", groupCommitItems,
+                checkpointInterval > 0 ? String.valueOf(checkpointInterval) : "never", items / (ingestTime / 1e9),
+                durable.getCommits(), durable.getCheckpoints(), recovered.getRecoveryNanos() / 1e6,
+                recovered.getRecoveredOperations()));
+            recovered.close();
+        } finally {
+            try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.walk(dir)) {
+                files.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Harmonic mean over non-empty buckets of the KMV estimate from the exact k smallest hash values
+     * of each bucket's items in the last window of the stream, using the sketch's hash functions
+     */
+    private static double exactWindowEstimate(SKMV sketch, Stream stream, long N) {
+        long currentTime = stream.timestamps[stream.size() - 1];
+        java.util.Map<Integer, java.util.TreeSet<Long>> buckets = new java.util.HashMap<>();
+        for (int i = 0; i < stream.size(); i++) {
+            if (stream.timestamps[i] > currentTime - N) {
+                buckets.computeIfAbsent(sketch.bucketOf(stream.flowLabels[i]), b -> new java.util.TreeSet<>())
+                    .add(sketch.elementHash(stream.elementIDs[i]));
+            }
+        }
+        double hashRange = (double) ((1L << sketch.getDelta1()) - 1);
+        double harmonicSum = 0.0;
+        for (java.util.TreeSet<Long> hashes : buckets.values()) {
+            int kPrime = Math.min(sketch.getK(), hashes.size());
+            long alpha = hashes.stream().skip(kPrime - 1).findFirst().get();
+            harmonicSum += 1.0 / ((double) kPrime / alpha * hashRange - 1);
+        }
+        return buckets.size() / harmonicSum;
+    }
+
+    /**
+     * @return {elapsed nanoseconds, estimateCardinality calls completed by the reader meanwhile}
+     */
+    private static long[] runConcurrent(ItemRecorder sketch, java.util.function.LongConsumer clean,
+                                        java.util.function.DoubleSupplier query, long N, Stream stream,
+                                        int threads, boolean withReader) throws InterruptedException {
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+        long[] queries = new long[1];
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                query.getAsDouble();
+                queries[0]++;
+            }
+        });
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            writers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long lastCleanTime = 0;
+                for (int i = first; i < stream.size(); i += threads) {
+                    long timestamp = stream.timestamps[i];
+                    if (first == 0 && timestamp - lastCleanTime >= N / 2) {
+                        clean.accept(timestamp);
+                        lastCleanTime = timestamp;
+                    }
+                    sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+                }
+            });
+            writers[t].start();
+        }
+        if (withReader) {
+            reader.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        done.set(true);
+        if (withReader) {
+            reader.join();
+        }
+        return new long[] {elapsed, queries[0]};
+    }
+
+    private static long runCleaningEvery(PackedSKMV sketch, Stream stream, long cleanInterval) {
+        long lastCleanTime = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < stream.size(); i++) {
+            long timestamp = stream.timestamps[i];
+            if (timestamp - lastCleanTime >= cleanInterval) {
+                sketch.periodicClean(timestamp);
+                lastCleanTime = timestamp;
+            }
+            sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], timestamp);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Main entry point
+     */
+    public static void main(String[] args) throws InterruptedException, java.io.IOException {
+        System.out.println("SKMV Benchmarks");
+        System.out.println("=".repeat(80));
+
+        Stream uniform = uniformStream(2_000_000, 1024, 1 << 24, 2000, 42);
+        benchmarkHeadMaintenance(uniform, 100, 256);
+        benchmarkFingerprintFilter(uniform, 100, 256);
+
+        // Well-filled buckets (the intended regime) and a sparse sketch where most buckets have room
+        Stream skewed = skewedStream(2_000_000, 1000, 1 << 20, 1.1, 2000, 7);
+        Stream sparse = skewedStream(2_000_000, 100_000, 1 << 16, 1.0, 2000, 7);
+        for (int k = 16; k <= 64; k *= 2) {
+            benchmarkFastReject(skewed, 100, k, 256);
+            benchmarkFastReject(sparse, 100, k, 4096);
+        }
+
+        // Large sketches, where the full sweep stalls ingest for O(m * k)
+        for (int m = 1 << 12; m <= 1 << 18; m <<= 3) {
+            benchmarkLazyExpiry(uniform, 100, 16, m);
+            benchmarkIncrementalSweep(uniform, 100, 16, m);
+            benchmarkBackgroundCleaner(uniform, 100, 16, m);
+        }
+
+        // Large sketches where only the buckets of 1024 flows change
+        for (int m = 1 << 12; m <= 1 << 18; m <<= 3) {
+            benchmarkExpiryIndex(uniform, 100, 16, m, 10);
+        }
+
+        // Query cost on a sketch filled by many flows
+        Stream manyFlows = uniformStream(2_000_000, 200_000, 1 << 24, 2000, 42);
+        for (int m = 1 << 12; m <= 1 << 18; m <<= 3) {
+            benchmarkQueryAllocation(manyFlows, 100, 16, m);
+        }
+
+        // Dashboard-style polling, once per time unit
+        for (int m = 1 << 12; m <= 1 << 18; m <<= 3) {
+            benchmarkIncrementalEstimate(uniform, 100, 16, m, 2000);
+        }
+
+        // Per-flow answers where many small flows share buckets with heavy ones
+        Stream perFlow = skewedStream(400_000, 20_000, 1 << 12, 1.0, 200, 7);
+        benchmarkFlowQueries(perFlow, 1000, 16, 4096, 20);
+
+        // Hash functions alone and inside the sketch, from cache-resident to large sketches
+        for (int m = 1 << 12; m <= 1 << 18; m <<= 6) {
+            benchmarkHashStrategies(uniform, 100, 16, m);
+        }
+
+        // String and binary flow keys without a conversion step
+        benchmarkKeyHashing(uniform, 100, 16, 1 << 12, 500_000);
+
+        // Collector-style batches of 4K and 64K items
+        Stream manyFlowsBatch = uniformStream(2_000_000, 1 << 20, 1 << 24, 2000, 42);
+        for (int m = 1 << 12; m <= 1 << 18; m <<= 3) {
+            benchmarkBatchIngest(manyFlowsBatch, 100, 16, m, 4096);
+            benchmarkBatchIngest(manyFlowsBatch, 100, 16, m, 65536);
+        }
+
+        // Sketches from L1-resident to far beyond the last-level cache (1 GB needs -Xmx2g or more)
+        Stream randomFlows = uniformStream(2_000_000, Integer.MAX_VALUE, 1 << 24, 2000, 42);
+        long maxBytes = Runtime.getRuntime().maxMemory() > (2L << 30) ? 1L << 30 : 256L << 20;
+        benchmarkPrefetch(randomFlows, 100, 16, maxBytes);
+
+        // Writer threads sharing one sketch
+        benchmarkConcurrentScaling(uniform, 100, 16, 1 << 15, 64, 32);
+        benchmarkLockFree(uniform, 100, 16, 1 << 15, 32);
+        benchmarkShards(uniform, 100, 16, 1 << 12, 32);  // Each shard is a full sketch
+
+        // Network-wide view from per-router collectors
+        for (int m = 1 << 12; m <= 1 << 16; m <<= 2) {
+            benchmarkMerge(uniform, 100, 16, m, 16);
+        }
+
+        // Snapshots of sketches from well filled to mostly empty
+        System.out.println("\nWire format (k=16, N=100)");
+        for (int m = 1 << 12; m <= 1 << 18; m <<= 3) {
+            benchmarkWireFormat(uniform, 100, 16, m);
+        }
+
+        // Replication once per time unit from a sketch where only the buckets of 1024 flows change
+        System.out.println("\nDelta replication (k=16, N=100, one delta per time unit)");
+        for (int m = 1 << 12; m <= 1 << 18; m <<= 3) {
+            benchmarkDelta(uniform, 100, 16, m, 1);
+        }
+
+        // Group commit trades fsyncs for the window of unacknowledged items
+        System.out.println("\nDurability (k=16, N=100, m=4096)");
+        for (int group = 1; group <= 4096; group <<= 4) {
+            benchmarkDurability(uniform, 100, 16, 1 << 12, group, 0, Math.min(group * 500, 1_000_000));
+        }
+        // Recovery replays at most one checkpoint interval of the stream
+        for (long interval = 100; interval <= 400; interval <<= 1) {
+            benchmarkDurability(uniform, 100, 16, 1 << 12, 4096, interval, 1_000_000);
+        }
+        benchmarkDurability(uniform, 100, 16, 1 << 12, 4096, 0, 1_000_000);
+    }
+}
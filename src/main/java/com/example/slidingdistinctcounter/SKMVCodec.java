@@ -0,0 +1,611 @@
+package com.example.slidingdistinctcounter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compact, versioned binary encoding of the full {@link SKMV} state for shipping sketches between nodes
+ *
+ * The encoding is little-endian, like {@link MappedSKMVStorage}. A fixed header carries the parameters,
+ * hash seeds and current time T; each bucket follows as a flags byte and only the fields that differ
+ * from a fresh bucket. Hash values and lock_maxV take ceil(delta1 / 8) bytes, adjusted timestamps
+ * ceil(delta2 / 8) bytes, counts and indices are unsigned LEB128 varints. Entries that are empty
+ * (h == maxHashValue with an unset timestamp) are elided; the others are written with the gap to the
+ * previous written slot, so a decoded bucket has every entry in the slot it was in.
+ *
+ * Header layout (byte offset: field):
+ * 0: magic "SKMV", 4: format version, 5: delta1, 6: delta2, 7: hash strategy id, 8: N, 16: k, 20: m,
+ * 24: flowBuckets, 28: element seed, 32: bucket seed, 40: T, 48: delta sequence, 56: first bucket
+ * (version 1 had no delta sequence and its buckets start at 48; it is still read, as sequence 0;
+ * versions 1 and 2 had 0 at offset 7, the id of the original hash functions)
+ *
+ * Bucket layout: flags (bit 0 lock, bit 1 head != 0, bit 2 lock_time set, bit 3 lock_maxV below the
+ * maximum, bit 4 has entries), then head, lock_time, lock_maxV and the entry list if flagged.
+ *
+ * A delta carries only the buckets flagged in the sketch's dirty bitmap since the previous delta, in
+ * the same bucket layout, each preceded by the varint gap to the previous bucket index. Its header
+ * (0: magic "SKMD", 4: format version, 5 to 39: the parameters, hash strategy id and seeds at the offsets
+ * of the full header, 40: base sequence, 48: new sequence, 56: T, 64: bucket count) names the sequence a
+ * replica must be at to apply it, and a replica rejects deltas made with other parameters just as
+ * {@link #readInto} rejects such encodings (version 1 deltas carried only k and m and are no longer
+ * accepted). A replica starts from a full
+ * encoding, which records the sequence it was taken at; the next delta then also rewrites every
+ * bucket that changed between the previous delta and the snapshot, which is harmless since buckets
+ * are replaced whole.
+ *
+ * Writing reads the bucket fields straight into the buffer and reading decodes straight from it into
+ * the sketch, both without intermediate objects; {@link #readInto} reuses an existing sketch, so a
+ * replica can be refreshed without allocating. Decoded hash values and lock_maxV must lie within the
+ * sketch's hash range and timestamps within 2N. Readers validate the whole encoding or delta in a first
+ * pass before storing anything, so a malformed or truncated one leaves the target sketch unchanged.
+ *
+ * @author Research Implementation
+ */
+public final class SKMVCodec {
+
+    public static final int MAGIC = 0x534B4D56;      // "SKMV"
+    public static final int FORMAT_VERSION = 3;
+    public static final int HEADER_BYTES = 56;
+    public static final int DELTA_MAGIC = 0x534B4D44; // "SKMD"
+    public static final int DELTA_FORMAT_VERSION = 2;
+    public static final int DELTA_HEADER_BYTES = 68;
+
+    private static final int FLAG_LOCK = 1;
+    private static final int FLAG_HEAD = 1 << 1;
+    private static final int FLAG_LOCK_TIME = 1 << 2;
+    private static final int FLAG_LOCK_MAX_V = 1 << 3;
+    private static final int FLAG_ENTRIES = 1 << 4;
+
+    private static final int CHANNEL_CHUNK_BYTES = 64 * 1024;
+    private static final ThreadLocal<ByteBuffer> CHANNEL_CHUNK =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHANNEL_CHUNK_BYTES));
+
+    private SKMVCodec() {
+    }
+
+    /**
+     * @return Exact number of bytes {@link #write(SKMV, ByteBuffer)} produces for the sketch's current state
+     */
+    public static long encodedSize(SKMV sketch) {
+        long size = HEADER_BYTES;
+        for (int b = 0; b < sketch.getM(); b++) {
+            size += bucketSize(sketch, sketch.getBucket(b));
+        }
+        return size;
+    }
+
+    /**
+     * Encode the sketch at the buffer's position, advancing it past the encoding
+     *
+     * @throws java.nio.BufferOverflowException If the buffer has less than encodedSize(sketch) bytes left
+     */
+    public static void write(SKMV sketch, ByteBuffer buffer) {
+        ByteBuffer out = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(sketch, out);
+        for (int b = 0; b < sketch.getM(); b++) {
+            writeBucket(sketch, sketch.getBucket(b), out);
+        }
+        buffer.position(out.position());
+    }
+
+    /**
+     * Encode the sketch to a channel through a chunk buffer cached per thread
+     *
+     * @return Number of bytes written
+     * @throws IOException If the channel fails
+     */
+    public static long write(SKMV sketch, WritableByteChannel channel) throws IOException {
+        ByteBuffer chunk = CHANNEL_CHUNK.get();
+        int needed = minChunkBytes(sketch);
+        if (chunk.capacity() < needed) {
+            chunk = ByteBuffer.allocateDirect(needed);
+            CHANNEL_CHUNK.set(chunk);
+        }
+        return write(sketch, channel, chunk);
+    }
+
+    /**
+     * Encode the sketch to a channel through a caller-supplied chunk buffer
+     * The buffer's whole capacity is used as scratch space; its position, limit and order are left unchanged.
+     *
+     * @param chunk Buffer of at least minChunkBytes(sketch) bytes, heap or direct
+     * @return Number of bytes written
+     * @throws IllegalArgumentException If the buffer is smaller than minChunkBytes(sketch)
+     * @throws IOException If the channel fails
+     */
+    public static long write(SKMV sketch, WritableByteChannel channel, ByteBuffer chunk) throws IOException {
+        if (chunk.capacity() < minChunkBytes(sketch)) {
+            throw new IllegalArgumentException(String.format("Chunk buffer of %d bytes is smaller than the %d bytes "
+                + "the largest bucket of this sketch can take", chunk.capacity(), minChunkBytes(sketch)));
+        }
+        int maxBucketBytes = maxBucketBytes(sketch);
+        ByteBuffer out = chunk.duplicate().clear().order(ByteOrder.LITTLE_ENDIAN);
+        long written = 0;
+        writeHeader(sketch, out);
+        for (int b = 0; b < sketch.getM(); b++) {
+            if (out.remaining() < maxBucketBytes) {
+                written += drain(out, channel);
+            }
+            writeBucket(sketch, sketch.getBucket(b), out);
+        }
+        return written + drain(out, channel);
+    }
+
+    /**
+     * @return Smallest chunk buffer {@link #write(SKMV, WritableByteChannel, ByteBuffer)} accepts for the sketch
+     */
+    public static int minChunkBytes(SKMV sketch) {
+        return Math.max(HEADER_BYTES, maxBucketBytes(sketch));
+    }
+
+    private static int maxBucketBytes(SKMV sketch) {
+        return 1 + 3 * 5 + timeBytes(sketch) + hashBytes(sketch)
+            + sketch.getK() * (5 + hashBytes(sketch) + timeBytes(sketch));
+    }
+
+    /**
+     * Decode a sketch at the buffer's position into a new SKMV, advancing the buffer past the encoding
+     * Sketches with a custom hash strategy can only be decoded with {@link #readInto}.
+     *
+     * @throws IllegalArgumentException If the buffer does not hold a valid encoding of this format version,
+     *         or its hash strategy is not built in
+     * @throws java.nio.BufferUnderflowException If the encoding is truncated
+     */
+    public static SKMV read(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        checkFormat(in);
+        int delta1 = in.get(in.position() + 5);
+        int delta2 = in.get(in.position() + 6);
+        long N = in.getLong(in.position() + 8);
+        int k = in.getInt(in.position() + 16);
+        int m = in.getInt(in.position() + 20);
+        int flowBuckets = in.getInt(in.position() + 24);
+        int elementSeed = in.getInt(in.position() + 28);
+        long bucketSeed = in.getLong(in.position() + 32);
+        HashStrategy hashStrategy = HashStrategy.forId(in.get(in.position() + 7) & 0xFF);
+        SKMV sketch = new SKMV(N, k, m, delta1, delta2, flowBuckets, hashStrategy, bucketSeed, elementSeed);
+        readBuckets(sketch, in);
+        buffer.position(in.position());
+        return sketch;
+    }
+
+    /**
+     * Decode a sketch at the buffer's position into an existing sketch with the same parameters, hash
+     * strategy and seeds, replacing its whole state and advancing the buffer past the encoding
+     *
+     * @throws IllegalArgumentException If the encoding is invalid or was made with other parameters,
+     *         hash strategy or seeds
+     * @throws java.nio.BufferUnderflowException If the encoding is truncated
+     */
+    public static void readInto(SKMV sketch, ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        checkFormat(in);
+        checkParameters(sketch, in, "Encoded sketch");
+        readBuckets(sketch, in);
+        buffer.position(in.position());
+    }
+
+    /**
+     * @return Exact number of bytes {@link #writeDelta} produces for the sketch's current dirty buckets
+     */
+    public static long deltaSize(SKMV sketch) {
+        long size = DELTA_HEADER_BYTES;
+        int previous = -1;
+        for (int b = nextDirty(sketch, 0); b >= 0; b = nextDirty(sketch, b + 1)) {
+            size += varintSize(b - previous - 1) + bucketSize(sketch, sketch.getBucket(b));
+            previous = b;
+        }
+        return size;
+    }
+
+    /**
+     * Encode the buckets changed since the given sequence number at the buffer's position, then clear
+     * the dirty bitmap and advance the sketch to the next sequence number
+     *
+     * The sketch only tracks changes since its latest delta, so sinceSequence must be its current
+     * sequence; a replica that fell further behind needs a full encoding instead.
+     *
+     * @param sinceSequence Sequence number the delta starts from (sketch.getDeltaSequence())
+     * @return Sequence number after the delta
+     * @throws IllegalArgumentException If the sketch is not at sinceSequence
+     * @throws java.nio.BufferOverflowException If the buffer has less than deltaSize(sketch) bytes left
+     */
+    public static long writeDelta(SKMV sketch, long sinceSequence, ByteBuffer buffer) {
+        if (sinceSequence != sketch.getDeltaSequence()) {
+            throw new IllegalArgumentException(String.format(
+                "Delta since sequence %d requested, but the sketch only tracks changes since %d",
+                sinceSequence, sketch.getDeltaSequence()));
+        }
+        int strategyId = strategyId(sketch);  // Before anything is written
+        ByteBuffer out = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = out.position();
+        out.putInt(DELTA_MAGIC);
+        out.put((byte) DELTA_FORMAT_VERSION);
+        putParameters(sketch, strategyId, out);
+        out.putLong(sinceSequence);
+        out.putLong(sinceSequence + 1);
+        out.putLong(sketch.getCurrentTime());
+        out.putInt(0);  // Bucket count, filled in below
+        int count = 0;
+        int previous = -1;
+        for (int b = nextDirty(sketch, 0); b >= 0; b = nextDirty(sketch, b + 1)) {
+            putVarint(out, b - previous - 1);
+            writeBucket(sketch, sketch.getBucket(b), out);
+            previous = b;
+            count++;
+        }
+        out.putInt(base + 64, count);
+        buffer.position(out.position());
+        sketch.resetDirty(sinceSequence + 1);
+        return sinceSequence + 1;
+    }
+
+    /**
+     * Apply a delta at the buffer's position to a replica, advancing the buffer past it
+     *
+     * @return Sequence number of the replica after the delta
+     * @throws IllegalArgumentException If the buffer does not hold a valid delta, or it was made with other
+     *         parameters, hash strategy or seeds
+     * @throws IllegalStateException If the delta starts from another sequence than the replica's
+     */
+    public static long applyDelta(SKMV replica, ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = in.position();
+        if (in.getInt(base) != DELTA_MAGIC) {
+            throw new IllegalArgumentException("Not an SKMV delta");
+        }
+        if (in.get(base + 4) != DELTA_FORMAT_VERSION) {
+            throw new IllegalArgumentException(String.format("Unsupported SKMV delta version %d (expected %d)",
+                in.get(base + 4), DELTA_FORMAT_VERSION));
+        }
+        checkParameters(replica, in, "Delta");
+        long from = in.getLong(base + 40);
+        if (from != replica.getDeltaSequence()) {
+            throw new IllegalStateException(String.format(
+                "Delta from sequence %d cannot apply to a replica at sequence %d", from, replica.getDeltaSequence()));
+        }
+        long to = in.getLong(base + 48);
+        long currentTime = in.getLong(base + 56);
+        int count = checkRange(in.getInt(base + 64), replica.getM() + 1, "bucket count");
+        in.position(base + DELTA_HEADER_BYTES);
+        readDeltaBuckets(replica, count, in.duplicate().order(ByteOrder.LITTLE_ENDIAN), false);
+        readDeltaBuckets(replica, count, in, true);
+        replica.setCurrentTime(currentTime);
+        replica.setDeltaSequence(to);
+        buffer.position(in.position());
+        return to;
+    }
+
+    /**
+     * @return First dirty bucket at or after the index, or -1 if none
+     */
+    private static int nextDirty(SKMV sketch, int from) {
+        long[] words = sketch.dirtyWords();
+        int w = from >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    private static void checkFormat(ByteBuffer in) {
+        int base = in.position();
+        if (in.getInt(base) != MAGIC) {
+            throw new IllegalArgumentException("Not an SKMV encoding");
+        }
+        int version = in.get(base + 4);
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IllegalArgumentException(String.format("Unsupported SKMV format version %d (expected 1 to %d)",
+                version, FORMAT_VERSION));
+        }
+    }
+
+    /**
+     * @return The sketch's hash strategy id, checked to fit the header's unsigned byte
+     */
+    private static int strategyId(SKMV sketch) {
+        int id = sketch.getHashStrategy().id();
+        if (id < 0 || id > 255) {
+            throw new IllegalArgumentException(String.format("Hash strategy id must be in [0, 255], got %d", id));
+        }
+        return id;
+    }
+
+    /**
+     * Check that the parameters, hash strategy and seeds at offsets 5 to 39 of a full or delta header
+     * at the buffer's position are the sketch's
+     */
+    private static void checkParameters(SKMV sketch, ByteBuffer in, String encoding) {
+        int base = in.position();
+        if (in.get(base + 5) != sketch.getDelta1() || in.get(base + 6) != sketch.getDelta2()
+                || in.getLong(base + 8) != sketch.getWindowSize() || in.getInt(base + 16) != sketch.getK()
+                || in.getInt(base + 20) != sketch.getM() || in.getInt(base + 24) != sketch.getFlowBuckets()
+                || in.getInt(base + 28) != sketch.getElementSeed() || in.getLong(base + 32) != sketch.getBucketSeed()
+                || (in.get(base + 7) & 0xFF) != sketch.getHashStrategy().id()) {
+            throw new IllegalArgumentException(String.format(
+                "%s (N=%d, k=%d, m=%d, delta1=%d, delta2=%d, flowBuckets=%d, hash strategy %d, "
+                    + "seeds 0x%x, 0x%x) does not match the target sketch", encoding,
+                in.getLong(base + 8), in.getInt(base + 16), in.getInt(base + 20), in.get(base + 5),
+                in.get(base + 6), in.getInt(base + 24), in.get(base + 7) & 0xFF, in.getLong(base + 32),
+                in.getInt(base + 28)));
+        }
+    }
+
+    private static void writeHeader(SKMV sketch, ByteBuffer out) {
+        int strategyId = strategyId(sketch);  // Before anything is written
+        out.putInt(MAGIC);
+        out.put((byte) FORMAT_VERSION);
+        putParameters(sketch, strategyId, out);
+        out.putLong(sketch.getCurrentTime());
+        out.putLong(sketch.getDeltaSequence());
+    }
+
+    /**
+     * Write bytes 5 to 39 of a full or delta header: bit widths, hash strategy id, N, k, m, flowBuckets and seeds
+     */
+    private static void putParameters(SKMV sketch, int strategyId, ByteBuffer out) {
+        out.put((byte) sketch.getDelta1());
+        out.put((byte) sketch.getDelta2());
+        out.put((byte) strategyId);
+        out.putLong(sketch.getWindowSize());
+        out.putInt(sketch.getK());
+        out.putInt(sketch.getM());
+        out.putInt(sketch.getFlowBuckets());
+        out.putInt(sketch.getElementSeed());
+        out.putLong(sketch.getBucketSeed());
+    }
+
+    private static void readBuckets(SKMV sketch, ByteBuffer in) {
+        int version = in.get(in.position() + 4);
+        in.position(in.position() + 40);
+        long currentTime = in.getLong();
+        long sequence = version == 1 ? 0 : in.getLong();
+        // Decode everything once without storing it, so a malformed encoding leaves the sketch untouched
+        ByteBuffer check = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        for (int b = 0; b < sketch.getM(); b++) {
+            readBucket(sketch, b, check, false);
+        }
+        for (int b = 0; b < sketch.getM(); b++) {
+            readBucket(sketch, b, in, true);
+        }
+        sketch.setCurrentTime(currentTime);
+        sketch.setDeltaSequence(sequence);
+    }
+
+    /**
+     * Decode the buckets of a delta, storing them only if apply is set (a validation pass otherwise)
+     */
+    private static void readDeltaBuckets(SKMV replica, int count, ByteBuffer in, boolean apply) {
+        int b = -1;
+        for (int i = 0; i < count; i++) {
+            b = checkRange(b + 1 + getVarint(in), replica.getM(), "bucket index");
+            readBucket(replica, b, in, apply);
+        }
+    }
+
+    /**
+     * Decode a bucket at the buffer's position, checking every field against the sketch's ranges
+     * If apply is set, replace the bucket's state with it and flag it dirty, so a replica can pass the
+     * change on in its own deltas; otherwise only validate it and leave the sketch unchanged.
+     */
+    private static void readBucket(SKMV sketch, int b, ByteBuffer in, boolean apply) {
+        int k = sketch.getK();
+        long unset = 2 * sketch.getWindowSize();
+        long hashRange = sketch.getHashRange();
+        int hashBytes = hashBytes(sketch);
+        int timeBytes = timeBytes(sketch);
+        int flags = in.get();
+        if ((flags & ~(FLAG_LOCK | FLAG_HEAD | FLAG_LOCK_TIME | FLAG_LOCK_MAX_V | FLAG_ENTRIES)) != 0) {
+            throw new IllegalArgumentException(
+                String.format("Malformed SKMV encoding: unknown flags 0x%x in bucket %d", flags & 0xff, b));
+        }
+        int head = (flags & FLAG_HEAD) != 0 ? checkRange(getVarint(in), k, "head") : 0;
+        long lockTime = (flags & FLAG_LOCK_TIME) != 0 ? checkAT(getFixed(in, timeBytes), unset) : unset;
+        long lockMaxV = (flags & FLAG_LOCK_MAX_V) != 0
+            ? checkHash(getFixed(in, hashBytes), hashRange, "lock_maxV") : hashRange;
+        int count = (flags & FLAG_ENTRIES) != 0 ? checkRange(getVarint(in), k + 1, "entry count") : 0;
+
+        SKMV.Bucket bucket = sketch.getBucket(b);
+        if (apply) {
+            bucket.lock = flags & FLAG_LOCK;
+            bucket.head = head;
+            bucket.lock_time.setRawValue(lockTime);
+            bucket.lock_maxV = lockMaxV;
+        }
+        int slot = -1;
+        for (int written = 0; written < count; written++) {
+            int next = checkRange(slot + 1 + getVarint(in), k, "entry slot");
+            long h = checkHash(getFixed(in, hashBytes), hashRange, "entry hash");
+            long t = checkAT(getFixed(in, timeBytes), unset);
+            if (apply) {
+                clearEntries(bucket, slot + 1, next);
+                bucket.entries[next].h = h;
+                bucket.entries[next].t.setRawValue(t);
+            }
+            slot = next;
+        }
+        if (apply) {
+            clearEntries(bucket, slot + 1, k);
+            sketch.markDirty(b);
+        }
+    }
+
+    private static void writeBucket(SKMV sketch, SKMV.Bucket bucket, ByteBuffer out) {
+        long unset = 2 * sketch.getWindowSize();
+        int hashBytes = hashBytes(sketch);
+        int timeBytes = timeBytes(sketch);
+        int count = storedEntries(bucket, unset);
+        int flags = bucket.lock
+            | (bucket.head != 0 ? FLAG_HEAD : 0)
+            | (bucket.lock_time.getRawValue() != unset ? FLAG_LOCK_TIME : 0)
+            | (bucket.lock_maxV != bucket.maxHashValue ? FLAG_LOCK_MAX_V : 0)
+            | (count > 0 ? FLAG_ENTRIES : 0);
+        out.put((byte) flags);
+        if ((flags & FLAG_HEAD) != 0) {
+            putVarint(out, bucket.head);
+        }
+        if ((flags & FLAG_LOCK_TIME) != 0) {
+            putFixed(out, bucket.lock_time.getRawValue(), timeBytes);
+        }
+        if ((flags & FLAG_LOCK_MAX_V) != 0) {
+            putFixed(out, bucket.lock_maxV, hashBytes);
+        }
+        if (count > 0) {
+            putVarint(out, count);
+            int previous = -1;
+            for (int i = 0; i < bucket.entries.length; i++) {
+                SKMV.Entry entry = bucket.entries[i];
+                if (!isEmpty(entry, unset)) {
+                    putVarint(out, i - previous - 1);
+                    putFixed(out, entry.h, hashBytes);
+                    putFixed(out, entry.t.getRawValue(), timeBytes);
+                    previous = i;
+                }
+            }
+        }
+    }
+
+    private static long bucketSize(SKMV sketch, SKMV.Bucket bucket) {
+        long unset = 2 * sketch.getWindowSize();
+        int hashBytes = hashBytes(sketch);
+        int timeBytes = timeBytes(sketch);
+        long size = 1;
+        if (bucket.head != 0) {
+            size += varintSize(bucket.head);
+        }
+        if (bucket.lock_time.getRawValue() != unset) {
+            size += timeBytes;
+        }
+        if (bucket.lock_maxV != bucket.maxHashValue) {
+            size += hashBytes;
+        }
+        int count = 0;
+        int previous = -1;
+        for (int i = 0; i < bucket.entries.length; i++) {
+            if (!isEmpty(bucket.entries[i], unset)) {
+                size += varintSize(i - previous - 1) + hashBytes + timeBytes;
+                previous = i;
+                count++;
+            }
+        }
+        return count > 0 ? size + varintSize(count) : size;
+    }
+
+    private static int storedEntries(SKMV.Bucket bucket, long unset) {
+        int count = 0;
+        for (SKMV.Entry entry : bucket.entries) {
+            if (!isEmpty(entry, unset)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * An entry is elided only if it is in the state of a fresh entry, so decoding restores it exactly
+     */
+    private static boolean isEmpty(SKMV.Entry entry, long unset) {
+        return entry.h == entry.maxHashValue && entry.t.getRawValue() == unset;
+    }
+
+    private static void clearEntries(SKMV.Bucket bucket, int from, int to) {
+        for (int i = from; i < to; i++) {
+            bucket.entries[i].h = bucket.entries[i].maxHashValue;
+            bucket.entries[i].t.clear();
+        }
+    }
+
+    private static int hashBytes(SKMV sketch) {
+        return (sketch.getDelta1() + 7) / 8;
+    }
+
+    private static int timeBytes(SKMV sketch) {
+        return (sketch.getDelta2() + 7) / 8;
+    }
+
+    private static long drain(ByteBuffer chunk, WritableByteChannel channel) throws IOException {
+        chunk.flip();
+        long bytes = chunk.remaining();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        chunk.clear();
+        return bytes;
+    }
+
+    private static void putFixed(ByteBuffer out, long value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            out.put((byte) (value >>> (8 * i)));
+        }
+    }
+
+    private static long getFixed(ByteBuffer in, int bytes) {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value |= (in.get() & 0xffL) << (8 * i);
+        }
+        return value;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed SKMV encoding: varint longer than 5 bytes");
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int checkRange(int value, int limit, String field) {
+        if (value < 0 || value >= limit) {
+            throw new IllegalArgumentException(
+                String.format("Malformed SKMV encoding: %s %d out of range [0, %d)", field, value, limit));
+        }
+        return value;
+    }
+
+    private static long checkHash(long h, long hashRange, String field) {
+        if (h < 0 || h > hashRange) {
+            throw new IllegalArgumentException(
+                String.format("Malformed SKMV encoding: %s %d exceeds the hash range %d", field, h, hashRange));
+        }
+        return h;
+    }
+
+    private static long checkAT(long vAT, long unset) {
+        if (vAT > unset) {
+            throw new IllegalArgumentException(
+                String.format("Malformed SKMV encoding: adjusted timestamp %d exceeds 2N = %d", vAT, unset));
+        }
+        return vAT;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.slidingdistinctcounter;
+
+/**
+ * Primitive storage backend for the Sliding KMV sketch
+ *
+ * Holds the state of m buckets with k entries each without any per-entry objects.
+ * Entries are addressed by slot index (bucketIndex * k + i), bucket fields by bucket index.
+ * Timestamps are stored as raw adjusted timestamp (AT) values, where 2*N marks an unset entry.
+ * Backends that hold resources outside the heap release them in {@link #close()},
+ * and persistent backends record the sketch time alongside the buckets in {@link #checkpoint(long)}.
+ *
+ * @author Research Implementation
+ */
+public interface SKMVStorage extends AutoCloseable {
+
+    /**
+     * @return Number of buckets m
+     */
+    int getM();
+
+    /**
+     * @return Number of entries k per bucket
+     */
+    int getK();
+
+    // Entry fields (indexed by slot = bucketIndex * k + i)
+    long getHash(int slot);
+    void setHash(int slot, long h);
+    long getAT(int slot);
+    void setAT(int slot, long vAT);
+
+    // Bucket fields (indexed by bucket)
+    int getLock(int bucketIndex);
+    void setLock(int bucketIndex, int lock);
+    long getLockTime(int bucketIndex);
+    void setLockTime(int bucketIndex, long vAT);
+    long getLockMaxV(int bucketIndex);
+    void setLockMaxV(int bucketIndex, long lockMaxV);
+    int getHead(int bucketIndex);
+    void setHead(int bucketIndex, int head);
+
+    /**
+     * Load the memory an update of the bucket reads first (its bucket fields and the first and last
+     * hash and AT values) so a later update finds it in cache
+     *
+     * @param bucketIndex Bucket to load
+     * @return Value derived from the loaded memory, which callers fold into a sink so the loads are kept
+     */
+    default long touch(int bucketIndex) {
+        int first = bucketIndex * getK();
+        int last = first + getK() - 1;
+        return getLock(bucketIndex) + getHead(bucketIndex) + getLockTime(bucketIndex)
+            + getHash(first) + getHash(last) + getAT(first) + getAT(last);
+    }
+
+    /**
+     * Flush the bucket state to durable media and record the current sketch time
+     * (no-op for volatile storage)
+     *
+     * @param currentTime Current global time T of the sketch
+     */
+    default void checkpoint(long currentTime) {
+    }
+
+    /**
+     * Record the current sketch time without forcing anything to disk (no-op for volatile storage)
+     * Called on every periodic clean, so after an unclean exit the recorded time is at most one
+     * cleaning period behind the newest entry that reached the file.
+     *
+     * @param currentTime Current global time T of the sketch
+     */
+    default void recordTime(long currentTime) {
+    }
+
+    /**
+     * @return Sketch time recorded by the last checkpoint or {@link #recordTime} (0 for volatile storage)
+     */
+    default long getCheckpointTime() {
+        return 0;
+    }
+
+    /**
+     * @return true if the bucket state was loaded from an existing, validated store rather than
+     *         initialized empty (always false for volatile storage)
+     */
+    default boolean isRestored() {
+        return false;
+    }
+
+    /**
+     * Release any resources held by the backend (no-op for heap storage)
+     */
+    @Override
+    default void close() {
+    }
+}
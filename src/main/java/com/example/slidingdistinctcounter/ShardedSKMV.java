@@ -0,0 +1,208 @@
+package com.example.slidingdistinctcounter;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sliding KMV sketch split into per-thread shards that are merged at query time
+ *
+ * Each ingest thread owns a private {@link SKMV} shard with identical parameters and hash functions,
+ * so recording takes no shared lock and touches no shared cache lines. A query merges the shards
+ * into one sketch: per bucket, the k smallest hash values that are in the window in any shard, each
+ * with its newest timestamp, with lock state reconciled across shards (see SKMV.unionBuckets). Since
+ * every shard maps an element to the same bucket and hash value, the union of the shards equals a
+ * single sketch fed the combined stream whenever the shards' buckets hold all their in-window
+ * minima; buckets that a shard left locked with fewer than k values keep the lock in the union.
+ *
+ * A shard's lock is only contended while a query or clean merges or cleans that shard, and it is
+ * held by the owner once per item (or once per batch with {@link Shard#recordBatch}). Every shard is a
+ * full sketch that lives as long as this object, so memory grows with the number of ingest threads
+ * and recordItem is meant for a fixed pool of long-lived threads.
+ *
+ * @author Research Implementation
+ */
+public class ShardedSKMV {
+
+    /**
+     * One thread's private sketch
+     */
+    public static class Shard {
+        private final SKMV sketch;
+        private final ReentrantLock lock = new ReentrantLock();  // Taken by the owner and by merges
+
+        Shard(SKMV sketch) {
+            this.sketch = sketch;
+        }
+
+        /**
+         * Online Item Recording into this shard
+         *
+         * @param flowLabel The flow identifier
+         * @param elementID The element identifier to process
+         * @param timestamp The timestamp of the arriving item
+         */
+        public void recordItem(long flowLabel, long elementID, long timestamp) {
+            lock.lock();
+            try {
+                sketch.recordItem(flowLabel, elementID, timestamp);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Batched Item Recording into this shard, taking the lock once (see SKMV.recordBatch)
+         */
+        public void recordBatch(long[] flowLabels, long[] elementIDs, long[] timestamps, int offset, int length) {
+            lock.lock();
+            try {
+                sketch.recordBatch(flowLabels, elementIDs, timestamps, offset, length);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Periodic cleaning of this shard
+         *
+         * @param currentTime Current global time for cleaning
+         */
+        public void periodicClean(long currentTime) {
+            lock.lock();
+            try {
+                sketch.periodicClean(currentTime);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final long N;
+    private final int k;
+    private final int m;
+    private final int delta1;
+    private final int delta2;
+    private final CopyOnWriteArrayList<Shard> shards;  // Every shard created, in creation order
+    private final ThreadLocal<Shard> localShard;       // Shard of the calling thread for recordItem
+    private final SKMV merged;                         // Reused merge target for queries (guarded by this)
+    private final SKMV[] pair;                         // Merge sources: merge target and one shard
+
+    /**
+     * Constructor for the sharded sketch
+     *
+     * @param N Window length (time units)
+     * @param k k-minimum value count per bucket
+     * @param m Number of buckets
+     * @param delta1 Bit-width for hash values (hash range: [0, 2^delta1 - 1])
+     * @param delta2 Bit-width for timestamps (timestamp range: [0, 2^delta2 - 1])
+     */
+    public ShardedSKMV(long N, int k, int m, int delta1, int delta2) {
+        this.merged = new SKMV(N, k, m, delta1, delta2);  // Validates the parameters
+        this.N = N;
+        this.k = k;
+        this.m = m;
+        this.delta1 = delta1;
+        this.delta2 = delta2;
+        this.shards = new CopyOnWriteArrayList<>();
+        this.localShard = ThreadLocal.withInitial(this::newShard);
+        this.pair = new SKMV[2];
+    }
+
+    /**
+     * Create and register a new shard, for callers that hand shards to their threads themselves
+     *
+     * @return Shard that takes part in every later merge
+     */
+    public Shard newShard() {
+        Shard shard = new Shard(new SKMV(N, k, m, delta1, delta2));
+        shards.add(shard);
+        return shard;
+    }
+
+    /**
+     * Online Item Recording into the calling thread's shard (created on first use)
+     *
+     * @param flowLabel The flow identifier
+     * @param elementID The element identifier to process
+     * @param timestamp The timestamp of the arriving item
+     */
+    public void recordItem(long flowLabel, long elementID, long timestamp) {
+        localShard.get().recordItem(flowLabel, elementID, timestamp);
+    }
+
+    /**
+     * Periodic cleaning of every shard, one shard at a time
+     *
+     * @param currentTime Current global time for cleaning
+     */
+    public void periodicClean(long currentTime) {
+        for (Shard shard : shards) {
+            shard.periodicClean(currentTime);
+        }
+    }
+
+    /**
+     * Query method for cardinality estimation over all shards
+     *
+     * @return Estimated cardinality of distinct elements in sliding window
+     */
+    public synchronized double estimateCardinality() {
+        return mergeShards().estimateCardinality();
+    }
+
+    /**
+     * Query method for the cardinality of a single flow over all shards
+     *
+     * @param flowLabel The flow identifier
+     * @return Estimated number of distinct elements of the flow in sliding window (0 if none)
+     */
+    public synchronized double estimateFlowCardinality(long flowLabel) {
+        return mergeShards().estimateFlowCardinality(flowLabel);
+    }
+
+    /**
+     * Merge all shards into a new sketch owned by the caller
+     *
+     * @return Snapshot of the union of the shards
+     */
+    public SKMV union() {
+        SKMV snapshot = new SKMV(N, k, m, delta1, delta2);
+        synchronized (this) {
+            SKMV[] sources = {mergeShards()};
+            snapshot.unionOf(sources, 1);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Fold the shards one at a time into the merge target, holding only the shard being read
+     * Writers on the other shards keep running, so the union combines shard states taken at
+     * slightly different times.
+     */
+    private SKMV mergeShards() {
+        boolean first = true;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                // The first shard replaces whatever the previous query left in the target
+                pair[0] = first ? shard.sketch : merged;
+                pair[1] = shard.sketch;
+                merged.unionOf(pair, first ? 1 : 2);
+                first = false;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        pair[0] = null;
+        pair[1] = null;
+        return merged;  // Still empty if no shard was ever created
+    }
+
+    // Getter methods for configuration and state
+    public long getWindowSize() { return N; }
+    public int getK() { return k; }
+    public int getM() { return m; }
+    public int getDelta1() { return delta1; }
+    public int getDelta2() { return delta2; }
+    public int getShardCount() { return shards.size(); }
+}
@@ -0,0 +1,100 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Cleaning through BackgroundCleaner must leave the sketch where periodicClean would
+ *
+ * @author Research Implementation
+ */
+class BackgroundCleanerTest {
+
+    private static final int QUERY_EVERY = 10_000;  // Items between compared estimates
+
+    private static PackedSKMV configured(Consumer<PackedSKMV> configure) {
+        PackedSKMV sketch = new PackedSKMV(N, K, M, 32, 16);
+        configure.accept(sketch);
+        return sketch;
+    }
+
+    /**
+     * Feed a stream through a cleaner and a plain sketch cleaned by periodicClean after the first item
+     * of every N/2 time units, where runPass cleans the cleaner's sketch
+     */
+    private static void assertMatchesPacked(BackgroundCleaner cleaner, PackedSKMV reference,
+                                            SketchAssertions.Stream stream, Runnable runPass, double tolerance) {
+        for (int i = 0; i < stream.size(); i++) {
+            cleaner.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            reference.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            if (i > 0 && SketchAssertions.cleansBefore(stream, i)) {
+                runPass.run();
+                reference.periodicClean(stream.timestamps[i]);
+            }
+            if ((i + 1) % QUERY_EVERY == 0) {
+                double expected = reference.estimateCardinality();
+                assertEquals(expected, cleaner.estimateCardinality(), tolerance * expected, "estimate after item " + i);
+            }
+        }
+    }
+
+    @Test
+    void cleanNowMatchesPeriodicClean() {
+        Consumer<PackedSKMV> accelerators = sketch -> {
+            sketch.enableHeadTree();
+            sketch.enableFingerprintFilter();
+            sketch.enableFastReject();
+        };
+        for (Consumer<PackedSKMV> configure : List.<Consumer<PackedSKMV>>of(sketch -> { }, accelerators)) {
+            for (SketchAssertions.Stream stream : new SketchAssertions.Stream[] {SketchAssertions.uniform(), SketchAssertions.skewed()}) {
+                BackgroundCleaner cleaner = new BackgroundCleaner(configured(configure));
+                assertMatchesPacked(cleaner, configured(configure), stream, cleaner::cleanNow, 0.0);
+                assertEquals(stream.timestamps[stream.size() - 1] / (N / 2), cleaner.getPasses());
+            }
+        }
+    }
+
+    @Test
+    void runningCleanerMatchesPeriodicClean() {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        PackedSKMV reference = new PackedSKMV(N, K, M, 32, 16);
+        try (BackgroundCleaner cleaner = new BackgroundCleaner(new PackedSKMV(N, K, M, 32, 16))) {
+            cleaner.start();
+            // Wait for the thread's pass after the first item of every N/2 time units; that item's own
+            // bucket may be cleaned before or after it lands, so estimates agree up to one bucket's term
+            assertMatchesPacked(cleaner, reference, stream, () -> {
+                long passes = cleaner.getPasses();
+                long deadline = System.nanoTime() + 10_000_000_000L;
+                while (cleaner.getPasses() == passes) {
+                    assertTrue(System.nanoTime() < deadline, "no cleaning pass within 10 s");
+                    Thread.yield();
+                }
+            }, 1e-2);
+            assertEquals(stream.timestamps[stream.size() - 1] / (N / 2), cleaner.getPasses());
+        }
+    }
+
+    @Test
+    void configurationIsFrozenOnceCleaned() {
+        PackedSKMV sketch = new PackedSKMV(N, K, M, 32, 16);
+        sketch.enableHeadTree();
+        new BackgroundCleaner(sketch);
+        assertThrows(IllegalStateException.class, sketch::enableHeadTree);
+        assertThrows(IllegalStateException.class, sketch::enableFingerprintFilter);
+        assertThrows(IllegalStateException.class, sketch::enableFastReject);
+        assertThrows(IllegalStateException.class, sketch::enableLazyExpiry);
+        assertThrows(IllegalStateException.class, () -> sketch.enableIncrementalSweep(1, N));
+        assertThrows(IllegalStateException.class, () -> sketch.enableExpiryIndex(1024));
+        assertThrows(IllegalStateException.class, () -> sketch.enableIncrementalEstimate(64));
+        assertThrows(IllegalStateException.class, () -> new BackgroundCleaner(sketch));
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ConcurrentSKMV must match SKMV in order, and track a time-sorted SKMV when items arrive late
+ *
+ * @author Research Implementation
+ */
+class ConcurrentSKMVTest {
+
+    /**
+     * @return The stream with every timestamp moved back by up to skew time units, in arrival order
+     */
+    private static SketchAssertions.Stream late(SketchAssertions.Stream stream, int skew, long seed) {
+        Random random = new Random(seed);
+        SketchAssertions.Stream late = new SketchAssertions.Stream(stream.size());
+        for (int i = 0; i < stream.size(); i++) {
+            late.flowLabels[i] = stream.flowLabels[i];
+            late.elementIDs[i] = stream.elementIDs[i];
+            late.timestamps[i] = Math.max(0, stream.timestamps[i] - random.nextInt(skew + 1));
+        }
+        return late;
+    }
+
+    /**
+     * @return The same items ordered by timestamp, arrival order kept among equal timestamps
+     */
+    private static SketchAssertions.Stream sorted(SketchAssertions.Stream stream) {
+        Integer[] order = new Integer[stream.size()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparingLong(i -> stream.timestamps[i]));
+        SketchAssertions.Stream sorted = new SketchAssertions.Stream(stream.size());
+        for (int i = 0; i < order.length; i++) {
+            sorted.flowLabels[i] = stream.flowLabels[order[i]];
+            sorted.elementIDs[i] = stream.elementIDs[order[i]];
+            sorted.timestamps[i] = stream.timestamps[order[i]];
+        }
+        return sorted;
+    }
+
+    @Test
+    void inOrderItemsMatchSkmv() {
+        for (SketchAssertions.Stream stream : new SketchAssertions.Stream[] {SketchAssertions.uniform(), SketchAssertions.skewed()}) {
+            SKMV reference = new SKMV(N, K, M, 32, 16);
+            ConcurrentSKMV concurrent = new ConcurrentSKMV(N, K, M, 32, 16);
+            for (int i = 0; i < stream.size(); i++) {
+                if (SketchAssertions.cleansBefore(stream, i)) {
+                    reference.periodicClean(stream.timestamps[i]);
+                    concurrent.periodicClean(stream.timestamps[i]);
+                }
+                reference.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                assertTrue(concurrent.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]));
+                if ((i + 1) % 10_000 == 0) {
+                    // Stripes sum the bucket terms in a different order
+                    double expected = reference.estimateCardinality();
+                    assertEquals(expected, concurrent.estimateCardinality(), 1e-12 * expected, "estimate after item " + i);
+                    long flow = stream.flowLabels[i];
+                    assertEquals(reference.estimateFlowCardinality(flow), concurrent.estimateFlowCardinality(flow), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    void lateItemsTrackTimeSortedSkmv() {
+        // The sketch swings widely while the first window expires, so compare summed estimates over the second half
+        for (int skew : new int[] {5, 20}) {
+            SketchAssertions.Stream late = late(SketchAssertions.uniform(), skew, skew);
+            SketchAssertions.Stream sorted = sorted(late);
+            SKMV reference = new SKMV(N, K, M, 32, 16);
+            ConcurrentSKMV concurrent = new ConcurrentSKMV(N, K, M, 32, 16);
+            long cleaned = -1;
+            double expected = 0;
+            double actual = 0;
+            for (int i = 0; i < late.size(); i++) {
+                if (SketchAssertions.cleansBefore(sorted, i)) {
+                    reference.periodicClean(sorted.timestamps[i]);
+                }
+                reference.recordItem(sorted.flowLabels[i], sorted.elementIDs[i], sorted.timestamps[i]);
+                if (concurrent.getCurrentTime() / (N / 2) != cleaned) {
+                    cleaned = concurrent.getCurrentTime() / (N / 2);
+                    concurrent.periodicClean(concurrent.getCurrentTime());
+                }
+                assertTrue(concurrent.recordItem(late.flowLabels[i], late.elementIDs[i], late.timestamps[i]));
+                if (i >= late.size() / 2 && i % 1000 == 0) {
+                    expected += reference.estimateCardinality();
+                    actual += concurrent.estimateCardinality();
+                }
+            }
+            // A late item evaluates a window up to skew time units newer than the sorted run does
+            double tolerance = 0.03 + (double) skew / (2 * N);
+            assertEquals(expected, actual, tolerance * expected, "summed estimates with skew " + skew);
+        }
+    }
+
+    @Test
+    void concurrentWritersTrackSequentialSkmv() throws InterruptedException {
+        // Writers take every fourth item of each N/4 time units, then meet at a barrier whose action
+        // feeds the same items to a sequential sketch, cleans both every N/2 and sums their estimates
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        long chunk = N / 4;
+        int chunks = (int) (stream.timestamps[stream.size() - 1] / chunk) + 1;
+        int[] starts = new int[chunks + 1];
+        for (int c = 0, i = 0; c <= chunks; c++) {
+            while (i < stream.size() && stream.timestamps[i] < c * chunk) {
+                i++;
+            }
+            starts[c] = i;
+        }
+
+        SKMV reference = new SKMV(N, K, M, 32, 16);
+        ConcurrentSKMV concurrent = new ConcurrentSKMV(N, K, M, 32, 16, 16);
+        int writers = 4;
+        double[] sums = new double[2];
+        int[] done = new int[1];
+        CyclicBarrier barrier = new CyclicBarrier(writers, () -> {
+            int c = done[0]++;
+            SketchAssertions.feed(reference, stream, starts[c], starts[c + 1]);
+            if (c + 1 < chunks && (c + 1) * chunk % (N / 2) == 0) {
+                concurrent.periodicClean((c + 1) * chunk);
+            }
+            if (c >= chunks / 2) {
+                sums[0] += reference.estimateCardinality();
+                sums[1] += concurrent.estimateCardinality();
+            }
+        });
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[writers];
+        for (int t = 0; t < writers; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int c = 0; c < chunks; c++) {
+                        for (int i = starts[c] + first; i < starts[c + 1]; i += writers) {
+                            assertTrue(concurrent.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]),
+                                "item " + i + " dropped");
+                            if (i % 5000 == first) {
+                                concurrent.estimateCardinality();
+                                concurrent.estimateFlowCardinality(stream.flowLabels[i]);
+                            }
+                        }
+                        barrier.await();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    barrier.reset();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null && !(failure.get() instanceof BrokenBarrierException)) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(chunks, done[0], "chunks completed");
+        assertEquals(stream.timestamps[stream.size() - 1], concurrent.getCurrentTime());
+        // Within a chunk an item can trail the clock by up to N/4, as with late items above
+        assertEquals(sums[0], sums[1], (0.03 + (double) chunk / (2 * N)) * sums[0], "summed estimates");
+    }
+}
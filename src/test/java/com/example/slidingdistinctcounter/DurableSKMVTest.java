@@ -0,0 +1,91 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Recovery from checkpoint and log must reproduce the live sketch, queries included
+ *
+ * @author Research Implementation
+ */
+class DurableSKMVTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Feed items, cleans and both kinds of query to the durable sketch and a plain mirror
+     */
+    private static void feed(DurableSKMV durable, SKMV mirror, SketchAssertions.Stream stream, int from, int to)
+            throws IOException {
+        for (int i = from; i < to; i++) {
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                durable.periodicClean(stream.timestamps[i]);
+                mirror.periodicClean(stream.timestamps[i]);
+            }
+            durable.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            mirror.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            if (i % 997 == 0) {
+                assertEquals(mirror.estimateCardinality(), durable.estimateCardinality());
+            }
+            if (i % 389 == 0) {
+                long flow = stream.flowLabels[i];
+                assertEquals(mirror.estimateFlowCardinality(flow), durable.estimateFlowCardinality(flow));
+            }
+        }
+    }
+
+    @Test
+    void recoveryMatchesLiveSketchWithInterleavedQueries() throws IOException {
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        SKMV mirror = new SKMV(N, K, M, 32, 16);
+        int half = stream.size() / 2;
+        try (DurableSKMV durable = DurableSKMV.open(directory, N, K, M, 32, 16, 256, 3 * N)) {
+            feed(durable, mirror, stream, 0, half);
+            SketchAssertions.assertSameState(mirror, durable.getSketch());
+        }
+        try (DurableSKMV recovered = DurableSKMV.open(directory, N, K, M, 32, 16, 256, 3 * N)) {
+            SketchAssertions.assertSameState(mirror, recovered.getSketch());
+            feed(recovered, mirror, stream, half, stream.size());
+        }
+        try (DurableSKMV recovered = DurableSKMV.open(directory, N, K, M, 32, 16, 256, 0)) {
+            SketchAssertions.assertSameState(mirror, recovered.getSketch());
+        }
+    }
+
+    @Test
+    void tornLogTailIsDroppedAndAppendsContinue() throws IOException {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        SKMV mirror = new SKMV(N, K, M, 32, 16);
+        int cut = 20_000;
+        try (DurableSKMV durable = DurableSKMV.open(directory, N, K, M, 32, 16, 1, 0)) {
+            feed(durable, mirror, stream, 0, cut);
+            durable.recordItem(stream.flowLabels[cut], stream.elementIDs[cut], stream.timestamps[cut]);
+        }
+        Path log;
+        try (Stream<Path> files = Files.list(directory)) {
+            log = files.filter(p -> p.getFileName().toString().startsWith("wal-")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        try (DurableSKMV recovered = DurableSKMV.open(directory, N, K, M, 32, 16, 1, 0)) {
+            SketchAssertions.assertSameState(mirror, recovered.getSketch());
+            feed(recovered, mirror, stream, cut, cut + 5_000);
+        }
+        try (DurableSKMV recovered = DurableSKMV.open(directory, N, K, M, 32, 16, 1, 0)) {
+            SketchAssertions.assertSameState(mirror, recovered.getSketch());
+        }
+    }
+}
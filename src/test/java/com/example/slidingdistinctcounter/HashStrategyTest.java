@@ -0,0 +1,96 @@
+package com.example.slidingdistinctcounter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.function.LongUnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Every built-in strategy must spread flows evenly over the buckets and elements evenly over the
+ * delta1-bit hash range, also for sequential and strided keys
+ *
+ * @author Research Implementation
+ */
+class HashStrategyTest {
+
+    private static final int BUILTINS = 4;
+    private static final int SAMPLES = 1 << 18;
+    private static final int BINS = 1024;
+
+    // Keys as they often arrive: consecutive, spaced by a power of two, or spread over the high bits
+    private static final LongUnaryOperator[] KEYS = {i -> i, i -> i << 20, i -> i << 44};
+
+    /**
+     * Check counts against a uniform distribution: the chi-square statistic must stay within six
+     * standard deviations of its mean, bins - 1
+     */
+    private static void assertUniform(int[] counts, long samples, String what) {
+        double expected = (double) samples / counts.length;
+        double chiSquare = 0;
+        for (int count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        int df = counts.length - 1;
+        assertTrue(chiSquare < df + 6 * Math.sqrt(2.0 * df), String.format("%s: chi-square %.1f with %d bins", what, chiSquare, counts.length));
+    }
+
+    @Test
+    void builtinIdsResolveToTheirStrategies() {
+        for (int id = 0; id < BUILTINS; id++) {
+            assertEquals(id, HashStrategy.forId(id).id());
+        }
+        assertThrows(IllegalArgumentException.class, () -> HashStrategy.forId(BUILTINS));
+    }
+
+    @Test
+    void bucketsAreUniform() {
+        for (int id = 0; id < BUILTINS; id++) {
+            HashStrategy strategy = HashStrategy.forId(id);
+            for (int m : new int[] {BINS, 1000}) {
+                if (strategy == HashStrategy.FNV_MURMUR && m != BINS) {
+                    continue;  // Frozen for compatibility, see its documentation
+                }
+                for (int key = 0; key < KEYS.length; key++) {
+                    int[] counts = new int[m];
+                    for (long i = 0; i < SAMPLES; i++) {
+                        long flowHash = strategy.flowHash(KEYS[key].applyAsLong(i), SKMV.DEFAULT_BUCKET_SEED);
+                        counts[strategy.bucketIndex(flowHash, m)]++;
+                    }
+                    assertUniform(counts, SAMPLES, String.format("strategy %d, m=%d, keys %d", id, m, key));
+                }
+            }
+        }
+    }
+
+    @Test
+    void elementHashesAreUniform() {
+        // Over the top and the bottom bits of the 32-bit range the sketch keeps, and bit by bit
+        for (int id = 0; id < BUILTINS; id++) {
+            HashStrategy strategy = HashStrategy.forId(id);
+            for (int key = 0; key < KEYS.length; key++) {
+                int[] high = new int[BINS];
+                int[] low = new int[BINS];
+                int[] ones = new int[32];
+                for (long i = 0; i < SAMPLES; i++) {
+                    long hash = strategy.elementHash(KEYS[key].applyAsLong(i), SKMV.DEFAULT_ELEMENT_SEED) & 0xFFFFFFFFL;
+                    high[(int) (hash >>> 22)]++;
+                    low[(int) (hash & (BINS - 1))]++;
+                    for (int bit = 0; bit < 32; bit++) {
+                        ones[bit] += (int) (hash >>> bit) & 1;
+                    }
+                }
+                String what = String.format("strategy %d, keys %d", id, key);
+                assertUniform(high, SAMPLES, what + ", high bits");
+                assertUniform(low, SAMPLES, what + ", low bits");
+                for (int bit = 0; bit < 32; bit++) {
+                    // Six standard deviations of a fair coin over SAMPLES draws
+                    assertEquals(SAMPLES / 2.0, ones[bit], 3 * Math.sqrt(SAMPLES), what + ", bit " + bit);
+                }
+            }
+        }
+    }
+}
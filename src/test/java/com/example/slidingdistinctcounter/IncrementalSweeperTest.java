@@ -0,0 +1,77 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * IncrementalSweeper must revisit every bucket within maxStaleness and report the worst gap it allowed
+ *
+ * @author Research Implementation
+ */
+class IncrementalSweeperTest {
+
+    /**
+     * Drive a sweeper as PackedSKMV does, with items at random gaps and a catch-up every N/2,
+     * checking the time between two visits of every bucket against the reported worst staleness
+     * and, if the sweeper was consulted at least once per time unit, against maxStaleness
+     */
+    private static void assertRevisitsWithin(int bucketsPerItem, long maxStaleness, int maxGap, long seed) {
+        IncrementalSweeper sweeper = new IncrementalSweeper(M, bucketsPerItem, maxStaleness, 0);
+        long[] lastVisit = new long[M];
+        long worstGap = 0;
+        long passStart = 0;
+        long previousPassStart = 0;
+        long expectedWorst = 0;
+        Random random = new Random(seed);
+        long t = 0;
+        for (int item = 0; item < 50_000; item++) {
+            long previous = t;
+            t += random.nextInt(maxGap + 1);
+            boolean clean = t / (N / 2) != previous / (N / 2);
+            for (boolean perItem : clean ? new boolean[] {false, true} : new boolean[] {true}) {
+                for (int n = sweeper.due(t, perItem); n > 0; n--) {
+                    int b = sweeper.next(t);
+                    worstGap = Math.max(worstGap, t - lastVisit[b]);
+                    assertTrue(maxGap > 1 || t - lastVisit[b] <= maxStaleness,
+                        String.format("bucket %d unvisited from %d to %d", b, lastVisit[b], t));
+                    lastVisit[b] = t;
+                    if (b == M - 1) {
+                        expectedWorst = Math.max(expectedWorst, t - previousPassStart);
+                        previousPassStart = passStart;
+                        passStart = t;
+                    }
+                }
+            }
+        }
+        assertTrue(sweeper.getPasses() > 10, "passes " + sweeper.getPasses());
+        assertEquals(expectedWorst, sweeper.getWorstStaleness());
+        assertTrue(worstGap <= sweeper.getWorstStaleness(),
+            String.format("gap %d beyond reported worst %d", worstGap, sweeper.getWorstStaleness()));
+        assertTrue(maxGap > 1 || sweeper.getWorstStaleness() <= maxStaleness);
+    }
+
+    @Test
+    void deadlineAloneRevisitsWithinMaxStaleness() {
+        assertRevisitsWithin(0, N, 1, 1);
+        assertRevisitsWithin(0, N / 4, 1, 2);
+    }
+
+    @Test
+    void perItemQuotaRevisitsWithinMaxStaleness() {
+        assertRevisitsWithin(2, N, 1, 3);
+        assertRevisitsWithin(M, N / 2, 1, 4);
+    }
+
+    @Test
+    void sparseItemsReportTheirWorstStaleness() {
+        // With gaps of up to N/3 a pass can only finish at the first item after its deadline, so
+        // maxStaleness may be exceeded, but never by more than the reported worst staleness says
+        assertRevisitsWithin(1, N, (int) (N / 3), 5);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The same key bytes must give the same label from a byte[], a ByteBuffer and a CharSequence, and
+ * recording a key must equal recording its label
+ *
+ * @author Research Implementation
+ */
+class KeyHashingTest {
+
+    private static final String[] KEYS = {"", "a", "abcdefgh", "abcdefghi", "10.0.0.1", "2001:db8::ff00:42:8329",
+        "été", "日本語テキスト", "😀x", "\ud800lone"};
+
+    @Test
+    void textBytesAndBuffersAgree() {
+        for (HashStrategy strategy : new HashStrategy[] {HashStrategy.FNV_MURMUR, HashStrategy.XXH3}) {
+            SKMV sketch = new SKMV(N, K, M, 32, 16, 1, strategy, 5, 7);
+            for (String key : KEYS) {
+                byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+                byte[] padded = new byte[utf8.length + 6];
+                System.arraycopy(utf8, 0, padded, 3, utf8.length);
+                ByteBuffer direct = ByteBuffer.allocateDirect(padded.length).order(ByteOrder.BIG_ENDIAN);
+                direct.put(padded).position(3).limit(3 + utf8.length);
+
+                long label = sketch.flowLabelOf(utf8, 0, utf8.length);
+                assertEquals(label, sketch.flowLabelOf(key), key);
+                assertEquals(label, sketch.flowLabelOf(padded, 3, utf8.length), key);
+                assertEquals(label, sketch.flowLabelOf(direct), key);
+                assertEquals(3, direct.position(), "position unchanged");
+                assertEquals(sketch.elementIdOf(utf8, 0, utf8.length), sketch.elementIdOf(key), key);
+                assertNotEquals(label, sketch.elementIdOf(key), "flow and element seeds differ");
+            }
+        }
+    }
+
+    @Test
+    void zeroPaddingDoesNotCollide() {
+        SKMV sketch = new SKMV(N, K, M, 32, 16);
+        assertNotEquals(sketch.flowLabelOf(new byte[3], 0, 3), sketch.flowLabelOf(new byte[8], 0, 8));
+        assertNotEquals(sketch.flowLabelOf(new byte[0], 0, 0), sketch.flowLabelOf(new byte[1], 0, 1));
+    }
+
+    @Test
+    void rangesOutsideTheArrayAreRejected() {
+        SKMV sketch = new SKMV(N, K, M, 32, 16);
+        byte[] key = new byte[16];
+        assertEquals(sketch.flowLabelOf(new byte[0], 0, 0), sketch.flowLabelOf(key, 16, 0));
+        assertThrows(IllegalArgumentException.class, () -> sketch.flowLabelOf(key, 9, 8));
+        assertThrows(IllegalArgumentException.class, () -> sketch.flowLabelOf(key, -1, 4));
+        assertThrows(IllegalArgumentException.class, () -> sketch.flowLabelOf(key, 0, -1));
+        // offset + length overflows to a negative int, which a plain sum check would let through
+        assertThrows(IllegalArgumentException.class, () -> sketch.flowLabelOf(key, 8, Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> sketch.elementIdOf(key, Integer.MAX_VALUE, 1));
+    }
+
+    @Test
+    void recordingKeysEqualsRecordingLabels() {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        SKMV byKey = new SKMV(N, K, M, 32, 16, 2);
+        SKMV byLabel = new SKMV(N, K, M, 32, 16, 2);
+        for (int i = 0; i < 50_000; i++) {
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                byKey.periodicClean(stream.timestamps[i]);
+                byLabel.periodicClean(stream.timestamps[i]);
+            }
+            String flow = "10.0." + (stream.flowLabels[i] >>> 8 & 0xFF) + "." + (stream.flowLabels[i] & 0xFF);
+            String element = Long.toString(stream.elementIDs[i]);
+            byKey.recordItem(flow, element, stream.timestamps[i]);
+            byLabel.recordItem(byLabel.flowLabelOf(flow), byLabel.elementIdOf(element), stream.timestamps[i]);
+        }
+        SketchAssertions.assertSameState(byLabel, byKey);
+        assertEquals(byLabel.estimateFlowCardinality(byLabel.flowLabelOf("10.0.0.1")),
+            byKey.estimateFlowCardinality("10.0.0.1"), 0.0);
+    }
+}
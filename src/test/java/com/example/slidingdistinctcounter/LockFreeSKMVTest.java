@@ -0,0 +1,95 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * LockFreeSKMV must match SKMV exactly with one writer and keep its words well formed with several
+ *
+ * @author Research Implementation
+ */
+class LockFreeSKMVTest {
+
+    @Test
+    void singleWriterMatchesSkmv() {
+        for (SketchAssertions.Stream stream : new SketchAssertions.Stream[] {SketchAssertions.uniform(), SketchAssertions.skewed()}) {
+            SKMV reference = new SKMV(N, K, M, 32, 16);
+            LockFreeSKMV lockFree = new LockFreeSKMV(N, K, M, 32, 16);
+            for (int i = 0; i < stream.size(); i++) {
+                if (SketchAssertions.cleansBefore(stream, i)) {
+                    reference.periodicClean(stream.timestamps[i]);
+                    lockFree.periodicClean(stream.timestamps[i]);
+                }
+                reference.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                lockFree.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            }
+            for (int b = 0; b < M; b++) {
+                SKMV.Bucket bucket = reference.getBucket(b);
+                assertEquals(bucket.lock, lockFree.getLock(b), "lock of bucket " + b);
+                assertEquals(bucket.head, lockFree.getHead(b), "head of bucket " + b);
+                assertEquals(bucket.lock_time.getRawValue(), lockFree.getLockTime(b), "lock_time of bucket " + b);
+                assertEquals(bucket.lock_maxV, lockFree.getLockMaxV(b), "lock_maxV of bucket " + b);
+                for (int i = 0; i < K; i++) {
+                    assertEquals(bucket.entries[i].h, lockFree.getHash(b * K + i), "hash of entry " + i + " in bucket " + b);
+                    assertEquals(bucket.entries[i].t.getRawValue(), lockFree.getAT(b * K + i),
+                        "time of entry " + i + " in bucket " + b);
+                }
+            }
+            assertEquals(reference.estimateCardinality(), lockFree.estimateCardinality(), 0.0);
+        }
+    }
+
+    @Test
+    void concurrentWritersKeepWordsWellFormed() throws InterruptedException {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        LockFreeSKMV sketch = new LockFreeSKMV(N, K, M, 32, 16);
+        int writers = 4;
+        Thread[] threads = new Thread[writers];
+        for (int t = 0; t < writers; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                for (int i = first; i < stream.size(); i += writers) {
+                    if (SketchAssertions.cleansBefore(stream, i)) {
+                        sketch.periodicClean(stream.timestamps[i]);
+                    }
+                    sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                    if (i % 1000 == first) {
+                        sketch.estimateCardinality();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long hashRange = (1L << 32) - 1;
+        for (int b = 0; b < M; b++) {
+            assertTrue(sketch.getHead(b) < K, "head of bucket " + b);
+            assertTrue(sketch.getLockTime(b) <= 2 * N, "lock_time of bucket " + b);
+            assertTrue(sketch.getLockMaxV(b) <= hashRange, "lock_maxV of bucket " + b);
+            Set<Long> seen = new HashSet<>();
+            for (int slot = b * K; slot < (b + 1) * K; slot++) {
+                assertTrue(sketch.getAT(slot) <= 2 * N, "time of slot " + slot);
+                long hash = sketch.getHash(slot);
+                assertTrue(hash == hashRange || seen.add(hash), "hash held twice in bucket " + b);
+            }
+        }
+    }
+
+    @Test
+    void oversizedSketchIsRejected() {
+        // 65536 * 65536 slots wrap to 0 in int arithmetic
+        assertThrows(ArithmeticException.class, () -> new LockFreeSKMV(N, 1 << 16, 1 << 16, 32, 16));
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * PackedSKMV and its accelerators must estimate exactly what SKMV estimates on the same stream
+ *
+ * @author Research Implementation
+ */
+class PackedSKMVTest {
+
+    private static final int QUERY_EVERY = 10_000;  // Items between compared estimates
+
+    /**
+     * Feed the stream into a packed sketch and an SKMV with the same cleaning, comparing estimates
+     * every QUERY_EVERY items and at the end
+     */
+    private static void assertMatchesSkmv(SketchAssertions.Stream stream, Consumer<PackedSKMV> configure) {
+        SKMV reference = new SKMV(N, K, M, 32, 16);
+        PackedSKMV packed = new PackedSKMV(N, K, M, 32, 16);
+        configure.accept(packed);
+        for (int i = 0; i < stream.size(); i++) {
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                reference.periodicClean(stream.timestamps[i]);
+                packed.periodicClean(stream.timestamps[i]);
+            }
+            reference.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            packed.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            if ((i + 1) % QUERY_EVERY == 0) {
+                assertEquals(reference.estimateCardinality(), packed.estimateCardinality(), 0.0, "estimate after item " + i);
+            }
+        }
+        assertEquals(reference.estimateCardinality(), packed.estimateCardinality(), 0.0);
+    }
+
+    @Test
+    void plainMatchesSkmv() {
+        assertMatchesSkmv(SketchAssertions.uniform(), packed -> { });
+        assertMatchesSkmv(SketchAssertions.skewed(), packed -> { });
+    }
+
+    @Test
+    void fastRejectMatchesSkmv() {
+        assertMatchesSkmv(SketchAssertions.uniform(), PackedSKMV::enableFastReject);
+        assertMatchesSkmv(SketchAssertions.skewed(), PackedSKMV::enableFastReject);
+    }
+
+    @Test
+    void fingerprintFilterMatchesSkmv() {
+        assertMatchesSkmv(SketchAssertions.uniform(), PackedSKMV::enableFingerprintFilter);
+        assertMatchesSkmv(SketchAssertions.skewed(), PackedSKMV::enableFingerprintFilter);
+    }
+
+    @Test
+    void headTreeMatchesSkmv() {
+        assertMatchesSkmv(SketchAssertions.uniform(), PackedSKMV::enableHeadTree);
+        assertMatchesSkmv(SketchAssertions.skewed(), PackedSKMV::enableHeadTree);
+    }
+
+    @Test
+    void expiryIndexMatchesSkmv() {
+        // One time unit per slot, so the index cleans exactly what the sweep cleans
+        assertMatchesSkmv(SketchAssertions.uniform(), packed -> packed.enableExpiryIndex(1024));
+        assertMatchesSkmv(SketchAssertions.skewed(), packed -> packed.enableExpiryIndex(1024));
+    }
+
+    @Test
+    void incrementalEstimateMatchesSkmv() {
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        SKMV reference = new SKMV(N, K, M, 32, 16);
+        PackedSKMV packed = new PackedSKMV(N, K, M, 32, 16);
+        packed.enableIncrementalEstimate(64);
+        for (int i = 0; i < stream.size(); i++) {
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                reference.periodicClean(stream.timestamps[i]);
+                packed.periodicClean(stream.timestamps[i]);
+            }
+            reference.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            packed.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            if ((i + 1) % 1000 == 0) {
+                double expected = reference.estimateCardinality();
+                // Equal up to rounding of the running harmonic sum
+                assertEquals(expected, packed.estimateCardinality(), 1e-9 * Math.max(1.0, expected), "estimate after item " + i);
+            }
+        }
+    }
+
+    @Test
+    void lazyExpiryDropsEntriesOfBucketsLeftUntouched() {
+        // After the first N/5 time units only a quarter of the flows keep arriving; the first query
+        // comes at 5N/2, when the AT values of the abandoned entries have wrapped to look N/2 old
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        PackedSKMV packed = new PackedSKMV(N, K, M, 32, 16);
+        packed.enableLazyExpiry();
+        boolean[] active = new boolean[M];
+        long query = 5 * N / 2;
+        for (int i = 0; stream.timestamps[i] < query; i++) {
+            long t = stream.timestamps[i];
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                packed.periodicClean(t);
+            }
+            if (t < N / 5 || stream.flowLabels[i] % 4 == 0) {
+                packed.recordItem(stream.flowLabels[i], stream.elementIDs[i], t);
+            }
+            if (stream.flowLabels[i] % 4 == 0) {
+                active[packed.bucketOf(stream.flowLabels[i])] = true;
+            }
+        }
+        packed.periodicClean(query);
+        packed.estimateCardinality();
+
+        SKMVStorage store = packed.getStorage();
+        int abandoned = 0;
+        for (int b = 0; b < M; b++) {
+            if (active[b]) {
+                continue;
+            }
+            abandoned++;
+            for (int slot = b * K; slot < (b + 1) * K; slot++) {
+                assertEquals(packed.getHashRange(), store.getHash(slot), "hash of slot " + slot);
+                assertEquals(2 * N, store.getAT(slot), "time of slot " + slot);
+            }
+        }
+        assertTrue(abandoned > M / 2, "abandoned buckets " + abandoned);
+    }
+
+    @Test
+    void storageBackendsMatchSkmv() {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        long hashRange = (1L << 32) - 1;
+        for (SKMVStorage store : new SKMVStorage[] {
+                new ArraySKMVStorage(M, K, N, hashRange),
+                new DirectSKMVStorage(M, K, N, hashRange),
+                new BitPackedSKMVStorage(M, K, N, 32, 16)}) {
+            SKMV reference = new SKMV(N, K, M, 32, 16);
+            PackedSKMV packed = new PackedSKMV(N, K, M, 32, 16, store);
+            for (int i = 0; i < stream.size(); i++) {
+                if (SketchAssertions.cleansBefore(stream, i)) {
+                    reference.periodicClean(stream.timestamps[i]);
+                    packed.periodicClean(stream.timestamps[i]);
+                }
+                reference.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                packed.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            }
+            assertEquals(reference.estimateCardinality(), packed.estimateCardinality(), 0.0,
+                store.getClass().getSimpleName());
+            packed.close();
+        }
+    }
+
+    @Test
+    void oversizedArrayStorageIsRejected() {
+        // 65536 * 65536 slots wrap to 0 in int arithmetic
+        assertThrows(ArithmeticException.class, () -> new ArraySKMVStorage(1 << 16, 1 << 16, N, (1L << 32) - 1));
+    }
+
+    @Test
+    void restoreAfterDowntimeExpiresTheOldWindow(@TempDir Path directory) throws IOException {
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        Path file = directory.resolve("sketch.skmv");
+        int half = stream.size() / 2;
+        PackedSKMV persisted = new PackedSKMV(N, K, M, 32, 16, MappedSKMVStorage.open(file, N, K, M, 32, 16));
+        for (int i = 0; i < half; i++) {
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                persisted.periodicClean(stream.timestamps[i]);
+            }
+            persisted.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+        }
+        persisted.close();
+        assertThrows(IllegalStateException.class, persisted.getStorage()::getCheckpointTime);
+
+        // A downtime just over 2N, so the AT values of the old window wrap around to look recent;
+        // nothing of it may survive, so the restored sketch must match one that starts after the downtime
+        long downtime = 2 * N + 7;
+        long last = stream.timestamps[half - 1];
+        PackedSKMV restored = new PackedSKMV(N, K, M, 32, 16, MappedSKMVStorage.open(file, N, K, M, 32, 16));
+        assertEquals(last, restored.getCurrentTime());
+        PackedSKMV fresh = new PackedSKMV(N, K, M, 32, 16);
+        for (int i = half; i < stream.size(); i++) {
+            long t = stream.timestamps[i] + downtime;
+            if (i == half || SketchAssertions.cleansBefore(stream, i)) {
+                fresh.periodicClean(t);
+                restored.periodicClean(t);
+            }
+            fresh.recordItem(stream.flowLabels[i], stream.elementIDs[i], t);
+            restored.recordItem(stream.flowLabels[i], stream.elementIDs[i], t);
+            if ((i + 1) % QUERY_EVERY == 0 || i == half) {
+                assertEquals(fresh.estimateCardinality(), restored.estimateCardinality(), 0.0, "estimate after item " + i);
+            }
+        }
+        restored.close();
+    }
+
+    @Test
+    void checkpointAtTimeZeroIsStillRestored(@TempDir Path directory) throws IOException {
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        Path file = directory.resolve("sketch.skmv");
+        PackedSKMV persisted = new PackedSKMV(N, K, M, 32, 16, MappedSKMVStorage.open(file, N, K, M, 32, 16));
+        persisted.periodicClean(0);
+        for (int i = 0; stream.timestamps[i] == 0; i++) {
+            persisted.recordItem(stream.flowLabels[i], stream.elementIDs[i], 0);
+        }
+        persisted.close();
+
+        // Entries stamped 0 read as 7 units old 2N + 7 later unless the restore cleans them first
+        long t = 2 * N + 7;
+        PackedSKMV restored = new PackedSKMV(N, K, M, 32, 16, MappedSKMVStorage.open(file, N, K, M, 32, 16));
+        assertEquals(0, restored.getCurrentTime());
+        PackedSKMV fresh = new PackedSKMV(N, K, M, 32, 16);
+        fresh.periodicClean(t);
+        restored.periodicClean(t);
+        assertEquals(fresh.estimateCardinality(), restored.estimateCardinality(), 0.0);
+        restored.close();
+    }
+
+    @Test
+    void uncleanExitKeepsEntriesNewerThanTheHeaderTime(@TempDir Path directory) throws IOException {
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        Path file = directory.resolve("sketch.skmv");
+        Path image = directory.resolve("crash.skmv");
+        PackedSKMV live = new PackedSKMV(N, K, M, 32, 16, MappedSKMVStorage.open(file, N, K, M, 32, 16));
+        int cut = 0;
+        while (stream.timestamps[cut] < 3 * N / 2) {
+            cut++;
+        }
+        for (int i = 0; i < cut; i++) {
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                live.periodicClean(stream.timestamps[i]);
+            }
+            if (i == cut / 2) {
+                live.checkpoint();
+            }
+            live.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+        }
+
+        // The image holds entries up to N/2 newer than the time of the last clean in its header
+        Files.copy(file, image);
+        PackedSKMV restored = new PackedSKMV(N, K, M, 32, 16, MappedSKMVStorage.open(image, N, K, M, 32, 16));
+        assertEquals(stream.timestamps[cut - 1], restored.getCurrentTime());
+        for (int i = cut; i < stream.size(); i++) {
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                live.periodicClean(stream.timestamps[i]);
+                restored.periodicClean(stream.timestamps[i]);
+            }
+            live.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            restored.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            if ((i + 1) % QUERY_EVERY == 0 || i == cut) {
+                assertEquals(live.estimateCardinality(), restored.estimateCardinality(), 0.0, "estimate after item " + i);
+            }
+        }
+        live.close();
+        restored.close();
+    }
+}
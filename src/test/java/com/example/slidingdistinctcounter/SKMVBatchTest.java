@@ -0,0 +1,94 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * recordBatch must leave a sketch exactly as recordItem on each item in order would
+ *
+ * @author Research Implementation
+ */
+class SKMVBatchTest {
+
+    /**
+     * Feed the stream in batches that never span a cleaning point
+     */
+    private static void feedBatches(SKMV sketch, SketchAssertions.Stream stream, int batchSize) {
+        int offset = 0;
+        while (offset < stream.size()) {
+            if (SketchAssertions.cleansBefore(stream, offset)) {
+                sketch.periodicClean(stream.timestamps[offset]);
+            }
+            int end = offset + 1;
+            while (end < stream.size() && end - offset < batchSize && !SketchAssertions.cleansBefore(stream, end)) {
+                end++;
+            }
+            sketch.recordBatch(stream.flowLabels, stream.elementIDs, stream.timestamps, offset, end - offset);
+            offset = end;
+        }
+    }
+
+    @Test
+    void batchesMatchItemAtATime() {
+        for (SketchAssertions.Stream stream : new SketchAssertions.Stream[] {SketchAssertions.uniform(), SketchAssertions.skewed()}) {
+            for (int flowBuckets : new int[] {1, 3}) {
+                SKMV single = new SKMV(N, K, M, 32, 16, flowBuckets);
+                SketchAssertions.feed(single, stream, 0, stream.size());
+                for (int batchSize : new int[] {1, 7, 4096, 65536}) {
+                    SKMV batched = new SKMV(N, K, M, 32, 16, flowBuckets);
+                    feedBatches(batched, stream, batchSize);
+                    SketchAssertions.assertSameState(single, batched);
+                }
+            }
+        }
+    }
+
+    @Test
+    void packedBatchesMatchItemAtATime() {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        PackedSKMV single = new PackedSKMV(N, K, M, 32, 16);
+        PackedSKMV batched = new PackedSKMV(N, K, M, 32, 16);
+        int offset = 0;
+        while (offset < stream.size()) {
+            if (SketchAssertions.cleansBefore(stream, offset)) {
+                single.periodicClean(stream.timestamps[offset]);
+                batched.periodicClean(stream.timestamps[offset]);
+            }
+            int end = offset + 1;
+            while (end < stream.size() && end - offset < 4096 && !SketchAssertions.cleansBefore(stream, end)) {
+                end++;
+            }
+            for (int i = offset; i < end; i++) {
+                single.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            }
+            batched.recordBatch(stream.flowLabels, stream.elementIDs, stream.timestamps, offset, end - offset);
+            offset = end;
+        }
+        assertEquals(single.estimateCardinality(), batched.estimateCardinality(), 0.0);
+    }
+
+    @Test
+    void oversizedBatchesAreRejected() {
+        // 32768 items in 65536 buckets each are 2^31 bucket updates, one past the largest int
+        SKMV sketch = new SKMV(N, 2, 1 << 16, 32, 16, 1 << 16);
+        long[] items = new long[1 << 15];
+        assertThrows(IllegalArgumentException.class, () -> sketch.recordBatch(items, items, items, 0, items.length));
+
+        // offset + length wraps negative and must not slip past the bounds check
+        assertThrows(IllegalArgumentException.class,
+            () -> sketch.recordBatch(items, items, items, Integer.MAX_VALUE, 2));
+    }
+
+    @Test
+    void packedBatchBoundsDoNotOverflow() {
+        PackedSKMV sketch = new PackedSKMV(N, K, M, 32, 16);
+        long[] items = new long[16];
+        assertThrows(IllegalArgumentException.class,
+            () -> sketch.recordBatch(items, items, items, Integer.MAX_VALUE, 2));
+    }
+}
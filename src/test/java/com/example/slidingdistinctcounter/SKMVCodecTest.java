@@ -0,0 +1,272 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Snapshots and deltas must reproduce the encoded sketch exactly
+ *
+ * @author Research Implementation
+ */
+class SKMVCodecTest {
+
+    private static ByteBuffer encode(SKMV sketch) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) SKMVCodec.encodedSize(sketch));
+        SKMVCodec.write(sketch, buffer);
+        assertEquals(buffer.capacity(), buffer.position(), "encodedSize");
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    void snapshotRoundTrip() {
+        for (SketchAssertions.Stream stream : new SketchAssertions.Stream[] {SketchAssertions.uniform(), SketchAssertions.skewed()}) {
+            SKMV sketch = new SKMV(N, K, M, 32, 16);
+            SketchAssertions.feed(sketch, stream, 0, stream.size());
+            sketch.estimateCardinality();  // Query-time lock transitions are part of the state
+
+            ByteBuffer buffer = encode(sketch);
+            SKMV decoded = SKMVCodec.read(buffer);
+            assertEquals(0, buffer.remaining());
+            SketchAssertions.assertSameState(sketch, decoded);
+
+            SKMV target = new SKMV(N, K, M, 32, 16);
+            buffer.rewind();
+            SKMVCodec.readInto(target, buffer);
+            SketchAssertions.assertSameState(sketch, target);
+        }
+    }
+
+    @Test
+    void snapshotRoundTripWithOtherHashesAndWidths() {
+        SKMV sketch = new SKMV(N, 8, 300, 20, 12, 2, HashStrategy.WYHASH, 17, 23);
+        SketchAssertions.feed(sketch, SketchAssertions.skewed(), 0, 50_000);
+        SKMV decoded = SKMVCodec.read(encode(sketch));
+        SketchAssertions.assertSameState(sketch, decoded);
+        assertEquals(HashStrategy.WYHASH.id(), decoded.getHashStrategy().id());
+        assertEquals(17, decoded.getBucketSeed());
+        assertEquals(23, decoded.getElementSeed());
+        assertEquals(2, decoded.getFlowBuckets());
+    }
+
+    @Test
+    void everyBuiltinStrategyRoundTrips() {
+        // The decoded sketch must resolve the same strategy, so it keeps placing items where the original does
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        for (int id = 0; id < 4; id++) {
+            HashStrategy strategy = HashStrategy.forId(id);
+            SKMV sketch = new SKMV(N, K, M, 32, 16, 1, strategy, 17, 23);
+            SketchAssertions.feed(sketch, stream, 0, stream.size() / 2);
+            SKMV decoded = SKMVCodec.read(encode(sketch));
+            assertSame(strategy, decoded.getHashStrategy());
+            SketchAssertions.feed(sketch, stream, stream.size() / 2, stream.size());
+            SketchAssertions.feed(decoded, stream, stream.size() / 2, stream.size());
+            SketchAssertions.assertSameState(sketch, decoded);
+        }
+    }
+
+    /**
+     * Custom strategy with an id above the built-in range
+     */
+    private static final class CustomStrategy implements HashStrategy {
+        private final int id;
+
+        CustomStrategy(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public long flowHash(long flowLabel, long seed) {
+            return Long.rotateLeft(flowLabel * 0x9E3779B97F4A7C15L, 17) ^ seed;
+        }
+
+        @Override
+        public long elementHash(long elementID, int seed) {
+            return SKMV.murmurHash3_64(elementID, seed);
+        }
+
+        @Override
+        public int id() {
+            return id;
+        }
+    }
+
+    @Test
+    void customStrategyRoundTripsThroughReadInto() {
+        HashStrategy custom = new CustomStrategy(200);
+        SKMV sketch = new SKMV(N, K, M, 32, 16, 1, custom, 3, 4);
+        SketchAssertions.feed(sketch, SketchAssertions.skewed(), 0, 50_000);
+        ByteBuffer buffer = encode(sketch);
+        assertEquals(200, buffer.get(7) & 0xFF);
+
+        SKMV target = new SKMV(N, K, M, 32, 16, 1, custom, 3, 4);
+        SKMVCodec.readInto(target, buffer.duplicate());
+        SketchAssertions.assertSameState(sketch, target);
+
+        // Only built-in strategies can be instantiated from an encoding, and ids must match
+        assertThrows(IllegalArgumentException.class, () -> SKMVCodec.read(buffer.duplicate()));
+        assertThrows(IllegalArgumentException.class, () -> SKMVCodec.readInto(
+            new SKMV(N, K, M, 32, 16, 1, new CustomStrategy(201), 3, 4), buffer.duplicate()));
+    }
+
+    @Test
+    void strategyIdsOutsideOneByteAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SKMV(N, K, M, 32, 16, 1, new CustomStrategy(256), 3, 4));
+        assertThrows(IllegalArgumentException.class, () -> new SKMV(N, K, M, 32, 16, 1, new CustomStrategy(-1), 3, 4));
+    }
+
+    @Test
+    void channelWriteMatchesBufferWrite() throws IOException {
+        SKMV sketch = new SKMV(N, K, M, 32, 16);
+        SketchAssertions.feed(sketch, SketchAssertions.uniform(), 0, 100_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = SKMVCodec.write(sketch, Channels.newChannel(out));
+        assertEquals(SKMVCodec.encodedSize(sketch), written);
+        assertEquals(encode(sketch), ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    @Test
+    void channelWriteThroughCallerBuffer() throws IOException {
+        SKMV sketch = new SKMV(N, K, M, 32, 16);
+        SketchAssertions.feed(sketch, SketchAssertions.uniform(), 0, 100_000);
+        ByteBuffer chunk = ByteBuffer.allocate(SKMVCodec.minChunkBytes(sketch));
+        chunk.position(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(SKMVCodec.encodedSize(sketch), SKMVCodec.write(sketch, Channels.newChannel(out), chunk));
+        assertEquals(encode(sketch), ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(3, chunk.position());
+        assertThrows(IllegalArgumentException.class, () -> SKMVCodec.write(sketch,
+            Channels.newChannel(new ByteArrayOutputStream()), ByteBuffer.allocate(SKMVCodec.minChunkBytes(sketch) - 1)));
+    }
+
+    @Test
+    void deltasKeepReplicaIdentical() {
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        SKMV primary = new SKMV(N, K, M, 32, 16);
+        SKMV replica = SKMVCodec.read(encode(primary));
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        for (int from = 0; from < stream.size(); from += 5_000) {
+            SketchAssertions.feed(primary, stream, from, from + 5_000);
+            primary.estimateFlowCardinality(stream.flowLabels[from]);
+            buffer.clear();
+            SKMVCodec.writeDelta(primary, primary.getDeltaSequence(), buffer);
+            assertEquals(SKMVCodec.DELTA_HEADER_BYTES, SKMVCodec.deltaSize(primary), "dirty bits reset");
+            buffer.flip();
+            SKMVCodec.applyDelta(replica, buffer);
+            SketchAssertions.assertSameState(primary, replica);
+            assertEquals(primary.getDeltaSequence(), replica.getDeltaSequence());
+        }
+    }
+
+    @Test
+    void deltaOutOfSequenceIsRejected() {
+        SKMV primary = new SKMV(N, K, M, 32, 16);
+        SKMV replica = SKMVCodec.read(encode(primary));
+        SketchAssertions.feed(primary, SketchAssertions.uniform(), 0, 1_000);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        SKMVCodec.writeDelta(primary, primary.getDeltaSequence(), buffer);
+        buffer.clear();
+        SKMVCodec.writeDelta(primary, primary.getDeltaSequence(), buffer);  // Second delta, skipping the first
+        buffer.flip();
+        assertThrows(IllegalStateException.class, () -> SKMVCodec.applyDelta(replica, buffer));
+    }
+
+    @Test
+    void deltaWithOtherParametersIsRejected() {
+        SKMV primary = new SKMV(N, K, M, 32, 16, 1, HashStrategy.FNV_MURMUR, 3, 4);
+        SketchAssertions.feed(primary, SketchAssertions.uniform(), 0, 1_000);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        SKMVCodec.writeDelta(primary, primary.getDeltaSequence(), buffer);
+        buffer.flip();
+        // Same k and m, so only the full parameter check tells these replicas apart
+        SKMV[] others = {
+            new SKMV(2 * N, K, M, 32, 16, 1, HashStrategy.FNV_MURMUR, 3, 4),
+            new SKMV(N, K, M, 24, 16, 1, HashStrategy.FNV_MURMUR, 3, 4),
+            new SKMV(N, K, M, 32, 20, 1, HashStrategy.FNV_MURMUR, 3, 4),
+            new SKMV(N, K, M, 32, 16, 2, HashStrategy.FNV_MURMUR, 3, 4),
+            new SKMV(N, K, M, 32, 16, 1, HashStrategy.XXH3, 3, 4),
+            new SKMV(N, K, M, 32, 16, 1, HashStrategy.FNV_MURMUR, 5, 4),
+            new SKMV(N, K, M, 32, 16, 1, HashStrategy.FNV_MURMUR, 3, 6)};
+        for (SKMV replica : others) {
+            assertThrows(IllegalArgumentException.class, () -> SKMVCodec.applyDelta(replica, buffer.duplicate()));
+            assertEquals(0, replica.getDeltaSequence());
+        }
+        SKMV replica = new SKMV(N, K, M, 32, 16, 1, HashStrategy.FNV_MURMUR, 3, 4);
+        SKMVCodec.applyDelta(replica, buffer);
+        SketchAssertions.assertSameState(primary, replica);
+    }
+
+    @Test
+    void malformedInputIsRejected() {
+        SKMV sketch = new SKMV(N, K, M, 32, 16);
+        SketchAssertions.feed(sketch, SketchAssertions.uniform(), 0, 10_000);
+        ByteBuffer buffer = encode(sketch);
+        ByteBuffer truncated = buffer.duplicate();
+        truncated.limit(buffer.limit() / 2);
+        assertThrows(BufferUnderflowException.class, () -> SKMVCodec.read(truncated));
+        ByteBuffer wrongMagic = ByteBuffer.allocate(buffer.capacity()).put(buffer.duplicate());
+        wrongMagic.put(0, (byte) 0).flip();
+        assertThrows(IllegalArgumentException.class, () -> SKMVCodec.read(wrongMagic));
+        assertThrows(IllegalArgumentException.class, () -> SKMVCodec.readInto(new SKMV(N, K, M, 32, 16, 2), buffer.duplicate()));
+    }
+
+    @Test
+    void valuesOutsideTheHashRangeAreRejected() {
+        // delta1 = 12 stores hashes in two bytes, which can hold values up to 65535
+        SKMV sketch = new SKMV(N, K, M, 12, 16);
+        ByteBuffer fresh = encode(sketch);
+        byte[][] buckets = {
+            {1 << 4, 1, 0, (byte) 0xFF, (byte) 0xFF, 0, 0},  // One entry with hash 65535
+            {1 << 3, (byte) 0xFF, (byte) 0xFF}};              // lock_maxV 65535
+        for (byte[] bucket : buckets) {
+            ByteBuffer bad = ByteBuffer.allocate(fresh.remaining() + bucket.length - 1);
+            bad.put(fresh.duplicate().limit(SKMVCodec.HEADER_BYTES)).put(bucket);
+            bad.put(fresh.duplicate().position(SKMVCodec.HEADER_BYTES + 1)).flip();
+            assertThrows(IllegalArgumentException.class, () -> SKMVCodec.read(bad.duplicate()));
+            assertThrows(IllegalArgumentException.class, () -> SKMVCodec.readInto(new SKMV(N, K, M, 12, 16), bad.duplicate()));
+            bucket[bucket.length - (bucket.length == 3 ? 1 : 3)] = 0x0F;  // 4095 is the largest valid hash
+            ByteBuffer good = ByteBuffer.allocate(bad.capacity());
+            good.put(fresh.duplicate().limit(SKMVCodec.HEADER_BYTES)).put(bucket);
+            good.put(fresh.duplicate().position(SKMVCodec.HEADER_BYTES + 1)).flip();
+            SKMVCodec.read(good);
+        }
+    }
+
+    @Test
+    void failedDecodeLeavesTargetUnchanged() {
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        SKMV target = new SKMV(N, K, M, 32, 16);
+        SKMV expected = new SKMV(N, K, M, 32, 16);
+        SketchAssertions.feed(target, stream, 0, 50_000);
+        SketchAssertions.feed(expected, stream, 0, 50_000);
+
+        SKMV other = new SKMV(N, K, M, 32, 16);
+        SketchAssertions.feed(other, stream, 100_000, 150_000);
+        ByteBuffer truncated = encode(other);
+        truncated.limit(truncated.limit() - 10);
+        assertThrows(BufferUnderflowException.class, () -> SKMVCodec.readInto(target, truncated));
+        SketchAssertions.assertSameState(expected, target);
+
+        SKMV replica = SKMVCodec.read(encode(other));
+        SKMV unchanged = SKMVCodec.read(encode(other));
+        SketchAssertions.feed(other, stream, 150_000, 160_000);
+        ByteBuffer delta = ByteBuffer.allocate((int) SKMVCodec.deltaSize(other));
+        SKMVCodec.writeDelta(other, other.getDeltaSequence(), delta);
+        delta.put(delta.limit() - 1, (byte) 0xFF).flip();  // Corrupt the last bucket only
+        assertThrows(IllegalArgumentException.class, () -> SKMVCodec.applyDelta(replica, delta));
+        SketchAssertions.assertSameState(unchanged, replica);
+        assertEquals(unchanged.getDeltaSequence(), replica.getDeltaSequence());
+    }
+}
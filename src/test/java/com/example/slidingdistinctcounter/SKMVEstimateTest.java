@@ -0,0 +1,147 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * SKMV estimates, global and per flow, must equal the sort-based KMV estimate of their buckets
+ *
+ * @author Research Implementation
+ */
+class SKMVEstimateTest {
+
+    /**
+     * The bucket estimate as computed before the single-pass query: collect the valid hashes, sort them
+     * and read k' and the k'-th minimum (bucket status must already be updated to T)
+     *
+     * @return n̂_i, or NaN if the bucket holds no valid hash value
+     */
+    private static double sortedBucketCardinality(SKMV sketch, int b) {
+        SKMV.Bucket bucket = sketch.getBucket(b);
+        List<Long> hashValues = new ArrayList<>();
+        for (int i = 0; i < sketch.getK(); i++) {
+            SKMV.Entry entry = bucket.entries[i];
+            if (entry.h != entry.maxHashValue && entry.t.lookup(sketch.getCurrentTime())
+                    && !(bucket.lock == 1 && i == bucket.head)) {
+                hashValues.add(entry.h);
+            }
+        }
+        if (hashValues.isEmpty()) {
+            return Double.NaN;
+        }
+        hashValues.sort(Long::compareTo);
+        int kPrime = hashValues.size();
+        return (double) kPrime / hashValues.get(kPrime - 1) * sketch.getHashRange() - 1;
+    }
+
+    private static double sortedEstimate(SKMV sketch) {
+        double harmonicSum = 0.0;
+        int effectiveM = sketch.getM();
+        for (int b = 0; b < sketch.getM(); b++) {
+            double n_i = sortedBucketCardinality(sketch, b);
+            if (Double.isNaN(n_i)) {
+                effectiveM--;
+            } else if (n_i > 0) {
+                harmonicSum += 1.0 / n_i;
+            }
+        }
+        return harmonicSum > 0 && effectiveM > 0 ? effectiveM / harmonicSum : 0.0;
+    }
+
+    @Test
+    void singlePassEstimateMatchesSortedEstimate() {
+        for (SketchAssertions.Stream stream : new SketchAssertions.Stream[] {SketchAssertions.uniform(), SketchAssertions.skewed()}) {
+            SKMV sketch = new SKMV(N, K, M, 32, 16);
+            for (int i = 0; i < stream.size(); i++) {
+                if (SketchAssertions.cleansBefore(stream, i)) {
+                    sketch.periodicClean(stream.timestamps[i]);
+                }
+                sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                if ((i + 1) % 5_000 == 0) {
+                    double estimate = sketch.estimateCardinality();
+                    assertEquals(sortedEstimate(sketch), estimate, 0.0, "estimate after item " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void estimateAllocatesNothing() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof ThreadMXBean, "per-thread allocation counter unavailable");
+        ThreadMXBean allocations = (ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        SKMV sketch = new SKMV(N, K, M, 32, 16);
+        SketchAssertions.feed(sketch, stream, 0, stream.size());
+        double sink = 0;
+        for (int i = 0; i < 200; i++) {
+            sink += sketch.estimateCardinality();
+        }
+        long calibrationBefore = allocations.getThreadAllocatedBytes(thread);
+        long calibrationAfter = allocations.getThreadAllocatedBytes(thread);
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100; i++) {
+            sink += sketch.estimateCardinality();
+        }
+        long after = allocations.getThreadAllocatedBytes(thread);
+        assertEquals(0, (after - before) - (calibrationAfter - calibrationBefore), "bytes allocated by 100 queries");
+        assertEquals(sink / 300, sketch.estimateCardinality(), 1e-9 * sink);
+    }
+
+    @Test
+    void flowEstimateIsTheSmallestOfItsBuckets() {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        for (int flowBuckets : new int[] {1, 3}) {
+            SKMV sketch = new SKMV(N, K, M, 32, 16, flowBuckets);
+            for (int i = 0; i < stream.size(); i++) {
+                if (SketchAssertions.cleansBefore(stream, i)) {
+                    sketch.periodicClean(stream.timestamps[i]);
+                }
+                sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                if (i % 97 == 0) {
+                    long flow = stream.flowLabels[i / 2];
+                    double estimate = sketch.estimateFlowCardinality(flow);
+                    double expected = Double.POSITIVE_INFINITY;
+                    for (int j = 0; j < flowBuckets; j++) {
+                        double n_i = sortedBucketCardinality(sketch, sketch.bucketOf(flow, j));
+                        expected = Math.min(expected, Double.isNaN(n_i) ? 0.0 : Math.max(0.0, n_i));
+                    }
+                    assertEquals(expected, estimate, 0.0, "flow " + flow + " after item " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void batchedFlowEstimatesMatchSingleQueries() {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        SKMV sketch = new SKMV(N, K, M, 32, 16, 3);
+        SketchAssertions.feed(sketch, stream, 0, stream.size());
+        long[] flows = Arrays.copyOfRange(stream.flowLabels, stream.size() - 2_000, stream.size());
+        double[] batched = sketch.estimateFlowCardinality(flows);
+        double[] into = new double[flows.length + 1];
+        sketch.estimateFlowCardinality(flows, into);
+        for (int i = 0; i < flows.length; i++) {
+            double single = sketch.estimateFlowCardinality(flows[i]);
+            assertEquals(single, batched[i], 0.0, "flow " + flows[i]);
+            assertEquals(single, into[i], 0.0, "flow " + flows[i]);
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> sketch.estimateFlowCardinality(flows, new double[flows.length - 1]));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Merged sketches must agree with a single sketch fed the combined stream, and merging must be
+ * independent of how the collectors are combined
+ *
+ * @author Research Implementation
+ */
+class SKMVMergeTest {
+
+    private static final int COLLECTORS = 4;
+
+    /**
+     * Split the stream over collectors by bucket, so each bucket is fed by exactly one collector
+     */
+    private static SKMV[] collectByBucket(SketchAssertions.Stream stream) {
+        SKMV[] collectors = new SKMV[COLLECTORS];
+        for (int c = 0; c < COLLECTORS; c++) {
+            collectors[c] = new SKMV(N, K, M, 32, 16);
+        }
+        for (int i = 0; i < stream.size(); i++) {
+            if (SketchAssertions.cleansBefore(stream, i)) {
+                for (SKMV collector : collectors) {
+                    collector.periodicClean(stream.timestamps[i]);
+                }
+            }
+            SKMV collector = collectors[collectors[0].bucketOf(stream.flowLabels[i]) % COLLECTORS];
+            collector.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+        }
+        return collectors;
+    }
+
+    @Test
+    void mergeOfBucketPartitionMatchesSingleStream() {
+        for (SketchAssertions.Stream stream : new SketchAssertions.Stream[] {SketchAssertions.uniform(), SketchAssertions.skewed()}) {
+            SKMV single = new SKMV(N, K, M, 32, 16);
+            SketchAssertions.feed(single, stream, 0, stream.size());
+            SKMV merged = new SKMV(N, K, M, 32, 16);
+            merged.merge(collectByBucket(stream));
+            assertEquals(single.estimateCardinality(), merged.estimateCardinality(), 0.0);
+            for (long flow = 0; flow < 1024; flow++) {
+                assertEquals(single.estimateFlowCardinality(flow), merged.estimateFlowCardinality(flow), 0.0,
+                    "flow " + flow);
+            }
+        }
+    }
+
+    @Test
+    void nWayMergeMatchesPairwiseFold() {
+        SketchAssertions.Stream stream = SketchAssertions.uniform();
+        SKMV[] collectors = new SKMV[COLLECTORS];
+        for (int c = 0; c < COLLECTORS; c++) {
+            // Interleaved slices of the same time range, so the collectors' buckets overlap
+            collectors[c] = new SKMV(N, K, M, 32, 16);
+            for (int i = c; i < stream.size(); i += COLLECTORS) {
+                if (i < COLLECTORS || stream.timestamps[i] / (N / 2) != stream.timestamps[i - COLLECTORS] / (N / 2)) {
+                    collectors[c].periodicClean(stream.timestamps[i]);
+                }
+                collectors[c].recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            }
+        }
+        SKMV all = new SKMV(N, K, M, 32, 16);
+        all.merge(collectors);
+        SKMV folded = new SKMV(N, K, M, 32, 16);
+        for (SKMV collector : collectors) {
+            folded.merge(collector);
+        }
+        SketchAssertions.assertSameState(all, folded);
+    }
+
+    @Test
+    void mergeIntoEmptyKeepsEstimates() {
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        SKMV sketch = new SKMV(N, K, M, 32, 16);
+        SketchAssertions.feed(sketch, stream, 0, stream.size());
+        SKMV copy = new SKMV(N, K, M, 32, 16);
+        copy.merge(sketch);
+        assertEquals(sketch.estimateCardinality(), copy.estimateCardinality(), 0.0);
+        copy.merge(new SKMV(N, K, M, 32, 16));
+        assertEquals(sketch.estimateCardinality(), copy.estimateCardinality(), 0.0);
+    }
+
+    @Test
+    void mergeRejectsIncompatibleSketches() {
+        SKMV sketch = new SKMV(N, K, M, 32, 16);
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new SKMV(N, K, M / 2, 32, 16)));
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new SKMV(2 * N, K, M, 32, 16)));
+        assertThrows(IllegalArgumentException.class,
+            () -> sketch.merge(new SKMV(N, K, M, 32, 16, 1, SKMV.DEFAULT_BUCKET_SEED, 1)));
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new SKMV(N, K, M, 32, 16, 1,
+            HashStrategy.XXH3, SKMV.DEFAULT_BUCKET_SEED, SKMV.DEFAULT_ELEMENT_SEED)));
+    }
+}
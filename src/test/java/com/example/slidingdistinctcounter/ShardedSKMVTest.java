@@ -0,0 +1,147 @@
+package com.example.slidingdistinctcounter;
+
+import static com.example.slidingdistinctcounter.SketchAssertions.K;
+import static com.example.slidingdistinctcounter.SketchAssertions.M;
+import static com.example.slidingdistinctcounter.SketchAssertions.N;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The union of the shards must agree with a single sketch fed the combined stream
+ *
+ * @author Research Implementation
+ */
+class ShardedSKMVTest {
+
+    private static final int SHARDS = 4;
+
+    /**
+     * Queries write P2C status back into the sketch they ask, which shards read through a union never
+     * see, so the single sketch is asked through an encoded copy
+     *
+     * @return The single sketch's global estimate, leaving it unchanged
+     */
+    private static double snapshotEstimate(SKMV single) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) SKMVCodec.encodedSize(single));
+        SKMVCodec.write(single, buffer);
+        buffer.flip();
+        return SKMVCodec.read(buffer).estimateCardinality();
+    }
+
+    @Test
+    void shardsPartitionedByBucketMatchSingleSketch() {
+        for (SketchAssertions.Stream stream : new SketchAssertions.Stream[] {SketchAssertions.uniform(), SketchAssertions.skewed()}) {
+            SKMV single = new SKMV(N, K, M, 32, 16);
+            ShardedSKMV sharded = new ShardedSKMV(N, K, M, 32, 16);
+            ShardedSKMV.Shard[] shards = new ShardedSKMV.Shard[SHARDS];
+            for (int s = 0; s < SHARDS; s++) {
+                shards[s] = sharded.newShard();
+            }
+            for (int i = 0; i < stream.size(); i++) {
+                if (SketchAssertions.cleansBefore(stream, i)) {
+                    single.periodicClean(stream.timestamps[i]);
+                    sharded.periodicClean(stream.timestamps[i]);
+                }
+                single.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                shards[single.bucketOf(stream.flowLabels[i]) % SHARDS]
+                    .recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                if ((i + 1) % 10_000 == 0) {
+                    assertEquals(snapshotEstimate(single), sharded.estimateCardinality(), 0.0, "estimate after item " + i);
+                }
+            }
+            assertEquals(SHARDS, sharded.getShardCount());
+            SKMV union = sharded.union();
+            assertEquals(single.estimateCardinality(), union.estimateCardinality(), 0.0);
+            for (int i = stream.size() - 1_000; i < stream.size(); i++) {
+                long flow = stream.flowLabels[i];
+                assertEquals(single.estimateFlowCardinality(flow), union.estimateFlowCardinality(flow), 0.0, "flow " + flow);
+            }
+        }
+    }
+
+    @Test
+    void shardedWritersMatchSingleSketch() throws InterruptedException {
+        // Each writer owns a shard and takes the items of its quarter of the buckets from every N/4
+        // time units, then meets the others at a barrier whose action feeds the same items to a single
+        // sketch, cleans both every N/2 and compares them; a reader merges the shards throughout
+        SketchAssertions.Stream stream = SketchAssertions.skewed();
+        long chunk = N / 4;
+        int chunks = (int) (stream.timestamps[stream.size() - 1] / chunk) + 1;
+        int[] starts = new int[chunks + 1];
+        for (int c = 0, i = 0; c <= chunks; c++) {
+            while (i < stream.size() && stream.timestamps[i] < c * chunk) {
+                i++;
+            }
+            starts[c] = i;
+        }
+
+        SKMV single = new SKMV(N, K, M, 32, 16);
+        ShardedSKMV sharded = new ShardedSKMV(N, K, M, 32, 16);
+        double[][] estimates = new double[2][chunks];
+        int[] done = new int[1];
+        CyclicBarrier barrier = new CyclicBarrier(SHARDS, () -> {
+            int c = done[0]++;
+            for (int i = starts[c]; i < starts[c + 1]; i++) {
+                single.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+            }
+            if ((c + 1) * chunk % (N / 2) == 0) {
+                single.periodicClean((c + 1) * chunk);
+                sharded.periodicClean((c + 1) * chunk);
+            }
+            estimates[0][c] = snapshotEstimate(single);
+            estimates[1][c] = sharded.estimateCardinality();
+        });
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                double estimate = sharded.union().estimateCardinality();
+                if (!(estimate >= 0)) {
+                    failure.compareAndSet(null, new AssertionError("estimate " + estimate));
+                }
+                Thread.yield();
+            }
+        });
+        reader.start();
+        Thread[] threads = new Thread[SHARDS];
+        for (int t = 0; t < SHARDS; t++) {
+            int part = t;
+            ShardedSKMV.Shard shard = sharded.newShard();
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int c = 0; c < chunks; c++) {
+                        for (int i = starts[c]; i < starts[c + 1]; i++) {
+                            if (single.bucketOf(stream.flowLabels[i]) % SHARDS == part) {
+                                shard.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+                            }
+                        }
+                        barrier.await();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    barrier.reset();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writing.set(false);
+        reader.join();
+        if (failure.get() != null && !(failure.get() instanceof BrokenBarrierException)) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(chunks, done[0], "chunks completed");
+        assertEquals(SHARDS, sharded.getShardCount());
+        assertArrayEquals(estimates[0], estimates[1], "estimates after each chunk");
+    }
+}
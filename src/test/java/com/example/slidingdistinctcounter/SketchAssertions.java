@@ -0,0 +1,143 @@
+package com.example.slidingdistinctcounter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Shared streams and state comparisons for the equivalence tests
+ *
+ * @author Research Implementation
+ */
+final class SketchAssertions {
+
+    // Small enough for a fast build, dense enough that buckets fill, lock and expire
+    static final long N = 100;
+    static final int K = 16;
+    static final int M = 1024;
+
+    private SketchAssertions() {
+    }
+
+    /**
+     * Test stream held as parallel primitive arrays
+     */
+    static final class Stream {
+        final long[] flowLabels;
+        final long[] elementIDs;
+        final long[] timestamps;
+
+        Stream(int size) {
+            this.flowLabels = new long[size];
+            this.elementIDs = new long[size];
+            this.timestamps = new long[size];
+        }
+
+        int size() { return flowLabels.length; }
+    }
+
+    /**
+     * @return 1024 flows at 500 items per time unit over 400 time units
+     */
+    static Stream uniform() {
+        return uniformStream(200_000, 1024, 1 << 20, 500, 42);
+    }
+
+    /**
+     * @return Zipf-distributed flows, so some buckets are heavy and most are sparse
+     */
+    static Stream skewed() {
+        return skewedStream(200_000, 20_000, 1 << 16, 1.0, 500, 7);
+    }
+
+    /**
+     * Flows and elements drawn uniformly, time advancing at a fixed rate
+     */
+    static Stream uniformStream(int size, int flows, int elements, int itemsPerTimeUnit, long seed) {
+        Stream stream = new Stream(size);
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            stream.flowLabels[i] = random.nextInt(flows);
+            stream.elementIDs[i] = random.nextInt(elements);
+            stream.timestamps[i] = i / itemsPerTimeUnit;
+        }
+        return stream;
+    }
+
+    /**
+     * Zipf-distributed flow sizes and element popularity, each flow with its own popular elements
+     */
+    static Stream skewedStream(int size, int flows, int elements, double exponent, int itemsPerTimeUnit, long seed) {
+        Stream stream = new Stream(size);
+        Random random = new Random(seed);
+        double[] flowCdf = zipfCdf(flows, exponent);
+        double[] elementCdf = zipfCdf(elements, exponent);
+        for (int i = 0; i < size; i++) {
+            int flow = sample(flowCdf, random);
+            stream.flowLabels[i] = flow;
+            stream.elementIDs[i] = (long) flow * elements + sample(elementCdf, random);
+            stream.timestamps[i] = i / itemsPerTimeUnit;
+        }
+        return stream;
+    }
+
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    /**
+     * Record items [from, to) of the stream, cleaning every N/2 time units as the paper prescribes
+     */
+    static void feed(SKMV sketch, Stream stream, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (cleansBefore(stream, i)) {
+                sketch.periodicClean(stream.timestamps[i]);
+            }
+            sketch.recordItem(stream.flowLabels[i], stream.elementIDs[i], stream.timestamps[i]);
+        }
+    }
+
+    /**
+     * @return Whether feed cleans before item i: at the first item of every N/2 time units
+     */
+    static boolean cleansBefore(Stream stream, int i) {
+        return i == 0 || stream.timestamps[i] / (N / 2) != stream.timestamps[i - 1] / (N / 2);
+    }
+
+    /**
+     * Assert two sketches hold the same time and raw bucket state
+     */
+    static void assertSameState(SKMV expected, SKMV actual) {
+        assertEquals(expected.getCurrentTime(), actual.getCurrentTime(), "current time");
+        assertEquals(expected.getM(), actual.getM(), "m");
+        assertEquals(expected.getK(), actual.getK(), "k");
+        for (int i = 0; i < expected.getM(); i++) {
+            SKMV.Bucket x = expected.getBucket(i);
+            SKMV.Bucket y = actual.getBucket(i);
+            assertEquals(x.lock, y.lock, "lock of bucket " + i);
+            assertEquals(x.head, y.head, "head of bucket " + i);
+            assertEquals(x.lock_maxV, y.lock_maxV, "lock_maxV of bucket " + i);
+            assertEquals(x.lock_time.getRawValue(), y.lock_time.getRawValue(), "lock_time of bucket " + i);
+            for (int j = 0; j < expected.getK(); j++) {
+                assertEquals(x.entries[j].h, y.entries[j].h, "hash of entry " + j + " in bucket " + i);
+                assertEquals(x.entries[j].t.getRawValue(), y.entries[j].t.getRawValue(),
+                    "time of entry " + j + " in bucket " + i);
+            }
+        }
+    }
+}